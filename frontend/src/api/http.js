@@ -55,3 +55,11 @@ export const http = {
   put: (path, body) => request(path, { method: "PUT", body }),
   del: (path) => request(path, { method: "DELETE" }),
 };
+
+// 后端返回的 /api/... 资源引用（如笔记图片）在跨域部署时需要补上后端地址才能直接用作 <img src>
+export function assetUrl(ref) {
+  if (typeof ref === "string" && ref.startsWith("/api/")) {
+    return `${BASE_URL}${ref}`;
+  }
+  return ref;
+}
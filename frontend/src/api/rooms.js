@@ -60,8 +60,15 @@ export function getCoins(roomId) {
 
 // --- Notes ---
 
-export function listNotes(roomId) {
-    return http.get(`${BASE}/${roomId}/notes`);
+// 游标分页：返回 { items, nextCursor }，nextCursor 为 null 表示没有更多
+export function listNotes(roomId, cursor) {
+    const query = cursor ? `?cursor=${encodeURIComponent(cursor)}` : '';
+    return http.get(`${BASE}/${roomId}/notes${query}`);
+}
+
+// 列表只有摘要（excerpt、commentCount），正文、图片和完整评论从详情取
+export function getNoteDetail(roomId, noteId) {
+    return http.get(`${BASE}/${roomId}/notes/${noteId}`);
 }
 
 export function createNote(roomId, payload) {
@@ -89,6 +96,18 @@ export function deleteNoteComment(roomId, commentId, userId) {
   return http.del(`${BASE}/${roomId}/notes/comments/${commentId}?userId=${userId}`);
 }
 
+// 图片以 multipart 上传到内容寻址存储，返回 { url, sha256, contentType, size }，笔记里只保存 url
+export function uploadImage(file) {
+  const form = new FormData();
+  form.append("file", file);
+  return http.post(`/api/blobs`, form).then((res) => {
+    if (res?.code !== 200) {
+      throw new Error(res?.msg || "upload failed");
+    }
+    return res.data;
+  });
+}
+
 // --- Personal Notes ---
 
 export function addPersonalNote(payload) {
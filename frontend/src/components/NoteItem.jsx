@@ -7,24 +7,53 @@ import {
     UserAddOutlined,
     DeleteOutlined
 } from "@ant-design/icons";
+import { assetUrl } from "../api/http";
 
 const { Text, Paragraph } = Typography;
 
-export default function NoteItem({ note, user, onCollect, onAddComment, onDeleteNote, onDeleteComment, isMacaron }) {
+export default function NoteItem({ note, user, onCollect, onAddComment, onDeleteNote, onDeleteComment, onLoadDetail, isMacaron }) {
     const [commentsExpanded, setCommentsExpanded] = useState(false);
     const [commentInput, setCommentInput] = useState("");
+    // 列表项只是摘要，展开全文或评论时再取详情
+    const [detail, setDetail] = useState(null);
 
     const isCollected = note.collectedByUserIds && note.collectedByUserIds.includes(Number(user.id));
-    const comments = note.comments || [];
+    const comments = detail?.comments || note.comments || [];
+    const commentCount = detail ? comments.length : (note.commentCount ?? comments.length);
+    const content = detail?.content ?? note.content ?? note.excerpt;
     const displayName = note.username || "Unknown";
     const avatarSrc = note.userAvatar || (note.userId ? `https://api.dicebear.com/7.x/notionists/svg?seed=${note.userId}` : undefined);
     const isSelf = String(note.userId || "") === String(user?.id || "");
-    const imageSrc = note.imageUrl || note.image;
+    const imageSrc = assetUrl(note.imageUrl || note.image || detail?.imageUrl);
+    // 列表里用缩略图，点击看预览图；缩小版本还没生成好时退回原图
+    const thumbnailSrc = assetUrl(note.thumbnailUrl) || imageSrc;
+    const previewSrc = assetUrl(note.previewUrl) || imageSrc;
 
-    const handleComment = () => {
+    const loadDetail = async () => {
+        if (!onLoadDetail) return;
+        try {
+            setDetail(await onLoadDetail(note.id));
+        } catch (e) {
+            console.error(e);
+        }
+    };
+
+    const toggleComments = () => {
+        if (!commentsExpanded && !detail) loadDetail();
+        setCommentsExpanded(!commentsExpanded);
+    };
+
+    const handleComment = async () => {
         if (!commentInput.trim()) return;
-        onAddComment(note.id, commentInput);
+        const text = commentInput;
         setCommentInput("");
+        await onAddComment(note.id, text);
+        loadDetail();
+    };
+
+    const handleDeleteComment = async (commentId) => {
+        await onDeleteComment?.(commentId);
+        loadDetail();
     };
 
     return (
@@ -63,12 +92,17 @@ export default function NoteItem({ note, user, onCollect, onAddComment, onDelete
 
             <div style={{ maxHeight: 220, minHeight: 120, overflowY: 'auto', paddingRight: 4 }}>
                 <Paragraph style={{ marginBottom: 8, fontSize: 13, color: '#546E7A', fontFamily: 'Comic Sans MS' }}>
-                    {note.content}
+                    {content}
+                    {!detail && note.truncated && (
+                        <Button type="link" size="small" onClick={loadDetail} style={{ padding: '0 4px', fontSize: 12 }}>展开全文</Button>
+                    )}
                 </Paragraph>
 
                 {imageSrc && (
                     <div style={{ marginBottom: 8 }}>
-                        <img src={imageSrc} style={{ maxWidth: '100%', borderRadius: 8, border: '2px solid #FFF' }} alt="note" />
+                        <a href={previewSrc} target="_blank" rel="noreferrer">
+                            <img src={thumbnailSrc} loading="lazy" decoding="async" style={{ maxWidth: '100%', borderRadius: 8, border: '2px solid #FFF' }} alt="note" />
+                        </a>
                     </div>
                 )}
 
@@ -90,7 +124,7 @@ export default function NoteItem({ note, user, onCollect, onAddComment, onDelete
                                                         title="删除这条评论？"
                                                         okText="删除"
                                                         cancelText="取消"
-                                                        onConfirm={() => onDeleteComment?.(c.id)}
+                                                        onConfirm={() => handleDeleteComment(c.id)}
                                                     >
                                                         <Button type="text" size="small" icon={<DeleteOutlined />} style={{ fontSize: 10, padding: 0, color: '#E57373' }}>
                                                             删除
@@ -125,9 +159,9 @@ export default function NoteItem({ note, user, onCollect, onAddComment, onDelete
                     size="small" 
                     icon={<MessageOutlined style={{ color: '#AB47BC' }} />} 
                     style={{ fontSize: 12, color: '#AB47BC' }}
-                    onClick={() => setCommentsExpanded(!commentsExpanded)}
+                    onClick={toggleComments}
                 >
-                    评论 ({comments.length})
+                    评论 ({commentCount})
                 </Button>
                 
                 <Tooltip title={isCollected ? "已收藏" : "收藏 (作者得1金币)"}>
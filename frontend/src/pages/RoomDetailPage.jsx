@@ -49,7 +49,8 @@ import {
     StarFilled
 } from "@ant-design/icons";
 
-import { getRoom, createPomodoro, listPomodoros, getCoins, listNotes, createNote, collectNote, addNoteComment, likeNoteComment, deleteNote, deleteNoteComment, listPersonalNotes, addPersonalNote, sharePersonalNote, updatePersonalNote, deletePersonalNote } from "../api/rooms";
+import { getRoom, createPomodoro, listPomodoros, getCoins, listNotes, getNoteDetail, createNote, collectNote, addNoteComment, likeNoteComment, deleteNote, deleteNoteComment, listPersonalNotes, addPersonalNote, sharePersonalNote, updatePersonalNote, deletePersonalNote, uploadImage } from "../api/rooms";
+import { assetUrl } from "../api/http";
 import "./RoomDetailPage.css";
 
 const Cloud = ({ style, sizeStr }) => (
@@ -138,6 +139,8 @@ export default function RoomDetailPage() {
     // --- Room Data State ---
     const [room, setRoom] = useState(null);
     const [members, setMembers] = useState([]);
+    // 房间人多被拆成多个分区时，整个房间的人数汇总；members 只包含自己所在的分区
+    const [occupancy, setOccupancy] = useState(null);
     const [coins, setCoins] = useState(null);
     const [pomodoros, setPomodoros] = useState([]);
     
@@ -150,6 +153,8 @@ export default function RoomDetailPage() {
 
     // --- Notes State ---
     const [notes, setNotes] = useState([]);
+    const [notesCursor, setNotesCursor] = useState(null);
+    const [notesLoadingMore, setNotesLoadingMore] = useState(false);
     const [newNoteTitle, setNewNoteTitle] = useState("");
     const [newNoteContent, setNewNoteContent] = useState("");
     const [newNoteImage, setNewNoteImage] = useState(null); // Base64 or URL
@@ -248,6 +253,12 @@ export default function RoomDetailPage() {
         setNotePreview(note);
         setNotePreviewSize({ width: defaultWidth, height: defaultHeight });
         setNotePreviewPosition({ x: centerX, y: centerY });
+        // 笔记广场的列表项只有摘要，打开时补全正文和图片
+        if (note._source !== 'personal' && note.content === undefined) {
+            getNoteDetail(roomId, note.id)
+                .then((detail) => setNotePreview((prev) => (prev && prev.id === detail.id && prev._source !== 'personal' ? { ...prev, ...detail } : prev)))
+                .catch((e) => console.error(e));
+        }
     };
 
     const closeNotePreview = () => setNotePreview(null);
@@ -295,6 +306,8 @@ export default function RoomDetailPage() {
     const [completedCount, setCompletedCount] = useState(0);
     const [totalStudyTime, setTotalStudyTime] = useState(0);
     const timerRef = useRef(null);
+    // 房间共享番茄钟（服务端计时），offset 为服务端与本地时钟的差值
+    const [roomTimer, setRoomTimer] = useState(null);
 
     // --- Task/Todo State ---
     const [tasks, setTasks] = useState([]);
@@ -338,6 +351,9 @@ export default function RoomDetailPage() {
 
     // --- WebSocket ---
     const wsRef = useRef(null);
+    const membersVersionRef = useRef(null);
+    // 房间事件流位置，断线重连时据此 resume，只补发错过的事件
+    const streamRef = useRef({ epoch: null, lastSeq: null });
     const [wsStatus, setWsStatus] = useState("disconnected");
 
     const wsSend = (msgObj) => {
@@ -357,12 +373,28 @@ export default function RoomDetailPage() {
             const p = await listPomodoros(roomId);
             setPomodoros(Array.isArray(p) ? p : []);
             const n = await listNotes(roomId);
-            setNotes(Array.isArray(n) ? n : []);
+            setNotes(toArray(n?.items));
+            setNotesCursor(n?.nextCursor ?? null);
         } catch (e) {
             console.error(e);
         }
     }, [roomId, isRoomIdValid]);
 
+    const loadMoreNotes = async () => {
+        if (!notesCursor || notesLoadingMore) return;
+        setNotesLoadingMore(true);
+        try {
+            const n = await listNotes(roomId, notesCursor);
+            const known = new Set(toArray(notes).map(item => item.id));
+            setNotes([...toArray(notes), ...toArray(n?.items).filter(item => !known.has(item.id))]);
+            setNotesCursor(n?.nextCursor ?? null);
+        } catch (e) {
+            console.error(e);
+        } finally {
+            setNotesLoadingMore(false);
+        }
+    };
+
     useEffect(() => {
         const timer = setInterval(() => setCurrentTime(new Date()), 1000);
         return () => clearInterval(timer);
@@ -416,43 +448,131 @@ export default function RoomDetailPage() {
             : `${scheme}://${window.location.host}`;
         const wsUrl = `${wsBase}/ws`;
 
-        setWsStatus("connecting");
-        const ws = new WebSocket(wsUrl);
-        wsRef.current = ws;
-
-        ws.onopen = () => {
-            setWsStatus("connected");
-            ws.send(JSON.stringify({ type: "join", payload: { roomId, user } }));
+        membersVersionRef.current = null;
+        streamRef.current = { epoch: null, lastSeq: null };
+        let currentUser = user;
+        let disposed = false;
+        let retryTimer = null;
+        let retryDelay = 1000;
+
+        const adoptUser = (serverUser) => {
+            if (serverUser?.id && serverUser.id !== currentUser.id) {
+                currentUser = { ...currentUser, id: String(serverUser.id) };
+                persistUser(currentUser);
+            }
         };
 
-        ws.onmessage = (ev) => {
-            let msgObj;
-            try { msgObj = JSON.parse(ev.data); } catch { return; }
-            const { type, payload } = msgObj || {};
-            if (!type) return;
-
-            if (type === "joined") {
-                if (payload?.user?.id && payload.user.id !== user.id) {
-                    persistUser({ ...user, id: String(payload.user.id) });
+        const connect = () => {
+            setWsStatus("connecting");
+            const ws = new WebSocket(wsUrl);
+            wsRef.current = ws;
+
+            ws.onopen = () => {
+                setWsStatus("connected");
+                retryDelay = 1000;
+                const { epoch, lastSeq } = streamRef.current;
+                if (epoch != null && lastSeq != null) {
+                    // 重连：服务端能补发就只发 resumed + 错过的事件 + 当前番茄钟/人数（成员 version 落后时补快照），
+                    // 否则按新加入回 joined + 快照
+                    const version = membersVersionRef.current;
+                    ws.send(JSON.stringify({ type: "resume", payload: { roomId, user: currentUser, epoch, lastSeq, version } }));
+                } else {
+                    membersVersionRef.current = null;
+                    ws.send(JSON.stringify({ type: "join", payload: { roomId, user: currentUser } }));
                 }
-            } else if (type === "roomMembersUpdate") {
-                setMembers(Array.isArray(payload?.members) ? payload.members : []);
-            } else if (type === "chatMessage") {
-                setChatMessages((prev) => [...prev, payload].slice(-200));
-            } else if (type === "timerStatus") {
-                const { userId, status } = payload || {};
-                if (userId) {
-                    setMembers(prev => prev.map(m => m.id === userId ? { ...m, status } : m));
+            };
+
+            ws.onmessage = (ev) => {
+                let msgObj;
+                try { msgObj = JSON.parse(ev.data); } catch { return; }
+                const { type, payload, seq } = msgObj || {};
+                if (!type) return;
+
+                if (type === "roomMembersUpdate") {
+                    // 快照标记新的事件流起点（房间可能已重建，epoch 变化后 seq 从头开始）
+                    streamRef.current = { epoch: payload?.epoch ?? null, lastSeq: seq ?? null };
+                    // 房间番茄钟在运行时、房间有多个分区时，会紧跟快照再发 roomTimer / roomOccupancy
+                    setRoomTimer(null);
+                    setOccupancy(null);
+                } else if (seq != null && streamRef.current.lastSeq != null) {
+                    // 只有可靠通道的事件带 seq，它们按序到达，最新的就是连续收到的最高位置；
+                    // 成员增量、番茄钟、人数可能越过它们先到或被合并，不参与 resume 位置
+                    streamRef.current.lastSeq = seq;
                 }
-            }
+
+                if (type === "resumed") {
+                    adoptUser(payload?.user);
+                } else if (type === "joined") {
+                    adoptUser(payload?.user);
+                    // 服务端回放的最近聊天，与加入过程中已收到的实时消息按 id 去重
+                    const history = Array.isArray(payload?.history) ? payload.history : [];
+                    if (history.length) {
+                        setChatMessages((prev) => {
+                            const seen = new Set(history.map((m) => m.id));
+                            return [...history, ...prev.filter((m) => !seen.has(m.id))].slice(-200);
+                        });
+                    }
+                } else if (type === "roomMembersUpdate") {
+                    membersVersionRef.current = Number(payload?.version ?? 0);
+                    setMembers(Array.isArray(payload?.members) ? payload.members : []);
+                } else if (type === "memberJoined" || type === "memberLeft" || type === "statusChanged" || type === "presenceBatch") {
+                    // 增量按 version 顺序应用；未收到快照前忽略，发现断档则请求完整快照。
+                    // presenceBatch 覆盖 [fromVersion, version]，其中的变化可以幂等地重复应用
+                    const local = membersVersionRef.current;
+                    const version = Number(payload?.version ?? 0);
+                    const fromVersion = Number(payload?.fromVersion ?? version);
+                    if (local == null || version <= local) return;
+                    if (fromVersion > local + 1) {
+                        ws.send(JSON.stringify({ type: "sync", payload: { version: local } }));
+                        return;
+                    }
+                    membersVersionRef.current = version;
+                    const events = type === "presenceBatch" ? (payload.events || []) : [{ ...payload, type }];
+                    setMembers(prev => events.reduce((list, ev) => {
+                        if (ev.type === "memberJoined") {
+                            return [...list.filter(m => m.id !== ev.member.id), ev.member]
+                                .sort((a, b) => (a.name || "").localeCompare(b.name || ""));
+                        }
+                        if (ev.type === "memberLeft") {
+                            return list.filter(m => m.id !== ev.id);
+                        }
+                        return list.map(m => m.id === ev.id ? { ...m, status: ev.status } : m);
+                    }, prev));
+                } else if (type === "chatMessage") {
+                    setChatMessages((prev) => [...prev, payload].slice(-200));
+                } else if (type === "roomOccupancy") {
+                    setOccupancy(Number(payload?.shards ?? 1) > 1 ? payload : null);
+                } else if (type === "roomTimer") {
+                    setRoomTimer({ ...payload, offset: Number(payload?.serverTime ?? Date.now()) - Date.now() });
+                } else if (type === "error" && payload?.message === "rate limited") {
+                    message.warning("发送太频繁，请稍后再试");
+                } else if (type === "error" && payload?.message === "content rejected") {
+                    message.warning("消息包含违规内容，未发送");
+                } else if (type === "error" && payload?.message === "invalid timer action") {
+                    // 其他成员可能刚刚暂停或停止了房间番茄钟，服务端随后的 roomTimer 会更新界面
+                    message.warning("房间番茄钟状态已变化，请重试");
+                }
+            };
+
+            ws.onclose = () => {
+                setWsStatus("disconnected");
+                if (disposed) return;
+                retryTimer = setTimeout(connect, retryDelay);
+                retryDelay = Math.min(retryDelay * 2, 15000);
+            };
+            ws.onerror = () => setWsStatus("disconnected");
         };
 
-        ws.onclose = () => setWsStatus("disconnected");
-        ws.onerror = () => setWsStatus("disconnected");
+        connect();
 
         return () => {
-            if (ws.readyState === WebSocket.OPEN) ws.send(JSON.stringify({ type: "leave", payload: {} }));
-            ws.close();
+            disposed = true;
+            clearTimeout(retryTimer);
+            const ws = wsRef.current;
+            if (ws) {
+                if (ws.readyState === WebSocket.OPEN) ws.send(JSON.stringify({ type: "leave", payload: {} }));
+                ws.close();
+            }
             wsRef.current = null;
         };
     }, [roomId, isRoomIdValid]); // eslint-disable-line
@@ -503,6 +623,17 @@ export default function RoomDetailPage() {
         wsSend({ type: "timerStatus", payload: { status: "idle" } });
     };
 
+    const sendRoomTimer = (action) => {
+        wsSend({ type: "roomTimer", payload: { action, focusMinutes: pomodoroMinutes } });
+    };
+
+    const roomTimerActive = roomTimer && roomTimer.phase !== "idle";
+    const roomTimerLeft = !roomTimerActive
+        ? 0
+        : roomTimer.paused
+            ? roomTimer.remainingMs
+            : Math.max(0, roomTimer.endsAt - (currentTime.getTime() + roomTimer.offset));
+
     // --- Actions ---
     const handleSendMessage = () => {
         const text = chatInput.trim();
@@ -633,9 +764,9 @@ export default function RoomDetailPage() {
     const handleImageUpload = (e) => {
         const file = e.target.files[0];
         if (file) {
-            const reader = new FileReader();
-            reader.onload = (evt) => setNewNoteImage(evt.target.result);
-            reader.readAsDataURL(file);
+            uploadImage(file)
+                .then((blob) => setNewNoteImage(blob.url))
+                .catch(() => message.error("图片上传失败"));
         }
     };
 
@@ -708,6 +839,11 @@ export default function RoomDetailPage() {
                 return (
                     <div>
                         <Title level={5} style={{ marginBottom: 16, color: '#6A5ACD' }}>👥 在线成员</Title>
+                        {occupancy && (
+                            <div style={{ marginTop: -8, marginBottom: 12, color: '#9575CD', fontSize: 12 }}>
+                                房间共 {occupancy.count} 人，分为 {occupancy.shards} 个分区，这里显示你所在分区的成员
+                            </div>
+                        )}
                          <List
                                      dataSource={toArray(members)}
                             renderItem={m => (
@@ -808,7 +944,7 @@ export default function RoomDetailPage() {
                             />
                             {newNoteImage && (
                                 <div style={{ marginBottom: 8, position: 'relative' }}>
-                                    <img src={newNoteImage} alt="preview" style={{ maxWidth: '100%', maxHeight: 100, borderRadius: 8, border: '2px solid #fff' }} />
+                                    <img src={assetUrl(newNoteImage)} alt="preview" style={{ maxWidth: '100%', maxHeight: 100, borderRadius: 8, border: '2px solid #fff' }} />
                                     <CloseOutlined 
                                         style={{ position: 'absolute', top: 4, right: 4, padding: 4, background: 'rgba(255,255,255,0.8)', cursor: 'pointer', borderRadius: '50%' }}
                                         onClick={() => setNewNoteImage(null)}
@@ -839,11 +975,17 @@ export default function RoomDetailPage() {
                                             onAddComment={handleAddComment} 
                                             onDeleteNote={handleDeleteNote}
                                             onDeleteComment={handleDeleteComment}
+                                            onLoadDetail={(noteId) => getNoteDetail(roomId, noteId)}
                                             isMacaron={true}
                                         />
                                     </div>
                                 )}
                             />
+                            {notesCursor && (
+                                <div style={{ textAlign: 'center', margin: '8px 0' }}>
+                                    <Button size="small" loading={notesLoadingMore} onClick={loadMoreNotes} style={{ borderRadius: 12 }}>加载更多</Button>
+                                </div>
+                            )}
                         </div>
                     </div>
                 );
@@ -922,6 +1064,27 @@ export default function RoomDetailPage() {
                              北京时间 {currentTime.toLocaleTimeString('zh-CN', { hour12: false, timeZone: 'Asia/Shanghai' })}
                         </div>
 
+                        {/* Shared room timer (server-driven) */}
+                        <div style={{ display: 'flex', gap: 8, justifyContent: 'center', alignItems: 'center', marginTop: '-12px', marginBottom: '20px', color: '#FFF' }}>
+                            <TeamOutlined />
+                            {roomTimerActive ? (
+                                <>
+                                    <Tag color={roomTimer.phase === 'focus' ? 'green' : 'blue'}>
+                                        {roomTimer.phase === 'focus' ? '房间专注' : '房间休息'}{roomTimer.paused ? ' · 已暂停' : ''}
+                                    </Tag>
+                                    <span style={{ fontWeight: 700 }}>{formatTime(Math.ceil(roomTimerLeft / 1000))}</span>
+                                    <Button size="small" onClick={() => sendRoomTimer(roomTimer.paused ? 'resume' : 'pause')}>
+                                        {roomTimer.paused ? '继续' : '暂停'}
+                                    </Button>
+                                    <Button size="small" onClick={() => sendRoomTimer('stop')}>结束</Button>
+                                </>
+                            ) : (
+                                <Button size="small" disabled={wsStatus !== 'connected'} onClick={() => sendRoomTimer('start')}>
+                                    和大家一起专注 {pomodoroMinutes} 分钟
+                                </Button>
+                            )}
+                        </div>
+
                         {/* Controls */}
                         <div className="timer-controls" style={{ marginBottom: '32px', display: 'flex', gap: '24px', justifyContent: 'center', alignItems: 'center' }}>
                             <Tooltip title="重置">
@@ -1224,12 +1387,14 @@ export default function RoomDetailPage() {
                                     </div>
                                     <div style={{ display: 'flex', gap: 12, margin: '8px 0' }}>
                                         <div style={{ width: '70%', height: 120, overflowY: 'auto', paddingRight: 6 }}>
-                                            <Paragraph style={{ fontSize: 12, margin: 0, whiteSpace: 'pre-wrap' }}>{item.content}</Paragraph>
+                                            <Paragraph style={{ fontSize: 12, margin: 0, whiteSpace: 'pre-wrap' }}>{item.content ?? item.excerpt}</Paragraph>
                                         </div>
                                         <div style={{ width: '30%', maxHeight: 120, overflowY: 'auto', paddingRight: 6 }}>
                                             {(item.image || item.imageUrl) ? (
                                                 <img
-                                                    src={item.image || item.imageUrl}
+                                                    src={assetUrl(item.thumbnailUrl || item.image || item.imageUrl)}
+                                                    loading="lazy"
+                                                    decoding="async"
                                                     style={{ width: '100%', borderRadius: 6 }}
                                                     alt="note"
                                                 />
@@ -1239,8 +1404,13 @@ export default function RoomDetailPage() {
                                         </div>
                                     </div>
                                     <Space size="small">
-                                        <Button size="small" onClick={() => {
-                                            navigator.clipboard.writeText(item.content);
+                                        <Button size="small" onClick={async () => {
+                                            const full = item.content ?? (await getNoteDetail(roomId, item.id).catch(() => null))?.content;
+                                            if (full == null) {
+                                                message.error("复制失败");
+                                                return;
+                                            }
+                                            await navigator.clipboard.writeText(full);
                                             message.success("已复制内容");
                                         }}>复制内容</Button>
                                             {(item.image || item.imageUrl) && (
@@ -1347,7 +1517,7 @@ export default function RoomDetailPage() {
                                                 {item.content}
                                             </Paragraph>
                                             {item.imageUrl && (
-                                                <img src={item.imageUrl} style={{ maxWidth: '100%', maxHeight: 200, borderRadius: 4, marginTop: 8 }} alt="note" />
+                                                <img src={assetUrl(item.imageUrl)} style={{ maxWidth: '100%', maxHeight: 200, borderRadius: 4, marginTop: 8 }} alt="note" />
                                             )}
                                         </div>
                                     )}
@@ -1374,15 +1544,15 @@ export default function RoomDetailPage() {
                                         <input type="file" accept="image/*" style={{ display: 'none' }} onChange={(e) => {
                                             const file = e.target.files[0];
                                              if (file) {
-                                                const reader = new FileReader();
-                                                reader.onload = (evt) => setPersonalNoteDraft({...personalNoteDraft, image: evt.target.result});
-                                                reader.readAsDataURL(file);
+                                                uploadImage(file)
+                                                    .then((blob) => setPersonalNoteDraft((draft) => ({...draft, image: blob.url})))
+                                                    .catch(() => message.error("图片上传失败"));
                                             }
                                         }} />
                                     </label>
                                     {personalNoteDraft.image && (
                                         <div style={{ marginTop: 8, position: 'relative', display: 'inline-block' }}>
-                                            <img src={personalNoteDraft.image} style={{ height: 100, borderRadius: 4 }} alt="preview" />
+                                            <img src={assetUrl(personalNoteDraft.image)} style={{ height: 100, borderRadius: 4 }} alt="preview" />
                                             <Button 
                                                 type="text" 
                                                 icon={<CloseOutlined />} 
@@ -1493,10 +1663,10 @@ export default function RoomDetailPage() {
                             </Space>
                         </div>
                         <div style={{ padding: 12, overflow: 'auto', flex: 1 }}>
-                            <Paragraph style={{ whiteSpace: 'pre-wrap' }}>{notePreview.content}</Paragraph>
+                            <Paragraph style={{ whiteSpace: 'pre-wrap' }}>{notePreview.content ?? notePreview.excerpt}</Paragraph>
                             {(notePreview.image || notePreview.imageUrl) && (
                                 <img
-                                    src={notePreview.image || notePreview.imageUrl}
+                                    src={assetUrl(notePreview.previewUrl || notePreview.image || notePreview.imageUrl)}
                                     style={{ maxWidth: '100%', borderRadius: 6, marginTop: 8 }}
                                     alt="note"
                                 />
@@ -79,6 +79,9 @@ export default function RoomsPage() {
              const currentCount = Number.isFinite(Number(room?.onlineUsers))
                ? Number(room.onlineUsers)
                : 0;
+             const focusingCount = Number.isFinite(Number(room?.focusingUsers))
+               ? Number(room.focusingUsers)
+               : 0;
 
              return (
                <div key={room.id} className="kawaii-card-wrapper" style={{ width: '300px', height: '320px' }}>
@@ -108,7 +111,7 @@ export default function RoomsPage() {
                         <UserOutlined /> {currentCount} / {maxCount} 人
                       </span>
                       <span className="kawaii-card-info">
-                         <ClockCircleOutlined /> 专注时刻
+                         <ClockCircleOutlined /> {focusingCount > 0 ? `${focusingCount} 人专注中` : '专注时刻'}
                       </span>
                    </div>
                  </Card>
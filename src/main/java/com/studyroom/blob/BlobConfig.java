@@ -0,0 +1,9 @@
+package com.studyroom.blob;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(BlobProperties.class)
+public class BlobConfig {
+}
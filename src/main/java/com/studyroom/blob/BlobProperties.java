@@ -0,0 +1,71 @@
+package com.studyroom.blob;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * 笔记图片等二进制内容的本地存储配置，前缀 {@code studyroom.blob}。
+ */
+@ConfigurationProperties(prefix = "studyroom.blob")
+public class BlobProperties {
+
+    /** 存储根目录，文件按内容哈希命名 */
+    private String directory = "data/blobs";
+    /** 单个文件的大小上限 */
+    private DataSize maxSize = DataSize.ofMegabytes(10);
+    /** 下载响应的 Cache-Control max-age；内容按哈希寻址不会变化，可以缓存很久 */
+    private Duration cacheMaxAge = Duration.ofDays(365);
+    /** 启动时把库里残留的 data: URL 图片转存为文件引用 */
+    private boolean migrateInlineImages = true;
+    private final Variants variants = new Variants();
+
+    public String getDirectory() { return directory; }
+    public void setDirectory(String directory) { this.directory = directory; }
+    public DataSize getMaxSize() { return maxSize; }
+    public void setMaxSize(DataSize maxSize) { this.maxSize = maxSize; }
+    public Duration getCacheMaxAge() { return cacheMaxAge; }
+    public void setCacheMaxAge(Duration cacheMaxAge) { this.cacheMaxAge = cacheMaxAge; }
+    public boolean isMigrateInlineImages() { return migrateInlineImages; }
+    public void setMigrateInlineImages(boolean migrateInlineImages) { this.migrateInlineImages = migrateInlineImages; }
+    public Variants getVariants() { return variants; }
+
+    public static class Variants {
+        /** 发布笔记时在后台生成缩小版本，列表用缩略图，详情用预览图 */
+        private boolean enabled = true;
+        /** 缩略图长边像素 */
+        private int thumbnailSize = 320;
+        /** 预览图长边像素 */
+        private int previewSize = 1080;
+        private float jpegQuality = 0.82f;
+        /** 超过该像素数的原图不处理，避免解码炸弹 */
+        private long maxSourcePixels = 50_000_000L;
+        private int threads = 2;
+        /** 等待处理的图片数上限，队列满时放弃，之后列表再次引用到这张图时重新提交 */
+        private int queueCapacity = 256;
+        /** 生成失败（解码失败、超过像素上限等）后，这段时间内不再重新提交同一张图 */
+        private Duration retryInterval = Duration.ofMinutes(10);
+        /** 内存里记住的已生成版本和最近失败的原图数量上限，超出时淘汰最久未用的 */
+        private int cacheSize = 10_000;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public int getThumbnailSize() { return thumbnailSize; }
+        public void setThumbnailSize(int thumbnailSize) { this.thumbnailSize = thumbnailSize; }
+        public int getPreviewSize() { return previewSize; }
+        public void setPreviewSize(int previewSize) { this.previewSize = previewSize; }
+        public float getJpegQuality() { return jpegQuality; }
+        public void setJpegQuality(float jpegQuality) { this.jpegQuality = jpegQuality; }
+        public long getMaxSourcePixels() { return maxSourcePixels; }
+        public void setMaxSourcePixels(long maxSourcePixels) { this.maxSourcePixels = maxSourcePixels; }
+        public int getThreads() { return threads; }
+        public void setThreads(int threads) { this.threads = threads; }
+        public int getQueueCapacity() { return queueCapacity; }
+        public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+        public Duration getRetryInterval() { return retryInterval; }
+        public void setRetryInterval(Duration retryInterval) { this.retryInterval = retryInterval; }
+        public int getCacheSize() { return cacheSize; }
+        public void setCacheSize(int cacheSize) { this.cacheSize = cacheSize; }
+    }
+}
@@ -0,0 +1,188 @@
+package com.studyroom.blob;
+
+import com.studyroom.exception.InvalidImageException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * 按内容寻址的本地文件存储：文件名是内容的 SHA-256，同一张图片无论上传多少次都只存一份，库里只记短引用 URL。
+ * <p>
+ * 上传边读边算哈希写入临时文件，完成后改名到 {@code <directory>/<哈希前两位>/<哈希>.<扩展名>}。
+ * 类型只看文件头魔数（png / jpeg / gif / webp），不信任客户端声明的 Content-Type，避免把任意内容当图片存下来再原样下发。
+ * <p>
+ * 由原图派生的缩小版本（见 {@link ImageVariants}）与原图放在同一目录，命名为 {@code <哈希>-<版本>.jpg}，同样不可变。
+ */
+@Component
+public class BlobStore {
+
+    public static final String URL_PREFIX = "/api/blobs/";
+
+    private static final Pattern NAME = Pattern.compile("[0-9a-f]{64}(-[a-z]+)?\\.(png|jpg|gif|webp)");
+    private static final int SNIFF_BYTES = 12;
+    private static final int COPY_BUFFER = 64 * 1024;
+
+    public record Blob(String url, String sha256, String contentType, long size) {}
+
+    private final Path root;
+    private final Path incoming;
+    private final long maxSize;
+
+    public BlobStore(BlobProperties properties) throws IOException {
+        this.root = Path.of(properties.getDirectory()).toAbsolutePath().normalize();
+        this.incoming = root.resolve("incoming");
+        this.maxSize = properties.getMaxSize().toBytes();
+        Files.createDirectories(incoming);
+    }
+
+    /**
+     * 读完 in 并存储，不负责关闭 in。
+     *
+     * @throws InvalidImageException 超过大小上限或不是支持的图片格式
+     */
+    public Blob put(InputStream in) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] head = new byte[SNIFF_BYTES];
+        int headLength = 0;
+        long size = 0;
+        Path temp = Files.createTempFile(incoming, "upload-", ".part");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                byte[] buffer = new byte[COPY_BUFFER];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    size += n;
+                    if (size > maxSize) {
+                        throw new InvalidImageException("image too large");
+                    }
+                    if (headLength < SNIFF_BYTES) {
+                        int copy = Math.min(n, SNIFF_BYTES - headLength);
+                        System.arraycopy(buffer, 0, head, headLength, copy);
+                        headLength += copy;
+                    }
+                    digest.update(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                }
+            }
+            String extension = sniff(head, headLength);
+            if (extension == null) {
+                throw new InvalidImageException("unsupported image type");
+            }
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            String name = sha256 + "." + extension;
+            Path target = path(name);
+            if (!Files.exists(target)) {
+                Files.createDirectories(target.getParent());
+                // 并发上传同一张图时后改名的覆盖先到的，内容相同，读者看到的始终是完整文件
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return new Blob(URL_PREFIX + name, sha256, contentType(name), size);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 兼容直接提交 {@code data:image/...;base64,...} 的旧客户端和历史数据：解码后存储并返回引用 URL，其他值原样返回。
+     * 直接在原字符串上解码，不再复制一份 base64 文本。
+     *
+     * @throws InvalidImageException 不是 base64 编码的图片
+     */
+    public String internDataUrl(String value) {
+        if (value == null || !value.regionMatches(true, 0, "data:", 0, 5)) {
+            return value;
+        }
+        int comma = value.indexOf(',');
+        if (comma < 7 || !value.regionMatches(true, comma - 7, ";base64", 0, 7)) {
+            throw new InvalidImageException("unsupported data url");
+        }
+        InputStream encoded = new InputStream() {
+            private int position = comma + 1;
+
+            @Override
+            public int read() {
+                return position < value.length() ? value.charAt(position++) & 0xFF : -1;
+            }
+        };
+        try (InputStream in = Base64.getMimeDecoder().wrap(encoded)) {
+            return put(in).url();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return 名字合法且文件存在时返回其路径，否则 null
+     */
+    public Path find(String name) {
+        if (name == null || !NAME.matcher(name).matches()) {
+            return null;
+        }
+        Path path = path(name);
+        return Files.isRegularFile(path) ? path : null;
+    }
+
+    /**
+     * @return url 指向本存储中的文件时返回文件名，否则 null（外链、旧数据等）
+     */
+    public static String nameOf(String url) {
+        if (url == null || !url.startsWith(URL_PREFIX)) {
+            return null;
+        }
+        String name = url.substring(URL_PREFIX.length());
+        return NAME.matcher(name).matches() ? name : null;
+    }
+
+    public static String contentType(String name) {
+        String extension = name.substring(name.lastIndexOf('.') + 1);
+        return switch (extension) {
+            case "png" -> "image/png";
+            case "jpg" -> "image/jpeg";
+            case "gif" -> "image/gif";
+            case "webp" -> "image/webp";
+            default -> "application/octet-stream";
+        };
+    }
+
+    Path path(String name) {
+        return root.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    private static String sniff(byte[] head, int length) {
+        if (length >= 8 && (head[0] & 0xFF) == 0x89 && head[1] == 'P' && head[2] == 'N' && head[3] == 'G'
+                && head[4] == 0x0D && head[5] == 0x0A && head[6] == 0x1A && head[7] == 0x0A) {
+            return "png";
+        }
+        if (length >= 3 && (head[0] & 0xFF) == 0xFF && (head[1] & 0xFF) == 0xD8 && (head[2] & 0xFF) == 0xFF) {
+            return "jpg";
+        }
+        if (length >= 6 && head[0] == 'G' && head[1] == 'I' && head[2] == 'F' && head[3] == '8'
+                && (head[4] == '7' || head[4] == '9') && head[5] == 'a') {
+            return "gif";
+        }
+        if (length >= 12 && head[0] == 'R' && head[1] == 'I' && head[2] == 'F' && head[3] == 'F'
+                && head[8] == 'W' && head[9] == 'E' && head[10] == 'B' && head[11] == 'P') {
+            return "webp";
+        }
+        return null;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
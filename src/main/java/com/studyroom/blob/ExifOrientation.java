@@ -0,0 +1,135 @@
+package com.studyroom.blob;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 手机照片常把像素按传感器方向存储，再用 EXIF Orientation 标记显示方向；浏览器显示原图时会照做，ImageIO 解码时不会。
+ * 这里只解析 JPEG APP1 段里 IFD0 的 Orientation（0x0112）一项，生成缩小版本时把方向转正。
+ */
+final class ExifOrientation {
+
+    private static final int NORMAL = 1;
+    private static final int TAG_ORIENTATION = 0x0112;
+
+    private ExifOrientation() {
+    }
+
+    /**
+     * @return 1..8，没有或无法解析时返回 1
+     */
+    static int read(Path jpeg) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(jpeg)))) {
+            if (in.readUnsignedShort() != 0xFFD8) {
+                return NORMAL;
+            }
+            while (true) {
+                int marker = in.readUnsignedShort();
+                // SOS 之后是图像数据，EXIF 只会出现在它之前
+                if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA || marker == 0xFFD9) {
+                    return NORMAL;
+                }
+                int length = in.readUnsignedShort() - 2;
+                if (length < 0) {
+                    return NORMAL;
+                }
+                if (marker == 0xFFE1) {
+                    byte[] segment = new byte[length];
+                    in.readFully(segment);
+                    int orientation = parse(segment);
+                    if (orientation != 0) {
+                        return orientation;
+                    }
+                } else {
+                    in.skipNBytes(length);
+                }
+            }
+        } catch (EOFException e) {
+            return NORMAL;
+        }
+    }
+
+    /**
+     * @return APP1 不是 EXIF 或没有 Orientation 时返回 0
+     */
+    private static int parse(byte[] b) {
+        if (b.length < 14 || b[0] != 'E' || b[1] != 'x' || b[2] != 'i' || b[3] != 'f' || b[4] != 0 || b[5] != 0) {
+            return 0;
+        }
+        int tiff = 6;
+        boolean little;
+        if (b[tiff] == 'I' && b[tiff + 1] == 'I') {
+            little = true;
+        } else if (b[tiff] == 'M' && b[tiff + 1] == 'M') {
+            little = false;
+        } else {
+            return 0;
+        }
+        long ifd = tiff + (read32(b, tiff + 4, little) & 0xFFFFFFFFL);
+        if (ifd + 2 > b.length) {
+            return 0;
+        }
+        int entries = read16(b, (int) ifd, little);
+        for (int i = 0; i < entries; i++) {
+            int entry = (int) ifd + 2 + i * 12;
+            if (entry + 12 > b.length) {
+                return 0;
+            }
+            if (read16(b, entry, little) == TAG_ORIENTATION) {
+                int value = read16(b, entry + 8, little);
+                return value >= 1 && value <= 8 ? value : 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 按 Orientation 把图像转到显示方向，5~8 会交换宽高。
+     */
+    static BufferedImage apply(BufferedImage image, int orientation) {
+        if (orientation <= NORMAL || orientation > 8) {
+            return image;
+        }
+        int w = image.getWidth();
+        int h = image.getHeight();
+        AffineTransform transform = switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, w, 0);   // 水平镜像
+            case 3 -> new AffineTransform(-1, 0, 0, -1, w, h);  // 旋转 180°
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, h);   // 垂直镜像
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);    // 沿主对角线翻转
+            case 6 -> new AffineTransform(0, 1, -1, 0, h, 0);   // 顺时针 90°
+            case 7 -> new AffineTransform(0, -1, -1, 0, h, w);  // 沿副对角线翻转
+            default -> new AffineTransform(0, -1, 1, 0, 0, w);  // 逆时针 90°
+        };
+        boolean swap = orientation >= 5;
+        BufferedImage out = new BufferedImage(swap ? h : w, swap ? w : h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            g.drawImage(image, transform, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    private static int read16(byte[] b, int offset, boolean little) {
+        return little
+                ? (b[offset] & 0xFF) | (b[offset + 1] & 0xFF) << 8
+                : (b[offset] & 0xFF) << 8 | (b[offset + 1] & 0xFF);
+    }
+
+    private static int read32(byte[] b, int offset, boolean little) {
+        return little
+                ? read16(b, offset, true) | read16(b, offset + 2, true) << 16
+                : read16(b, offset, false) << 16 | read16(b, offset + 2, false);
+    }
+}
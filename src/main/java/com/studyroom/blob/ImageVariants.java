@@ -0,0 +1,272 @@
+package com.studyroom.blob;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 笔记图片的缩小版本：发布时提交到有界线程池，后台解码原图生成预览图和缩略图（JPEG），和原图一起存在 {@link BlobStore} 里。
+ * <p>
+ * 版本文件名由原图哈希决定，生成一次即可永久缓存；还没生成好时列表先用原图。
+ * 只处理 ImageIO 自带解码器支持的 png / jpeg，gif（可能是动图）和 webp 原样使用。
+ */
+@Component
+public class ImageVariants {
+
+    public enum Variant {
+        THUMBNAIL("thumb"),
+        PREVIEW("preview");
+
+        private final String suffix;
+
+        Variant(String suffix) {
+            this.suffix = suffix;
+        }
+    }
+
+    private final BlobStore blobStore;
+    private final BlobProperties.Variants config;
+    private final ExecutorService executor;
+    /** 排队或处理中的原图，处理结束（无论成败）即移除，避免同一张图重复排队 */
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    /** 最近确认已生成的版本文件名，列表每行不必再查一次文件系统 */
+    private final Map<String, Boolean> ready;
+    /** 最近生成失败的原图及失败时刻，重试间隔内不再提交 */
+    private final Map<String, Long> failed;
+
+    @Autowired
+    public ImageVariants(BlobStore blobStore, BlobProperties properties) {
+        this(blobStore, properties, executor(properties.getVariants()));
+    }
+
+    /**
+     * @param executor 执行生成任务，满载时应抛出 {@link RejectedExecutionException}
+     */
+    ImageVariants(BlobStore blobStore, BlobProperties properties, ExecutorService executor) {
+        this.blobStore = blobStore;
+        this.config = properties.getVariants();
+        this.ready = lru(config.getCacheSize());
+        this.failed = lru(config.getCacheSize());
+        this.executor = executor;
+        // 解码/编码都在内存里完成，不需要 ImageIO 的磁盘缓存
+        ImageIO.setUseCache(false);
+    }
+
+    private static ExecutorService executor(BlobProperties.Variants config) {
+        int threads = Math.max(1, config.getThreads());
+        AtomicInteger seq = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, config.getQueueCapacity())), r -> {
+                    Thread t = new Thread(r, "blob-variant-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                });
+    }
+
+    /**
+     * 异步生成 imageUrl 的各个版本；不是本存储里的 png / jpeg 原图时忽略。
+     * 队列满时放弃，之后 {@link #url} 会再次提交；生成失败的图片在重试间隔过后才会再次提交。
+     */
+    public void submit(String imageUrl) {
+        String name = BlobStore.nameOf(imageUrl);
+        if (!config.isEnabled() || !isSource(name) || recentlyFailed(name) || !inFlight.add(name)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    if (render(name)) {
+                        failed.remove(name);
+                        for (Variant variant : Variant.values()) {
+                            ready.put(variantName(name, variant), Boolean.TRUE);
+                        }
+                    } else {
+                        failed.put(name, System.currentTimeMillis());
+                    }
+                } finally {
+                    inFlight.remove(name);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(name);
+        }
+    }
+
+    /**
+     * @return 已生成的版本 URL；还没有时返回 null（调用方退回原图），并补交一次生成任务，
+     *         覆盖队列满被放弃、重启前没来得及处理和历史数据几种情况
+     */
+    public String url(String imageUrl, Variant variant) {
+        String name = BlobStore.nameOf(imageUrl);
+        if (!config.isEnabled() || !isSource(name)) {
+            return null;
+        }
+        String variantName = variantName(name, variant);
+        if (ready.containsKey(variantName)) {
+            return BlobStore.URL_PREFIX + variantName;
+        }
+        if (Files.exists(blobStore.path(variantName))) {
+            ready.put(variantName, Boolean.TRUE);
+            return BlobStore.URL_PREFIX + variantName;
+        }
+        submit(imageUrl);
+        return null;
+    }
+
+    private boolean recentlyFailed(String name) {
+        Long failedAt = failed.get(name);
+        return failedAt != null && System.currentTimeMillis() - failedAt < config.getRetryInterval().toMillis();
+    }
+
+    /**
+     * 按访问顺序淘汰的有界表，读写都在表的锁内。
+     */
+    private static <V> Map<String, V> lru(int maxEntries) {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > Math.max(1, maxEntries);
+            }
+        });
+    }
+
+    private static boolean isSource(String name) {
+        return name != null && name.indexOf('-') < 0 && (name.endsWith(".png") || name.endsWith(".jpg"));
+    }
+
+    private static String variantName(String source, Variant variant) {
+        return source.substring(0, source.indexOf('.')) + "-" + variant.suffix + ".jpg";
+    }
+
+    /**
+     * @return false 表示没有生成（解不出来、超过像素上限或写入失败）
+     */
+    private boolean render(String name) {
+        Path source = blobStore.path(name);
+        try {
+            BufferedImage decoded = decode(source, config.getPreviewSize());
+            if (decoded == null) {
+                return false;
+            }
+            int orientation = name.endsWith(".jpg") ? ExifOrientation.read(source) : 1;
+            // 缩略图从预览图再缩，原图只解码一次
+            BufferedImage preview = ExifOrientation.apply(scale(decoded, config.getPreviewSize()), orientation);
+            write(preview, variantName(name, Variant.PREVIEW));
+            write(scale(preview, config.getThumbnailSize()), variantName(name, Variant.THUMBNAIL));
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // 解不出来的图片不生成版本，列表继续使用原图
+            return false;
+        }
+    }
+
+    /**
+     * 按整数倍隔行隔列解码到不小于目标尺寸两倍，几千万像素的照片不必整张解进内存，后续逐级缩小仍有足够的采样。
+     */
+    private BufferedImage decode(Path source, int bound) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                long width = reader.getWidth(0);
+                long height = reader.getHeight(0);
+                if (width * height > config.getMaxSourcePixels()) {
+                    return null;
+                }
+                int step = (int) Math.max(1, Math.max(width, height) / (bound * 2L));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 长边缩到 bound 以内（不放大），每步最多缩一半，双线性插值；透明部分铺白底。
+     */
+    private static BufferedImage scale(BufferedImage source, int bound) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        double ratio = Math.min(1.0, (double) bound / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+        BufferedImage current = source;
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, width, height);
+                g.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private void write(BufferedImage image, String name) throws IOException {
+        Path target = blobStore.path(name);
+        Path temp = Files.createTempFile(target.getParent(), "variant-", ".part");
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(config.getJpegQuality());
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(temp.toFile())) {
+                writer.setOutput(out);
+                writer.write(null, new IIOImage(image, null, null), param);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            writer.dispose();
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,78 @@
+package com.studyroom.blob;
+
+import com.studyroom.entity.NoteShare;
+import com.studyroom.entity.PersonalNote;
+import com.studyroom.exception.InvalidImageException;
+import com.studyroom.repository.NoteShareRepository;
+import com.studyroom.repository.PersonalNoteRepository;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 启动时把 note_share / personal_note 里残留的 data: URL 图片转存到 {@link BlobStore}，列里只留引用。
+ * 按 id 分批扫描，每批只加载少量行；解不出来的行保持原样跳过，下次启动还会再试。
+ */
+@Component
+class InlineImageMigration implements ApplicationRunner {
+
+    private static final String DATA_URL = "data:";
+    private static final int BATCH = 50;
+
+    private final BlobProperties properties;
+    private final BlobStore blobStore;
+    private final NoteShareRepository noteShareRepository;
+    private final PersonalNoteRepository personalNoteRepository;
+
+    InlineImageMigration(BlobProperties properties, BlobStore blobStore,
+                         NoteShareRepository noteShareRepository, PersonalNoteRepository personalNoteRepository) {
+        this.properties = properties;
+        this.blobStore = blobStore;
+        this.noteShareRepository = noteShareRepository;
+        this.personalNoteRepository = personalNoteRepository;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!properties.isMigrateInlineImages()) {
+            return;
+        }
+        migrate(noteShareRepository::findByIdGreaterThanAndImageUrlStartingWithOrderByIdAsc,
+            NoteShare::getId, NoteShare::getImageUrl, NoteShare::setImageUrl, noteShareRepository::save);
+        migrate(personalNoteRepository::findByIdGreaterThanAndImageUrlStartingWithOrderByIdAsc,
+            PersonalNote::getId, PersonalNote::getImageUrl, PersonalNote::setImageUrl,
+            personalNoteRepository::save);
+    }
+
+    private <T> void migrate(PageQuery<T> query, Function<T, Long> id, Function<T, String> image,
+                             BiConsumer<T, String> setImage, Consumer<T> save) {
+        long lastId = 0;
+        while (true) {
+            List<T> rows = query.apply(lastId, DATA_URL, Limit.of(BATCH));
+            if (rows.isEmpty()) {
+                return;
+            }
+            for (T row : rows) {
+                lastId = id.apply(row);
+                try {
+                    setImage.accept(row, blobStore.internDataUrl(image.apply(row)));
+                    save.accept(row);
+                } catch (InvalidImageException | UncheckedIOException e) {
+                    // 损坏或非图片的 data: URL，保持原样
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface PageQuery<T> {
+        List<T> apply(Long afterId, String prefix, Limit limit);
+    }
+}
@@ -0,0 +1,102 @@
+package com.studyroom.controller;
+
+import com.studyroom.blob.BlobProperties;
+import com.studyroom.blob.BlobStore;
+import com.studyroom.blob.BlobStore.Blob;
+import com.studyroom.common.Result;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+@RestController
+@RequestMapping("/api/blobs")
+@CrossOrigin(origins = "*")
+public class BlobController {
+
+    // Tomcat NIO 连接器的 sendfile 约定：响应头写完后由连接器直接把文件交给内核发送
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final BlobStore blobStore;
+    private final String cacheControl;
+
+    public BlobController(BlobStore blobStore, BlobProperties properties) {
+        this.blobStore = blobStore;
+        this.cacheControl = CacheControl.maxAge(properties.getCacheMaxAge()).cachePublic().immutable().getHeaderValue();
+    }
+
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Result<Blob> upload(@RequestParam("file") MultipartFile file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return Result.success(blobStore.put(in));
+        }
+    }
+
+    /**
+     * 请求体就是图片本身（Content-Type: image/*），不经过 multipart 解析，边收边写盘。
+     */
+    @PostMapping(consumes = "image/*")
+    public Result<Blob> uploadRaw(HttpServletRequest request) throws IOException {
+        return Result.success(blobStore.put(request.getInputStream()));
+    }
+
+    /**
+     * 内容按哈希寻址永不改变：ETag 就是哈希，配合长期 immutable 缓存，命中 If-None-Match 直接 304。
+     * 连接器支持时走 sendfile，由内核直接发送，文件内容不经过用户态；否则退回 FileChannel.transferTo，
+     * 目标是包装了响应输出流的通道，内容仍会分块复制进用户态缓冲区，只是不会整体读进内存。
+     */
+    @GetMapping("/{name}")
+    public void download(@PathVariable String name, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        Path path = blobStore.find(name);
+        if (path == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        String etag = "\"" + name.substring(0, name.indexOf('.')) + "\"";
+        if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+            return;
+        }
+        long size = Files.size(path);
+        response.setContentType(BlobStore.contentType(name));
+        response.setContentLengthLong(size);
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, path.toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, size);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < size) {
+                long sent = channel.transferTo(position, size - position, out);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+            }
+        }
+    }
+}
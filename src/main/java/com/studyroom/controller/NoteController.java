@@ -31,8 +31,19 @@ public class NoteController {
     }
 
     @GetMapping("/share/list")
-    public Result<List<NoteShare>> getRoomNotes(@RequestParam Long roomId) {
-        return Result.success(noteService.getRoomNotes(roomId));
+    public Result<CursorPage<NoteSummary>> getRoomNotes(@RequestParam Long roomId,
+                                                        @RequestParam(required = false) String cursor,
+                                                        @RequestParam(required = false) Integer limit) {
+        return Result.success(noteService.getRoomNotes(roomId, cursor, limit));
+    }
+
+    @GetMapping("/share/detail")
+    public Result<NoteShareView> getNoteDetail(@RequestParam Long noteId) {
+        NoteShareView note = noteService.getNoteDetail(noteId);
+        if (note == null) {
+            return Result.error(404, "Note not found");
+        }
+        return Result.success(note);
     }
 
     // --- Comment ---
@@ -45,8 +56,10 @@ public class NoteController {
     }
 
     @GetMapping("/comment/list")
-    public Result<List<Comment>> getNoteComments(@RequestParam Long noteId) {
-        return Result.success(noteService.getNoteComments(noteId));
+    public Result<CursorPage<Comment>> getNoteComments(@RequestParam Long noteId,
+                                                       @RequestParam(required = false) String cursor,
+                                                       @RequestParam(required = false) Integer limit) {
+        return Result.success(noteService.getNoteComments(noteId, cursor, limit));
     }
 
     @PostMapping("/comment/like")
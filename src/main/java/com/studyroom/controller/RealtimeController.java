@@ -0,0 +1,49 @@
+package com.studyroom.controller;
+
+import com.studyroom.ws.ChatModerator;
+import com.studyroom.ws.ClusterRelay;
+import com.studyroom.ws.MessageRateLimiter;
+import com.studyroom.ws.OutboundWriterPool;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/realtime")
+public class RealtimeController {
+
+    private final MessageRateLimiter rateLimiter;
+    private final ClusterRelay clusterRelay;
+    private final ChatModerator moderator;
+    private final OutboundWriterPool writerPool;
+
+    public RealtimeController(MessageRateLimiter rateLimiter, ClusterRelay clusterRelay, ChatModerator moderator,
+                              OutboundWriterPool writerPool) {
+        this.rateLimiter = rateLimiter;
+        this.clusterRelay = clusterRelay;
+        this.moderator = moderator;
+        this.writerPool = writerPool;
+    }
+
+    @GetMapping("/throttle")
+    public MessageRateLimiter.ThrottleStats throttle() {
+        return rateLimiter.stats();
+    }
+
+    @GetMapping("/cluster")
+    public ClusterRelay.ClusterStats cluster() {
+        return clusterRelay.stats();
+    }
+
+    @GetMapping("/moderation")
+    public ChatModerator.ModerationStats moderation() {
+        return moderator.stats();
+    }
+
+    @GetMapping("/outbound")
+    public List<OutboundWriterPool.LaneStats> outbound() {
+        return writerPool.laneStats();
+    }
+}
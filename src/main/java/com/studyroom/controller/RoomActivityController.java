@@ -2,7 +2,9 @@ package com.studyroom.controller;
 
 import com.studyroom.dto.*;
 import com.studyroom.dto.NoteDTOs.CommentView;
+import com.studyroom.dto.NoteDTOs.CursorPage;
 import com.studyroom.dto.NoteDTOs.NoteShareView;
+import com.studyroom.dto.NoteDTOs.NoteSummaryView;
 import com.studyroom.entity.Comment;
 import com.studyroom.entity.NoteShare;
 import com.studyroom.service.NoteService;
@@ -47,8 +49,19 @@ public class RoomActivityController {
     // --- Note Endpoints ---
 
     @GetMapping("/notes")
-    public List<NoteShareView> getNotes(@PathVariable Long roomId) {
-        return noteService.getRoomNotesWithMeta(roomId);
+    public CursorPage<NoteSummaryView> getNotes(@PathVariable Long roomId,
+                                                @RequestParam(required = false) String cursor,
+                                                @RequestParam(required = false) Integer limit) {
+        return noteService.getRoomNotesWithMeta(roomId, cursor, limit);
+    }
+
+    @GetMapping("/notes/{noteId}")
+    public NoteShareView getNote(@PathVariable Long roomId, @PathVariable Long noteId) {
+        NoteShareView note = noteService.getNoteDetail(noteId);
+        if (note == null || !roomId.equals(note.roomId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Note not found");
+        }
+        return note;
     }
 
     @PostMapping("/notes")
@@ -69,8 +82,10 @@ public class RoomActivityController {
     }
 
     @GetMapping("/notes/{noteId}/comments")
-    public List<CommentView> getComments(@PathVariable Long roomId, @PathVariable Long noteId) {
-        return noteService.getNoteCommentsWithUser(noteId);
+    public CursorPage<CommentView> getComments(@PathVariable Long roomId, @PathVariable Long noteId,
+                                               @RequestParam(required = false) String cursor,
+                                               @RequestParam(required = false) Integer limit) {
+        return noteService.getNoteCommentsWithUser(noteId, cursor, limit);
     }
 
     @PostMapping("/notes/comments/{commentId}/like")
@@ -3,11 +3,16 @@ package com.studyroom.controller;
 import com.studyroom.dto.CreateRoomRequest;
 import com.studyroom.entity.Room;
 import com.studyroom.service.RoomService;
+import com.studyroom.ws.ChatLog;
+import com.studyroom.ws.ClusterRelay;
 import com.studyroom.ws.RoomRealtimeService;
 import jakarta.validation.Valid;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/rooms")
@@ -15,19 +20,23 @@ import java.util.List;
 public class RoomController {
 
     private final RoomService roomService;
-    private final RoomRealtimeService roomRealtimeService;
+    /** 人数、统计、聊天历史都在房间 owner 节点上，经它读取 */
+    private final ClusterRelay clusterRelay;
 
-    public RoomController(RoomService roomService, RoomRealtimeService roomRealtimeService) {
+    public RoomController(RoomService roomService, ClusterRelay clusterRelay) {
         this.roomService = roomService;
-        this.roomRealtimeService = roomRealtimeService;
+        this.clusterRelay = clusterRelay;
     }
 
     @GetMapping
     public List<Room> list() {
         List<Room> rooms = roomService.list();
+        Map<Long, RoomRealtimeService.RoomCounts> counts =
+                clusterRelay.roomCounts(rooms.stream().map(Room::getId).toList());
         rooms.forEach(room -> {
-            int count = roomRealtimeService.snapshotMembers(room.getId()).count();
-            room.setOnlineUsers(count);
+            RoomRealtimeService.RoomCounts c = counts.getOrDefault(room.getId(), RoomRealtimeService.RoomCounts.EMPTY);
+            room.setOnlineUsers(c.online());
+            room.setFocusingUsers(c.focusing());
         });
         return rooms;
     }
@@ -37,6 +46,21 @@ public class RoomController {
         return roomService.getRoom(id);
     }
 
+    @GetMapping("/{id}/realtime")
+    public RoomRealtimeService.RoomTrafficStats realtimeStats(@PathVariable Long id) {
+        return ownerReply(clusterRelay.trafficStats(id));
+    }
+
+    /**
+     * 聊天历史分页，从新到旧翻页；before 传上一页返回的 nextCursor。
+     */
+    @GetMapping("/{id}/chat")
+    public ChatLog.ChatPage chatHistory(@PathVariable Long id,
+                                        @RequestParam(required = false) Long before,
+                                        @RequestParam(defaultValue = "50") int limit) {
+        return ownerReply(clusterRelay.chatPage(id, before, Math.max(1, Math.min(limit, 200))));
+    }
+
     @PostMapping
     public Room create(@Valid @RequestBody CreateRoomRequest req) {
         return roomService.create(req);
@@ -51,4 +75,11 @@ public class RoomController {
         roomService.delete(id);
     }
 
+    private static <T> T ownerReply(T reply) {
+        if (reply == null) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "room owner unavailable");
+        }
+        return reply;
+    }
+
 }
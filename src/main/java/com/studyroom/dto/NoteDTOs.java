@@ -74,6 +74,9 @@ public class NoteDTOs {
         public String content;
         public String imageUrl;
         public String image;
+        /** 缩小版本，后台还没生成好时为 null，客户端退回 imageUrl */
+        public String thumbnailUrl;
+        public String previewUrl;
         public Long userId;
         public String username;
         public String userAvatar;
@@ -83,4 +86,39 @@ public class NoteDTOs {
         public List<Long> collectedByUserIds;
         public List<CommentView> comments;
     }
+
+    /**
+     * 列表用的笔记摘要：不含完整正文和评论，正文只带开头一段 excerpt（truncated 表示后面还有），完整内容走详情接口。
+     */
+    public static class NoteSummary {
+        public Long id;
+        public String title;
+        public String excerpt;
+        public Boolean truncated;
+        /** 图片引用；历史遗留的内嵌图片不在列表里返回，此时 hasImage 为 true、imageUrl 为 null */
+        public String imageUrl;
+        public String image;
+        public Boolean hasImage;
+        public String thumbnailUrl;
+        public String previewUrl;
+        public Long userId;
+        public Long roomId;
+        public LocalDateTime createTime;
+        public Integer collectCount;
+    }
+
+    public static class NoteSummaryView extends NoteSummary {
+        public String username;
+        public String userAvatar;
+        public Long commentCount;
+        public List<Long> collectedByUserIds;
+    }
+
+    /**
+     * 游标分页结果，nextCursor 为 null 表示已经是最后一页。
+     */
+    public static class CursorPage<T> {
+        public List<T> items;
+        public String nextCursor;
+    }
 }
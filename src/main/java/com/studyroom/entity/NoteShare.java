@@ -4,7 +4,9 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "note_share")
+@Table(name = "note_share", indexes = {
+    @Index(name = "idx_note_share_room_time", columnList = "room_id, create_time, id")
+})
 public class NoteShare {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -26,6 +26,10 @@ public class Room {
     @Column(nullable = false)
     private LocalDateTime createdAt;
 
+    /** 实时专注人数，由列表接口填充，不落库 */
+    @Transient
+    private Integer focusingUsers = 0;
+
     @PrePersist
     public void prePersist() {
         this.createdAt = LocalDateTime.now();
@@ -45,5 +49,8 @@ public class Room {
     public Integer getOnlineUsers() { return onlineUsers; }
     public void setOnlineUsers(Integer onlineUsers) { this.onlineUsers = onlineUsers; }
 
+    public Integer getFocusingUsers() { return focusingUsers; }
+    public void setFocusingUsers(Integer focusingUsers) { this.focusingUsers = focusingUsers; }
+
     public LocalDateTime getCreatedAt() { return createdAt; }
 }
@@ -24,6 +24,16 @@ public class GlobalExceptionHandler {
         return Result.error(400, message);
     }
 
+    @ExceptionHandler(InvalidCursorException.class)
+    public Result<Void> handleInvalidCursor(InvalidCursorException ex) {
+        return Result.error(400, ex.getMessage());
+    }
+
+    @ExceptionHandler(InvalidImageException.class)
+    public Result<Void> handleInvalidImage(InvalidImageException ex) {
+        return Result.error(400, ex.getMessage());
+    }
+
     @ExceptionHandler(Exception.class)
     public Result<Void> handleGeneric(Exception ex) {
         return Result.error(500, ex.getMessage() == null ? "internal error" : ex.getMessage());
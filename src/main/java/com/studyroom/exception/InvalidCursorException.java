@@ -0,0 +1,14 @@
+package com.studyroom.exception;
+
+public class InvalidCursorException extends RuntimeException {
+    private final String cursor;
+
+    public InvalidCursorException(String cursor, Throwable cause) {
+        super("invalid cursor", cause);
+        this.cursor = cursor;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+}
@@ -1,10 +1,36 @@
 package com.studyroom.repository;
 
 import com.studyroom.entity.Comment;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface CommentRepository extends JpaRepository<Comment, Long> {
-    List<Comment> findByNoteIdOrderByCreateTimeAsc(Long noteId);
+
+    interface NoteCommentCount {
+        Long getNoteId();
+        Long getTotal();
+    }
+
+    List<Comment> findByNoteIdInOrderByCreateTimeAscIdAsc(Collection<Long> noteIds);
     void deleteByNoteId(Long noteId);
+
+    // 按 (create_time, id) 正序的 keyset 分页，走 idx_comment_note_time
+    List<Comment> findByNoteIdOrderByCreateTimeAscIdAsc(Long noteId, Limit limit);
+
+    @Query("select c from Comment c where c.noteId = :noteId"
+        + " and (c.createTime > :createTime or (c.createTime = :createTime and c.id > :id))"
+        + " order by c.createTime asc, c.id asc")
+    List<Comment> findNotePageAfter(@Param("noteId") Long noteId,
+                                    @Param("createTime") LocalDateTime createTime,
+                                    @Param("id") Long id,
+                                    Limit limit);
+
+    @Query("select c.noteId as noteId, count(c) as total from Comment c where c.noteId in :noteIds group by c.noteId")
+    List<NoteCommentCount> countByNoteIdIn(@Param("noteIds") Collection<Long> noteIds);
 }
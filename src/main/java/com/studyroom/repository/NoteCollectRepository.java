@@ -2,6 +2,7 @@ package com.studyroom.repository;
 
 import com.studyroom.entity.NoteCollect;
 import org.springframework.data.jpa.repository.JpaRepository;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -9,6 +10,7 @@ public interface NoteCollectRepository extends JpaRepository<NoteCollect, Long>
     List<NoteCollect> findByUserIdOrderByCreateTimeDesc(Long userId);
     Optional<NoteCollect> findByNoteIdAndUserId(Long noteId, Long userId);
     List<NoteCollect> findByNoteId(Long noteId);
+    List<NoteCollect> findByNoteIdIn(Collection<Long> noteIds);
     void deleteByNoteId(Long noteId);
     void deleteByNoteIdAndUserId(Long noteId, Long userId);
 }
@@ -1,9 +1,36 @@
 package com.studyroom.repository;
 
 import com.studyroom.entity.NoteShare;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface NoteShareRepository extends JpaRepository<NoteShare, Long> {
-    List<NoteShare> findByRoomIdOrderByCreateTimeDesc(Long roomId);
+
+    String SUMMARY_SELECT = "select n.id as id, n.title as title, n.userId as userId, n.roomId as roomId,"
+        + " n.createTime as createTime, n.collectCount as collectCount,"
+        + " substring(n.content, 1, " + NoteShareSummary.EXCERPT_LENGTH + ") as excerpt,"
+        + " length(n.content) as contentLength,"
+        + " case when length(n.imageUrl) <= " + NoteShareSummary.MAX_IMAGE_REF_LENGTH + " then n.imageUrl end as imageUrl,"
+        + " case when n.imageUrl is null then false else true end as hasImage"
+        + " from NoteShare n where n.roomId = :roomId";
+
+    // 按 (create_time, id) 倒序的 keyset 分页，走 idx_note_share_room_time
+    @Query(SUMMARY_SELECT + " order by n.createTime desc, n.id desc")
+    List<NoteShareSummary> findRoomSummaries(@Param("roomId") Long roomId, Limit limit);
+
+    @Query(SUMMARY_SELECT
+        + " and (n.createTime < :createTime or (n.createTime = :createTime and n.id < :id))"
+        + " order by n.createTime desc, n.id desc")
+    List<NoteShareSummary> findRoomSummariesAfter(@Param("roomId") Long roomId,
+                                                  @Param("createTime") LocalDateTime createTime,
+                                                  @Param("id") Long id,
+                                                  Limit limit);
+
+    // 按 id 顺序扫描仍以 data: URL 内嵌在库里的图片，用于转存
+    List<NoteShare> findByIdGreaterThanAndImageUrlStartingWithOrderByIdAsc(Long id, String prefix, Limit limit);
 }
@@ -0,0 +1,25 @@
+package com.studyroom.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * 笔记列表用的投影：正文只在库里截取开头一段，图片列只取短引用，不把 TEXT 大字段整列读出来。
+ */
+public interface NoteShareSummary {
+
+    /** 列表摘要的最大字符数 */
+    int EXCERPT_LENGTH = 120;
+    /** 超过该长度的 image_url 视为历史遗留的内嵌图片（data: URL），列表里不返回 */
+    int MAX_IMAGE_REF_LENGTH = 512;
+
+    Long getId();
+    String getTitle();
+    Long getUserId();
+    Long getRoomId();
+    LocalDateTime getCreateTime();
+    Integer getCollectCount();
+    String getExcerpt();
+    Long getContentLength();
+    String getImageUrl();
+    Boolean getHasImage();
+}
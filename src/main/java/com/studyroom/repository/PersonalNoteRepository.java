@@ -1,9 +1,13 @@
 package com.studyroom.repository;
 
 import com.studyroom.entity.PersonalNote;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import java.util.List;
 
 public interface PersonalNoteRepository extends JpaRepository<PersonalNote, Long> {
     List<PersonalNote> findByUserIdOrderByCreateTimeDesc(Long userId);
+
+    // 按 id 顺序扫描仍以 data: URL 内嵌在库里的图片，用于转存
+    List<PersonalNote> findByIdGreaterThanAndImageUrlStartingWithOrderByIdAsc(Long id, String prefix, Limit limit);
 }
@@ -0,0 +1,42 @@
+package com.studyroom.service;
+
+import com.studyroom.exception.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * 笔记流 / 评论列表的续页游标：上一页最后一行的 (create_time, id)。
+ * 对客户端是不透明的 base64url 字符串，客户端只需原样带回；id 用来区分同一时刻写入的多行。
+ */
+public record FeedCursor(LocalDateTime createTime, Long id) {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    public String encode() {
+        return ENCODER.encodeToString((createTime + "|" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return token 为空时返回 null（第一页）
+     * @throws InvalidCursorException token 不是本类生成的
+     */
+    public static FeedCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(DECODER.decode(token), StandardCharsets.UTF_8);
+            int sep = raw.lastIndexOf('|');
+            if (sep <= 0) {
+                throw new InvalidCursorException(token, null);
+            }
+            return new FeedCursor(LocalDateTime.parse(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            throw new InvalidCursorException(token, e);
+        }
+    }
+}
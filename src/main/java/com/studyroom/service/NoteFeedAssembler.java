@@ -0,0 +1,201 @@
+package com.studyroom.service;
+
+import com.studyroom.blob.ImageVariants;
+import com.studyroom.blob.ImageVariants.Variant;
+import com.studyroom.dto.NoteDTOs.CommentView;
+import com.studyroom.dto.NoteDTOs.NoteShareView;
+import com.studyroom.dto.NoteDTOs.NoteSummary;
+import com.studyroom.dto.NoteDTOs.NoteSummaryView;
+import com.studyroom.entity.Comment;
+import com.studyroom.entity.NoteCollect;
+import com.studyroom.entity.NoteShare;
+import com.studyroom.entity.User;
+import com.studyroom.repository.CommentRepository;
+import com.studyroom.repository.CommentRepository.NoteCommentCount;
+import com.studyroom.repository.NoteCollectRepository;
+import com.studyroom.repository.NoteShareSummary;
+import com.studyroom.repository.UserRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 把一页笔记拼成 NoteShareView：评论、收藏人、涉及的所有用户各用一条 IN 查询批量取出，在内存里按 noteId / userId 组装，
+ * 查询条数与笔记数量无关。
+ * <p>
+ * 列表只拼摘要（{@link #assembleSummaries}）：评论只数条数，不取内容；完整的 NoteShareView 只在详情里拼。
+ */
+@Component
+public class NoteFeedAssembler {
+
+    private final CommentRepository commentRepository;
+    private final NoteCollectRepository noteCollectRepository;
+    private final UserRepository userRepository;
+    private final ImageVariants imageVariants;
+
+    public NoteFeedAssembler(CommentRepository commentRepository,
+                             NoteCollectRepository noteCollectRepository,
+                             UserRepository userRepository,
+                             ImageVariants imageVariants) {
+        this.commentRepository = commentRepository;
+        this.noteCollectRepository = noteCollectRepository;
+        this.userRepository = userRepository;
+        this.imageVariants = imageVariants;
+    }
+
+    public List<NoteShareView> assemble(List<NoteShare> notes) {
+        if (notes.isEmpty()) {
+            return List.of();
+        }
+        List<Long> noteIds = notes.stream().map(NoteShare::getId).collect(Collectors.toList());
+
+        Map<Long, List<Comment>> commentsByNote = commentRepository
+            .findByNoteIdInOrderByCreateTimeAscIdAsc(noteIds)
+            .stream()
+            .collect(Collectors.groupingBy(Comment::getNoteId));
+        Map<Long, List<Long>> collectorsByNote = noteCollectRepository.findByNoteIdIn(noteIds)
+            .stream()
+            .filter(collect -> collect.getUserId() != null)
+            .collect(Collectors.groupingBy(NoteCollect::getNoteId,
+                Collectors.mapping(NoteCollect::getUserId, Collectors.toList())));
+
+        Set<Long> userIds = new HashSet<>();
+        notes.forEach(note -> userIds.add(note.getUserId()));
+        commentsByNote.values().forEach(comments -> comments.forEach(c -> userIds.add(c.getUserId())));
+        Map<Long, User> users = loadUsers(userIds);
+
+        return notes.stream().map(note -> {
+            NoteShareView view = new NoteShareView();
+            view.id = note.getId();
+            view.title = note.getTitle();
+            view.content = note.getContent();
+            view.imageUrl = note.getImageUrl();
+            view.image = note.getImageUrl();
+            view.thumbnailUrl = imageVariants.url(note.getImageUrl(), Variant.THUMBNAIL);
+            view.previewUrl = imageVariants.url(note.getImageUrl(), Variant.PREVIEW);
+            view.userId = note.getUserId();
+            view.roomId = note.getRoomId();
+            view.createTime = note.getCreateTime();
+            view.collectCount = note.getCollectCount();
+
+            User user = users.get(note.getUserId());
+            if (user != null) {
+                view.username = user.getUsername();
+                view.userAvatar = user.getAvatar();
+            }
+
+            view.comments = toCommentViews(commentsByNote.getOrDefault(note.getId(), List.of()), users);
+            view.collectedByUserIds = collectorsByNote.getOrDefault(note.getId(), List.of());
+            return view;
+        }).collect(Collectors.toList());
+    }
+
+    public List<NoteSummary> toSummaries(List<NoteShareSummary> rows) {
+        return rows.stream().map(row -> fillSummary(new NoteSummary(), row)).collect(Collectors.toList());
+    }
+
+    public List<NoteSummaryView> assembleSummaries(List<NoteShareSummary> rows) {
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+        List<Long> noteIds = rows.stream().map(NoteShareSummary::getId).collect(Collectors.toList());
+
+        Map<Long, Long> commentCounts = commentRepository.countByNoteIdIn(noteIds)
+            .stream()
+            .collect(Collectors.toMap(NoteCommentCount::getNoteId, NoteCommentCount::getTotal));
+        Map<Long, List<Long>> collectorsByNote = noteCollectRepository.findByNoteIdIn(noteIds)
+            .stream()
+            .filter(collect -> collect.getUserId() != null)
+            .collect(Collectors.groupingBy(NoteCollect::getNoteId,
+                Collectors.mapping(NoteCollect::getUserId, Collectors.toList())));
+        Map<Long, User> users = loadUsers(rows.stream().map(NoteShareSummary::getUserId).collect(Collectors.toSet()));
+
+        return rows.stream().map(row -> {
+            NoteSummaryView view = fillSummary(new NoteSummaryView(), row);
+            User user = users.get(row.getUserId());
+            if (user != null) {
+                view.username = user.getUsername();
+                view.userAvatar = user.getAvatar();
+            }
+            view.commentCount = commentCounts.getOrDefault(row.getId(), 0L);
+            view.collectedByUserIds = collectorsByNote.getOrDefault(row.getId(), List.of());
+            return view;
+        }).collect(Collectors.toList());
+    }
+
+    private <T extends NoteSummary> T fillSummary(T view, NoteShareSummary row) {
+        view.id = row.getId();
+        view.title = row.getTitle();
+        view.truncated = row.getContentLength() != null && row.getContentLength() > NoteShareSummary.EXCERPT_LENGTH;
+        view.excerpt = excerpt(row.getExcerpt(), view.truncated);
+        view.imageUrl = row.getImageUrl();
+        view.image = row.getImageUrl();
+        view.hasImage = Boolean.TRUE.equals(row.getHasImage());
+        view.thumbnailUrl = imageVariants.url(row.getImageUrl(), Variant.THUMBNAIL);
+        view.previewUrl = imageVariants.url(row.getImageUrl(), Variant.PREVIEW);
+        view.userId = row.getUserId();
+        view.roomId = row.getRoomId();
+        view.createTime = row.getCreateTime();
+        view.collectCount = row.getCollectCount();
+        return view;
+    }
+
+    /**
+     * 库里按字符截取可能把一个 emoji 的代理对切成两半，去掉落单的高位代理再补省略号。
+     */
+    private static String excerpt(String head, boolean truncated) {
+        if (head == null || !truncated) {
+            return head;
+        }
+        int end = head.length();
+        if (end > 0 && Character.isHighSurrogate(head.charAt(end - 1))) {
+            end--;
+        }
+        return head.substring(0, end) + "…";
+    }
+
+    public List<CommentView> assembleComments(List<Comment> comments) {
+        Set<Long> userIds = comments.stream().map(Comment::getUserId).collect(Collectors.toSet());
+        return toCommentViews(comments, loadUsers(userIds));
+    }
+
+    private static List<CommentView> toCommentViews(List<Comment> comments, Map<Long, User> users) {
+        return comments.stream().map(comment -> {
+            CommentView view = new CommentView();
+            view.id = comment.getId();
+            view.noteId = comment.getNoteId();
+            view.userId = comment.getUserId();
+            view.content = comment.getContent();
+            view.replyTo = comment.getReplyTo();
+            view.createTime = comment.getCreateTime();
+            view.createdAt = comment.getCreateTime();
+            view.likeCount = comment.getLikeCount();
+
+            User user = users.get(comment.getUserId());
+            if (user != null) {
+                view.username = user.getUsername();
+                view.userAvatar = user.getAvatar();
+            }
+            return view;
+        }).collect(Collectors.toList());
+    }
+
+    private Map<Long, User> loadUsers(Collection<Long> userIds) {
+        List<Long> ids = userIds.stream().filter(Objects::nonNull).collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            // 调用方会用可能为 null 的 userId 查，Map.of() 不接受 null 键
+            return Collections.emptyMap();
+        }
+        return userRepository.findAllById(ids)
+            .stream()
+            .collect(Collectors.toMap(User::getId, Function.identity()));
+    }
+}
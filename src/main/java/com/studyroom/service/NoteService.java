@@ -1,37 +1,55 @@
 package com.studyroom.service;
 
+import com.studyroom.blob.BlobStore;
+import com.studyroom.blob.ImageVariants;
 import com.studyroom.dto.NoteDTOs.CommentView;
+import com.studyroom.dto.NoteDTOs.CursorPage;
 import com.studyroom.dto.NoteDTOs.NoteShareView;
+import com.studyroom.dto.NoteDTOs.NoteSummary;
+import com.studyroom.dto.NoteDTOs.NoteSummaryView;
 import com.studyroom.entity.*;
 import com.studyroom.repository.*;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 @Transactional
 public class NoteService {
 
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+
     private final NoteShareRepository noteShareRepository;
     private final NoteCollectRepository noteCollectRepository;
     private final CommentRepository commentRepository;
     private final PersonalNoteRepository personalNoteRepository;
     private final UserRepository userRepository;
+    private final NoteFeedAssembler noteFeedAssembler;
+    private final BlobStore blobStore;
+    private final ImageVariants imageVariants;
 
     public NoteService(NoteShareRepository noteShareRepository,
                        NoteCollectRepository noteCollectRepository,
                        CommentRepository commentRepository,
                        PersonalNoteRepository personalNoteRepository,
-                       UserRepository userRepository) {
+                       UserRepository userRepository,
+                       NoteFeedAssembler noteFeedAssembler,
+                       BlobStore blobStore,
+                       ImageVariants imageVariants) {
         this.noteShareRepository = noteShareRepository;
         this.noteCollectRepository = noteCollectRepository;
         this.commentRepository = commentRepository;
         this.personalNoteRepository = personalNoteRepository;
         this.userRepository = userRepository;
+        this.noteFeedAssembler = noteFeedAssembler;
+        this.blobStore = blobStore;
+        this.imageVariants = imageVariants;
     }
 
     // --- Share Note ---
@@ -41,41 +59,41 @@ public class NoteService {
         note.setRoomId(roomId);
         note.setTitle(title);
         note.setContent(content);
-        note.setImageUrl(imageUrl);
-        return noteShareRepository.save(note);
-    }
-
-    public List<NoteShare> getRoomNotes(Long roomId) {
-        return noteShareRepository.findByRoomIdOrderByCreateTimeDesc(roomId);
-    }
-
-    public List<NoteShareView> getRoomNotesWithMeta(Long roomId) {
-        List<NoteShare> notes = noteShareRepository.findByRoomIdOrderByCreateTimeDesc(roomId);
-        return notes.stream().map(note -> {
-            NoteShareView view = new NoteShareView();
-            view.id = note.getId();
-            view.title = note.getTitle();
-            view.content = note.getContent();
-            view.imageUrl = note.getImageUrl();
-            view.image = note.getImageUrl();
-            view.userId = note.getUserId();
-            view.roomId = note.getRoomId();
-            view.createTime = note.getCreateTime();
-            view.collectCount = note.getCollectCount();
-
-            userRepository.findById(note.getUserId()).ifPresent(user -> {
-                view.username = user.getUsername();
-                view.userAvatar = user.getAvatar();
-            });
+        note.setImageUrl(blobStore.internDataUrl(imageUrl));
+        NoteShare saved = noteShareRepository.save(note);
+        imageVariants.submit(saved.getImageUrl());
+        return saved;
+    }
+
+    public CursorPage<NoteSummary> getRoomNotes(Long roomId, String cursor, Integer limit) {
+        int size = pageSize(limit);
+        return page(roomNotePage(roomId, FeedCursor.decode(cursor), size), size,
+            note -> new FeedCursor(note.getCreateTime(), note.getId()), noteFeedAssembler::toSummaries);
+    }
+
+    public CursorPage<NoteSummaryView> getRoomNotesWithMeta(Long roomId, String cursor, Integer limit) {
+        int size = pageSize(limit);
+        return page(roomNotePage(roomId, FeedCursor.decode(cursor), size), size,
+            note -> new FeedCursor(note.getCreateTime(), note.getId()), noteFeedAssembler::assembleSummaries);
+    }
+
+    /**
+     * 完整笔记：正文、图片、全部评论和收藏人，列表里点开时再取。
+     */
+    public NoteShareView getNoteDetail(Long noteId) {
+        return noteShareRepository.findById(noteId)
+            .map(note -> noteFeedAssembler.assemble(List.of(note)).get(0))
+            .orElse(null);
+    }
 
-            view.comments = getNoteCommentsWithUser(note.getId());
-            view.collectedByUserIds = noteCollectRepository.findByNoteId(note.getId())
-                .stream()
-                .map(NoteCollect::getUserId)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
-            return view;
-        }).collect(Collectors.toList());
+    /**
+     * 新的在前；多取一行用来判断是否还有下一页。只读摘要列，不加载正文和内嵌图片。
+     */
+    private List<NoteShareSummary> roomNotePage(Long roomId, FeedCursor after, int size) {
+        if (after == null) {
+            return noteShareRepository.findRoomSummaries(roomId, Limit.of(size + 1));
+        }
+        return noteShareRepository.findRoomSummariesAfter(roomId, after.createTime(), after.id(), Limit.of(size + 1));
     }
 
     // --- Comment ---
@@ -88,31 +106,26 @@ public class NoteService {
         return commentRepository.save(comment);
     }
 
-    public List<Comment> getNoteComments(Long noteId) {
-        return commentRepository.findByNoteIdOrderByCreateTimeAsc(noteId);
+    public CursorPage<Comment> getNoteComments(Long noteId, String cursor, Integer limit) {
+        int size = pageSize(limit);
+        return page(noteCommentPage(noteId, FeedCursor.decode(cursor), size), size,
+            comment -> new FeedCursor(comment.getCreateTime(), comment.getId()), Function.identity());
     }
 
-    public List<CommentView> getNoteCommentsWithUser(Long noteId) {
-        return commentRepository.findByNoteIdOrderByCreateTimeAsc(noteId)
-            .stream()
-            .map(comment -> {
-                CommentView view = new CommentView();
-                view.id = comment.getId();
-                view.noteId = comment.getNoteId();
-                view.userId = comment.getUserId();
-                view.content = comment.getContent();
-                view.replyTo = comment.getReplyTo();
-                view.createTime = comment.getCreateTime();
-                view.createdAt = comment.getCreateTime();
-                view.likeCount = comment.getLikeCount();
+    public CursorPage<CommentView> getNoteCommentsWithUser(Long noteId, String cursor, Integer limit) {
+        int size = pageSize(limit);
+        return page(noteCommentPage(noteId, FeedCursor.decode(cursor), size), size,
+            comment -> new FeedCursor(comment.getCreateTime(), comment.getId()), noteFeedAssembler::assembleComments);
+    }
 
-                userRepository.findById(comment.getUserId()).ifPresent(user -> {
-                    view.username = user.getUsername();
-                    view.userAvatar = user.getAvatar();
-                });
-                return view;
-            })
-            .collect(Collectors.toList());
+    /**
+     * 旧的在前，与楼层顺序一致。
+     */
+    private List<Comment> noteCommentPage(Long noteId, FeedCursor after, int size) {
+        if (after == null) {
+            return commentRepository.findByNoteIdOrderByCreateTimeAscIdAsc(noteId, Limit.of(size + 1));
+        }
+        return commentRepository.findNotePageAfter(noteId, after.createTime(), after.id(), Limit.of(size + 1));
     }
 
     public void likeComment(Long commentId) {
@@ -202,7 +215,7 @@ public class NoteService {
         note.setUserId(userId);
         note.setTitle(title);
         note.setContent(content);
-        note.setImageUrl(imageUrl);
+        note.setImageUrl(blobStore.internDataUrl(imageUrl));
         note.setIsShared(isShared != null && isShared);
         return personalNoteRepository.save(note);
     }
@@ -213,6 +226,9 @@ public class NoteService {
 
     public void sharePersonalNote(Long personalNoteId, Long roomId) {
         personalNoteRepository.findById(personalNoteId).ifPresent(pNote -> {
+            // 历史数据里的 data: URL 先转存，个人笔记和分享出去的副本引用同一个文件
+            pNote.setImageUrl(blobStore.internDataUrl(pNote.getImageUrl()));
+
             // Copy to NoteShare
             NoteShare share = new NoteShare();
             share.setTitle(pNote.getTitle());
@@ -222,6 +238,7 @@ public class NoteService {
             share.setRoomId(roomId);
             share.setPersonalNoteId(pNote.getId());
             noteShareRepository.save(share);
+            imageVariants.submit(share.getImageUrl());
 
             // Update status
             pNote.setIsShared(true);
@@ -243,8 +260,28 @@ public class NoteService {
         return personalNoteRepository.findById(noteId).map(note -> {
             if (title != null) note.setTitle(title);
             if (content != null) note.setContent(content);
-            if (imageUrl != null) note.setImageUrl(imageUrl);
+            if (imageUrl != null) note.setImageUrl(blobStore.internDataUrl(imageUrl));
             return personalNoteRepository.save(note);
         }).orElse(null);
     }
+
+    private static int pageSize(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * rows 是按 size + 1 取出的结果：多出的一行只说明还有下一页，不返回给客户端，游标取本页最后一行。
+     */
+    private static <E, V> CursorPage<V> page(List<E> rows, int size, Function<E, FeedCursor> key,
+                                             Function<List<E>, List<V>> mapper) {
+        boolean hasMore = rows.size() > size;
+        List<E> items = hasMore ? rows.subList(0, size) : rows;
+        CursorPage<V> page = new CursorPage<>();
+        page.items = mapper.apply(items);
+        page.nextCursor = hasMore ? key.apply(items.get(size - 1)).encode() : null;
+        return page;
+    }
 }
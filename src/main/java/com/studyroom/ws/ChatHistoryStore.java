@@ -0,0 +1,151 @@
+package com.studyroom.ws;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 每个房间最近 N 条聊天的内存环形缓冲，用于进房时回放。
+ * <p>
+ * 每个房间一组定长并行数组（消息 id 以两个 long 存放），不为每条消息保留包装对象；
+ * 长时间没有读写的房间会被定期清理。
+ * <p>
+ * 新消息同时交给 {@link ChatLog} 异步落盘；内存中没有某房间的记录时（重启后或被清理后），
+ * 从日志里取最近的记录填充环形缓冲。加载读磁盘，在 map 的 compute 之外进行，并发加载时先放进去的为准。
+ */
+@Component
+public class ChatHistoryStore {
+
+    private final ConcurrentHashMap<Long, ChatRing> ringsByRoom = new ConcurrentHashMap<>();
+    private final RealtimeScheduler scheduler;
+    private final ChatLog chatLog;
+    private final int capacity;
+    private final long idleTtlMillis;
+
+    public ChatHistoryStore(RealtimeScheduler scheduler, ChatLog chatLog, RealtimeProperties properties) {
+        this.scheduler = scheduler;
+        this.chatLog = chatLog;
+        this.capacity = properties.getChatHistory().getCapacity();
+        this.idleTtlMillis = properties.getChatHistory().getIdleTtl().toMillis();
+    }
+
+    @PostConstruct
+    void startEviction() {
+        if (capacity > 0) {
+            long period = Math.max(1_000L, idleTtlMillis / 4);
+            scheduler.scheduleAtFixedRate(this::evictIdle, period);
+        }
+    }
+
+    public void append(WsPayloads.ChatMessage message) {
+        // 先取得环形缓冲再写日志：日志先落盘的话，加载会读到这条消息，随后又追加一次
+        ChatRing ring = capacity > 0 ? ring(message.roomId()) : null;
+        chatLog.append(message);
+        if (ring != null) {
+            ring.append(message);
+        }
+    }
+
+    /**
+     * @return 按时间先后排列的最近消息，没有记录时为空列表
+     */
+    public List<WsPayloads.ChatMessage> recent(Long roomId) {
+        if (capacity <= 0) {
+            return List.of();
+        }
+        return ring(roomId).snapshot();
+    }
+
+    /**
+     * 历史分页，数据来自持久化日志；日志关闭时只能返回内存中的最近记录。
+     */
+    public ChatLog.ChatPage page(Long roomId, Long before, int limit) {
+        ChatLog.ChatPage page = chatLog.page(roomId, before, limit);
+        if (page.messages().isEmpty() && before == null) {
+            List<WsPayloads.ChatMessage> recent = recent(roomId);
+            return new ChatLog.ChatPage(recent.subList(Math.max(0, recent.size() - limit), recent.size()), null);
+        }
+        return page;
+    }
+
+    private ChatRing ring(Long roomId) {
+        ChatRing ring = ringsByRoom.get(roomId);
+        if (ring != null) {
+            return ring;
+        }
+        ChatRing loaded = loadRing(roomId);
+        ChatRing existing = ringsByRoom.putIfAbsent(roomId, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    private ChatRing loadRing(Long roomId) {
+        ChatRing ring = new ChatRing(roomId, capacity);
+        chatLog.page(roomId, null, capacity).messages().forEach(ring::append);
+        return ring;
+    }
+
+    void evictIdle() {
+        long deadline = System.currentTimeMillis() - idleTtlMillis;
+        ringsByRoom.values().removeIf(ring -> ring.lastAccess < deadline);
+    }
+
+    private static final class ChatRing {
+
+        private final Long roomId;
+        private final long[] idHigh;
+        private final long[] idLow;
+        private final long[] ts;
+        private final String[] userIds;
+        private final String[] userNames;
+        private final String[] contents;
+
+        // guarded by this
+        private int next;
+        private int size;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        private ChatRing(Long roomId, int capacity) {
+            this.roomId = roomId;
+            this.idHigh = new long[capacity];
+            this.idLow = new long[capacity];
+            this.ts = new long[capacity];
+            this.userIds = new String[capacity];
+            this.userNames = new String[capacity];
+            this.contents = new String[capacity];
+        }
+
+        synchronized void append(WsPayloads.ChatMessage m) {
+            UUID id = UUID.fromString(m.id());
+            idHigh[next] = id.getMostSignificantBits();
+            idLow[next] = id.getLeastSignificantBits();
+            ts[next] = m.ts();
+            userIds[next] = m.user() == null ? null : m.user().id();
+            userNames[next] = m.user() == null ? null : m.user().name();
+            contents[next] = m.content();
+            next = (next + 1) % contents.length;
+            size = Math.min(size + 1, contents.length);
+            lastAccess = System.currentTimeMillis();
+        }
+
+        synchronized List<WsPayloads.ChatMessage> snapshot() {
+            lastAccess = System.currentTimeMillis();
+            List<WsPayloads.ChatMessage> list = new ArrayList<>(size);
+            int start = (next - size + contents.length) % contents.length;
+            for (int i = 0; i < size; i++) {
+                int idx = (start + i) % contents.length;
+                list.add(new WsPayloads.ChatMessage(
+                        new UUID(idHigh[idx], idLow[idx]).toString(),
+                        roomId,
+                        new RoomRealtimeService.WsUser(userIds[idx], userNames[idx]),
+                        contents[idx],
+                        ts[idx]
+                ));
+            }
+            return list;
+        }
+    }
+}
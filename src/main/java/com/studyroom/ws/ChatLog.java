@@ -0,0 +1,297 @@
+package com.studyroom.ws;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * 聊天的持久化日志。所有房间共用一串按编号递增的段文件（{@link ChatLogSegment}），
+ * 每个房间在内存里只保留自己记录的位置列表（段号 &lt;&lt; 32 | 段内偏移），按页读取时直接从映射的段里解码。
+ * <p>
+ * {@link #append} 只把消息放进有界队列，由单个后台线程批量写入，聊天广播路径上没有磁盘 IO；
+ * 写线程同时负责切段、定期 force 和按时间/大小删除最旧的段。启动时扫描已有段重建位置索引。
+ */
+@Component
+public class ChatLog {
+
+    private static final int WRITE_BATCH = 1024;
+    private static final int RECORD_BUFFER_BYTES = 64 * 1024;
+    private static final long RETENTION_CHECK_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    public record ChatPage(List<WsPayloads.ChatMessage> messages, Long nextCursor) {
+
+        static final ChatPage EMPTY = new ChatPage(List.of(), null);
+    }
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentBytes;
+    private final long retentionMillis;
+    private final long retentionBytes;
+    private final long forceIntervalNanos;
+    private final BlockingQueue<WsPayloads.ChatMessage> queue;
+
+    private final ConcurrentSkipListMap<Integer, ChatLogSegment> segments = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<Long, RoomIndex> indexByRoom = new ConcurrentHashMap<>();
+
+    // 以下只由写线程访问（启动恢复除外）
+    private ChatLogSegment active;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_BUFFER_BYTES);
+    private final CRC32C crc = new CRC32C();
+
+    private Thread writer;
+    private volatile boolean running;
+
+    public ChatLog(RealtimeProperties properties) {
+        RealtimeProperties.ChatLog config = properties.getChatLog();
+        this.enabled = config.isEnabled();
+        this.directory = Paths.get(config.getDirectory());
+        this.segmentBytes = (int) Math.min(Integer.MAX_VALUE, config.getSegmentSize().toBytes());
+        this.retentionMillis = config.getRetention().toMillis();
+        this.retentionBytes = config.getRetentionSize().toBytes();
+        this.forceIntervalNanos = config.getForceInterval().toNanos();
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, config.getQueueCapacity()));
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        recover();
+        running = true;
+        writer = new Thread(this::runWriter, "chat-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * 提交一条消息，不阻塞。日志关闭或队列已满时返回 false，消息只存在于内存历史中。
+     */
+    public boolean append(WsPayloads.ChatMessage message) {
+        return enabled && running && queue.offer(message);
+    }
+
+    /**
+     * 按时间倒序翻页：返回位置早于 {@code before} 的最近 {@code limit} 条，页内按时间先后排列。
+     *
+     * @param before 上一页返回的 nextCursor，null 表示从最新一条开始
+     */
+    public ChatPage page(Long roomId, Long before, int limit) {
+        RoomIndex index = indexByRoom.get(roomId);
+        if (index == null || limit <= 0) {
+            return ChatPage.EMPTY;
+        }
+        // 多取一条用来判断是否还有更早的记录
+        long[] positions = index.before(before == null ? Long.MAX_VALUE : before, limit + 1);
+        int from = positions.length > limit ? 1 : 0;
+        List<WsPayloads.ChatMessage> messages = new ArrayList<>(positions.length - from);
+        for (int i = from; i < positions.length; i++) {
+            ChatLogSegment segment = segments.get(segmentOf(positions[i]));
+            if (segment != null) {
+                messages.add(segment.read(offsetOf(positions[i])));
+            }
+        }
+        Long nextCursor = from == 1 ? positions[1] : null;
+        return new ChatPage(messages, nextCursor);
+    }
+
+    private static long position(int segment, int offset) {
+        return ((long) segment << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentOf(long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static int offsetOf(long position) {
+        return (int) position;
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(f -> ChatLogSegment.parseNumber(f) >= 0)
+                    .sorted()
+                    .toList();
+        }
+        for (Path file : files) {
+            int number = ChatLogSegment.parseNumber(file);
+            ChatLogSegment segment = ChatLogSegment.recover(file, number,
+                    (roomId, ts, offset) -> index(roomId).add(position(number, offset)));
+            segments.put(number, segment);
+        }
+        active = segments.isEmpty()
+                ? openSegment(0)
+                : segments.lastEntry().getValue();
+        enforceRetention();
+    }
+
+    private ChatLogSegment openSegment(int number) throws IOException {
+        ChatLogSegment segment = ChatLogSegment.create(directory, number, segmentBytes);
+        segments.put(number, segment);
+        return segment;
+    }
+
+    private RoomIndex index(long roomId) {
+        return indexByRoom.computeIfAbsent(roomId, id -> new RoomIndex());
+    }
+
+    private void runWriter() {
+        List<WsPayloads.ChatMessage> batch = new ArrayList<>(WRITE_BATCH);
+        long pollMillis = Math.max(1, Math.min(200, TimeUnit.NANOSECONDS.toMillis(forceIntervalNanos)));
+        long lastForce = System.nanoTime();
+        long lastRetention = lastForce;
+        boolean dirty = false;
+        while (running || !queue.isEmpty()) {
+            try {
+                WsPayloads.ChatMessage first = queue.poll(pollMillis, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, WRITE_BATCH - 1);
+                    for (WsPayloads.ChatMessage m : batch) {
+                        write(m);
+                    }
+                    batch.clear();
+                    dirty = true;
+                }
+                long now = System.nanoTime();
+                if (dirty && now - lastForce >= forceIntervalNanos) {
+                    active.force();
+                    lastForce = now;
+                    dirty = false;
+                }
+                if (now - lastRetention >= RETENTION_CHECK_NANOS) {
+                    enforceRetention();
+                    lastRetention = now;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException | UncheckedIOException e) {
+                // 磁盘写入失败：丢弃本批，下一批重试（切段失败时继续使用当前段）
+                batch.clear();
+            }
+        }
+        active.force();
+    }
+
+    private void write(WsPayloads.ChatMessage m) throws IOException {
+        if (m.roomId() == null || !ChatLogSegment.encode(m, record, crc)) {
+            return;
+        }
+        int offset = active.append(record, m.ts());
+        if (offset < 0) {
+            active.force();
+            active = openSegment(active.number + 1);
+            enforceRetention();
+            offset = active.append(record, m.ts());
+            if (offset < 0) {
+                // 单条记录比整个段还大，只可能是配置过小
+                return;
+            }
+        }
+        index(m.roomId()).add(position(active.number, offset));
+    }
+
+    /**
+     * 从最旧的段开始删除：段内最新消息超过保留时长，或总大小超过上限。当前写入的段不会被删除。
+     * 删除后同步裁掉各房间索引里指向已删除段的位置。
+     */
+    private void enforceRetention() {
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        long total = 0;
+        for (ChatLogSegment s : segments.values()) {
+            total += s.capacity();
+        }
+        boolean deleted = false;
+        while (segments.size() > 1) {
+            ChatLogSegment oldest = segments.firstEntry().getValue();
+            if (oldest == active || (oldest.maxTs() >= cutoff && total <= retentionBytes)) {
+                break;
+            }
+            segments.pollFirstEntry();
+            total -= oldest.capacity();
+            deleted = true;
+            try {
+                oldest.delete();
+            } catch (IOException ignored) {
+                // 文件删不掉不影响读写，下次启动会重新尝试
+            }
+        }
+        if (deleted) {
+            long min = position(segments.firstKey(), 0);
+            indexByRoom.values().removeIf(index -> index.trimBefore(min));
+        }
+    }
+
+    /**
+     * 单个房间的记录位置，单调递增。写线程追加、读线程二分查找，都在该对象锁内。
+     */
+    private static final class RoomIndex {
+
+        private long[] positions = new long[16];
+        private int start;
+        private int end;
+
+        synchronized void add(long position) {
+            if (end == positions.length) {
+                int size = end - start;
+                if (size * 2 <= positions.length) {
+                    System.arraycopy(positions, start, positions, 0, size);
+                } else {
+                    positions = Arrays.copyOfRange(positions, start, start + positions.length * 2);
+                }
+                start = 0;
+                end = size;
+            }
+            positions[end++] = position;
+        }
+
+        /**
+         * @return 裁剪后是否为空
+         */
+        synchronized boolean trimBefore(long min) {
+            while (start < end && positions[start] < min) {
+                start++;
+            }
+            return start == end;
+        }
+
+        synchronized long[] before(long position, int limit) {
+            int hi = Arrays.binarySearch(positions, start, end, position);
+            if (hi < 0) {
+                hi = -hi - 1;
+            }
+            int lo = Math.max(start, hi - limit);
+            return Arrays.copyOfRange(positions, lo, hi);
+        }
+    }
+}
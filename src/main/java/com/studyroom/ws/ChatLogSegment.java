@@ -0,0 +1,227 @@
+package com.studyroom.ws;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+
+/**
+ * 聊天日志的一个段文件：创建时按固定大小预分配并整体映射到内存，只追加。
+ * <p>
+ * 记录格式（大端）：{@code int bodyLength, int crc32c(body), body}，
+ * body 为 {@code long roomId, long ts, long idHigh, long idLow, str userId, str userName, str content}，
+ * str 为 {@code int byteLength}（-1 表示 null）加 UTF-8 字节。
+ * 长度为 0 表示之后没有数据；恢复时遇到校验失败的记录即视为写了一半的尾部。
+ * <p>
+ * 只有写线程调用 {@link #append}，读线程只做绝对位置读取，可见性由调用方发布位置时的同步保证。
+ */
+final class ChatLogSegment {
+
+    static final int HEADER_BYTES = 8;
+    private static final String SUFFIX = ".seg";
+
+    final int number;
+    final Path path;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    // 只由写线程修改
+    private int writePosition;
+    private volatile long maxTs;
+
+    private ChatLogSegment(int number, Path path, MappedByteBuffer buffer) {
+        this.number = number;
+        this.path = path;
+        this.buffer = buffer;
+        this.capacity = buffer.capacity();
+    }
+
+    static String fileName(int number) {
+        return String.format("%010d%s", number, SUFFIX);
+    }
+
+    /**
+     * @return 文件名不是段文件时返回 -1
+     */
+    static int parseNumber(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.endsWith(SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static ChatLogSegment create(Path directory, int number, int size) throws IOException {
+        Path path = directory.resolve(fileName(number));
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new ChatLogSegment(number, path, ch.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    /**
+     * 打开已有段并扫描有效记录，每条记录的段内偏移和 roomId 交给 {@code onRecord}。
+     */
+    static ChatLogSegment recover(Path path, int number, RecordVisitor onRecord) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = ch.map(FileChannel.MapMode.READ_WRITE, 0, ch.size());
+        }
+        ChatLogSegment segment = new ChatLogSegment(number, path, buffer);
+        segment.scan(onRecord);
+        return segment;
+    }
+
+    @FunctionalInterface
+    interface RecordVisitor {
+        void visit(long roomId, long ts, int offset);
+    }
+
+    private void scan(RecordVisitor onRecord) {
+        int offset = 0;
+        CRC32C crc = new CRC32C();
+        while (offset + HEADER_BYTES <= capacity) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER_BYTES + length > capacity) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.duplicate().position(offset + HEADER_BYTES).limit(offset + HEADER_BYTES + length));
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                break;
+            }
+            long roomId = buffer.getLong(offset + HEADER_BYTES);
+            long ts = buffer.getLong(offset + HEADER_BYTES + 8);
+            maxTs = Math.max(maxTs, ts);
+            onRecord.visit(roomId, ts, offset);
+            offset += HEADER_BYTES + length;
+        }
+        writePosition = offset;
+        terminate();
+    }
+
+    /**
+     * 把已编码好的记录（含头部）写到段尾。
+     *
+     * @return 记录的段内偏移；空间不足时返回 -1，调用方应切换新段
+     */
+    int append(ByteBuffer record, long ts) {
+        int length = record.remaining();
+        if (writePosition + length > capacity) {
+            return -1;
+        }
+        int offset = writePosition;
+        buffer.put(offset, record, record.position(), length);
+        writePosition += length;
+        maxTs = Math.max(maxTs, ts);
+        terminate();
+        return offset;
+    }
+
+    /**
+     * 在数据末尾写一个 0 长度，避免恢复时把之前残留的字节当成记录。
+     */
+    private void terminate() {
+        if (writePosition + 4 <= capacity) {
+            buffer.putInt(writePosition, 0);
+        }
+    }
+
+    WsPayloads.ChatMessage read(int offset) {
+        int body = offset + HEADER_BYTES;
+        long roomId = buffer.getLong(body);
+        long ts = buffer.getLong(body + 8);
+        UUID id = new UUID(buffer.getLong(body + 16), buffer.getLong(body + 24));
+        int[] cursor = {body + 32};
+        String userId = readString(cursor);
+        String userName = readString(cursor);
+        String content = readString(cursor);
+        return new WsPayloads.ChatMessage(id.toString(), roomId,
+                new RoomRealtimeService.WsUser(userId, userName), content, ts);
+    }
+
+    private String readString(int[] cursor) {
+        int length = buffer.getInt(cursor[0]);
+        cursor[0] += 4;
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(cursor[0], bytes);
+        cursor[0] += length;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 把一条消息编码成完整记录写入 {@code out}（从 position 0 开始），返回后 out 处于可读状态。
+     *
+     * @return 放不下时返回 false
+     */
+    static boolean encode(WsPayloads.ChatMessage m, ByteBuffer out, CRC32C crc) {
+        out.clear();
+        if (out.remaining() < HEADER_BYTES + 32) {
+            return false;
+        }
+        UUID id = UUID.fromString(m.id());
+        out.position(HEADER_BYTES);
+        out.putLong(m.roomId()).putLong(m.ts())
+                .putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+        if (!putString(out, m.user() == null ? null : m.user().id())
+                || !putString(out, m.user() == null ? null : m.user().name())
+                || !putString(out, m.content())) {
+            return false;
+        }
+        int end = out.position();
+        crc.reset();
+        crc.update(out.duplicate().position(HEADER_BYTES).limit(end));
+        out.putInt(0, end - HEADER_BYTES);
+        out.putInt(4, (int) crc.getValue());
+        out.position(0).limit(end);
+        return true;
+    }
+
+    private static boolean putString(ByteBuffer out, String value) {
+        if (value == null) {
+            if (out.remaining() < 4) {
+                return false;
+            }
+            out.putInt(-1);
+            return true;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (out.remaining() < 4 + bytes.length) {
+            return false;
+        }
+        out.putInt(bytes.length).put(bytes);
+        return true;
+    }
+
+    long maxTs() {
+        return maxTs;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * 删除文件。已经拿到本段引用的读线程仍可读完（映射在 GC 回收前一直有效）。
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,124 @@
+package com.studyroom.ws;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 聊天敏感词过滤，在限速之后、写入历史和广播之前执行。
+ * <p>
+ * 词表是一个 UTF-8 文本文件，每行一个词，# 开头为注释；后台按间隔检查文件的修改时间和大小，
+ * 变化后重新编译成 {@link KeywordAutomaton} 并整体替换，扫描线程读到的总是一个完整的自动机。
+ * 文件不存在时不过滤；重新读取失败时保留上一版词表。
+ */
+@Component
+public class ChatModerator {
+
+    static final char MASK = '*';
+
+    private final RealtimeScheduler scheduler;
+    private final RealtimeProperties.Moderation config;
+    private final Path dictionary;
+    private volatile KeywordAutomaton automaton = KeywordAutomaton.EMPTY;
+    private long loadedModified = -1;
+    private long loadedSize = -1;
+
+    private final LongAdder masked = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+
+    public ChatModerator(RealtimeScheduler scheduler, RealtimeProperties properties) {
+        this.scheduler = scheduler;
+        this.config = properties.getModeration();
+        this.dictionary = Path.of(config.getDictionary());
+    }
+
+    /**
+     * 累计处理的消息数与当前词表大小。
+     */
+    public record ModerationStats(int words, long masked, long rejected, long reloads) {}
+
+    @PostConstruct
+    void start() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        reloadIfChanged();
+        long interval = config.getReloadInterval().toMillis();
+        if (interval > 0) {
+            scheduler.scheduleAtFixedRate(this::reloadIfChanged, interval);
+        }
+    }
+
+    /**
+     * @return 可以广播的内容（MASK 策略下命中部分已替换为 *）；REJECT 策略下命中返回 null
+     */
+    public String moderate(String content) {
+        KeywordAutomaton current = automaton;
+        if (current.size() == 0) {
+            return content;
+        }
+        if (config.getPolicy() == RealtimeProperties.ModerationPolicy.REJECT) {
+            if (current.find(content) < 0) {
+                return content;
+            }
+            rejected.increment();
+            return null;
+        }
+        String result = current.mask(content, MASK);
+        if (result != content) {
+            masked.increment();
+        }
+        return result;
+    }
+
+    public ModerationStats stats() {
+        return new ModerationStats(automaton.size(), masked.sum(), rejected.sum(), reloads.sum());
+    }
+
+    /**
+     * 只在调度线程上调用。
+     */
+    void reloadIfChanged() {
+        try {
+            if (!Files.isRegularFile(dictionary)) {
+                if (loadedSize != -1) {
+                    automaton = KeywordAutomaton.EMPTY;
+                    loadedModified = -1;
+                    loadedSize = -1;
+                    reloads.increment();
+                }
+                return;
+            }
+            long modified = Files.getLastModifiedTime(dictionary).toMillis();
+            long size = Files.size(dictionary);
+            if (modified == loadedModified && size == loadedSize) {
+                return;
+            }
+            automaton = KeywordAutomaton.compile(readWords(dictionary));
+            loadedModified = modified;
+            loadedSize = size;
+            reloads.increment();
+        } catch (IOException | RuntimeException e) {
+            // 文件可能正在被改写，保留当前词表，下个周期再试
+        }
+    }
+
+    private static List<String> readWords(Path file) throws IOException {
+        List<String> words = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String word = line.strip();
+            if (!word.isEmpty() && !word.startsWith("#")) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,39 @@
+package com.studyroom.ws;
+
+import java.util.Set;
+
+/**
+ * 节点间消息总线。发送是异步、尽力而为的：对端不可达或队列已满时消息直接丢弃并由 {@link #send} 返回 false，
+ * 调用方据此关闭受影响的客户端连接，让客户端 resume 补齐；发送队列满时实现还应断开到该节点的连接，
+ * 使两端都经成员变化（{@link Listener#onMembershipChanged(Set)}）重新分配房间，之后发出的消息不会越过丢失的那段。
+ * 同一对节点之间的消息保持发送顺序，收到的消息在总线自己的线程上按序回调。
+ * 成员关系对称：只有双向都连通的节点才算成员，两个节点不会对房间 owner 有不同的看法。
+ */
+public interface ClusterBus {
+
+    String localNode();
+
+    /**
+     * @return 当前可达的节点（含本节点）
+     */
+    Set<String> members();
+
+    /**
+     * @return false 表示消息已被丢弃
+     */
+    boolean send(String node, ClusterMessage message);
+
+    void start(Listener listener);
+
+    /**
+     * 因对端不可达或队列已满而丢弃的消息数。
+     */
+    long droppedMessages();
+
+    interface Listener {
+
+        void onMessage(String fromNode, ClusterMessage message);
+
+        void onMembershipChanged(Set<String> members);
+    }
+}
@@ -0,0 +1,20 @@
+package com.studyroom.ws;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ClusterConfig {
+
+    /**
+     * 未启用集群时用只有本节点的进程内总线，所有房间都归本节点。
+     */
+    @Bean
+    public ClusterBus clusterBus(RealtimeProperties properties) {
+        RealtimeProperties.Cluster cluster = properties.getCluster();
+        if (!cluster.isEnabled()) {
+            return new LoopbackClusterBus(cluster.getNodeId(), new LoopbackClusterBus.Network());
+        }
+        return new TcpClusterBus(cluster);
+    }
+}
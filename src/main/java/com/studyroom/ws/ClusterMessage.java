@@ -0,0 +1,41 @@
+package com.studyroom.ws;
+
+/**
+ * 节点间转发的消息。会话 id 均为会话所在（客户端实际连接的）节点上的 id。
+ */
+public sealed interface ClusterMessage {
+
+    /**
+     * 客户端上行帧，由连接所在节点转给房间 owner 原样处理。
+     *
+     * @param protocol 客户端协商的子协议，决定 owner 端按文本还是二进制编码下行消息
+     */
+    record Inbound(String sessionId, String protocol, boolean binary, byte[] payload) implements ClusterMessage {}
+
+    /**
+     * owner 编码好的下行帧，由连接所在节点写给客户端。
+     *
+     * @param type 帧的消息类型，连接所在节点据此把帧放回原来的 {@link OutboundLane}；null 表示按可靠通道处理
+     */
+    record Outbound(String sessionId, String type, boolean binary, byte[] payload) implements ClusterMessage {}
+
+    /**
+     * 客户端连接已断开，或已经切换到其他房间 owner。
+     */
+    record Closed(String sessionId) implements ClusterMessage {}
+
+    /**
+     * owner 要求关闭客户端连接（慢连接淘汰等）。
+     */
+    record Evict(String sessionId, int code, String reason) implements ClusterMessage {}
+
+    /**
+     * 读取房间 owner 上的状态（人数、发送统计、聊天历史），body 为 JSON 编码的参数。
+     */
+    record Query(long queryId, String kind, byte[] body) implements ClusterMessage {}
+
+    /**
+     * {@link Query} 的应答，body 为 JSON 编码的结果；owner 处理失败时为空。
+     */
+    record Reply(long queryId, byte[] body) implements ClusterMessage {}
+}
@@ -0,0 +1,369 @@
+package com.studyroom.ws;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.studyroom.ws.WsCommands.InboundCommand;
+import com.studyroom.ws.WsCommands.JoinCommand;
+import com.studyroom.ws.WsCommands.LeaveCommand;
+import com.studyroom.ws.WsCommands.ResumeCommand;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多节点路由。每个房间按一致性哈希归属到一个 owner 节点，房间的全部状态（成员、seq、番茄钟）只在 owner 上；
+ * 客户端连到其他节点时，该节点把它的上行帧原样转给 owner，owner 用一个 {@link RelayedSession} 代表它，
+ * 编码好的下行帧再经总线回到客户端所在节点写出。单节点（loopback 总线）时所有房间都在本地，这里不做任何事。
+ * 下行帧带着原消息类型，客户端所在节点按类型放回对应的发送通道，番茄钟/在线状态的覆盖与合并在那里生效。
+ * <p>
+ * 成员变化（节点上下线）后重建哈希环：owner 变了的房间，其客户端连接被关闭，客户端重连后 resume 到新的 owner；
+ * 来自已下线节点的代理会话按断线处理，成员保留宽限期。
+ * <p>
+ * HTTP 接口读取的房间状态（在线人数、发送统计、聊天历史）同样只在 owner 上，经总线发 {@link ClusterMessage.Query}
+ * 到 owner 读取，在 queryTimeout 内等待应答；owner 是本节点时直接读本地。
+ */
+@Component
+public class ClusterRelay implements ClusterBus.Listener {
+
+    private static final CloseStatus ROOM_MOVED = CloseStatus.GOING_AWAY.withReason("room moved");
+    private static final CloseStatus OWNER_UNREACHABLE =
+            CloseStatus.SESSION_NOT_RELIABLE.withReason("room owner unreachable");
+    private static final String Q_ROOM_COUNTS = "roomCounts";
+    private static final String Q_TRAFFIC_STATS = "trafficStats";
+    private static final String Q_CHAT_PAGE = "chatPage";
+    private static final TypeReference<List<Long>> ROOM_IDS = new TypeReference<>() {};
+    private static final TypeReference<Map<Long, RoomRealtimeService.RoomCounts>> ROOM_COUNTS = new TypeReference<>() {};
+    private static final TypeReference<RoomRealtimeService.RoomTrafficStats> TRAFFIC_STATS = new TypeReference<>() {};
+    private static final TypeReference<ChatLog.ChatPage> CHAT_PAGE = new TypeReference<>() {};
+
+    private final ClusterBus bus;
+    private final RoomRealtimeService realtime;
+    private final ChatHistoryStore chatHistory;
+    private final ObjectMapper objectMapper;
+    private final int virtualNodes;
+    private final long queryTimeoutMillis;
+    private final String localNode;
+    private volatile ConsistentHashRing ring;
+    private volatile WebSocketHandler handler;
+
+    /** 本节点上的客户端连接 */
+    private final ConcurrentHashMap<String, WebSocketSession> localSessions = new ConcurrentHashMap<>();
+    /** 本节点客户端当前所在房间及其 owner */
+    private final ConcurrentHashMap<String, Route> routes = new ConcurrentHashMap<>();
+    /** 其他节点转来的客户端，key 为 RelayedSession#getId() */
+    private final ConcurrentHashMap<String, RelayedSession> relayed = new ConcurrentHashMap<>();
+    /** 本节点发出、还在等待应答的查询 */
+    private final ConcurrentHashMap<Long, CompletableFuture<byte[]>> pendingQueries = new ConcurrentHashMap<>();
+    private final AtomicLong queryIds = new AtomicLong();
+
+    public ClusterRelay(ClusterBus bus, RoomRealtimeService realtime, ChatHistoryStore chatHistory,
+                        ObjectMapper objectMapper, RealtimeProperties properties) {
+        this.bus = bus;
+        this.realtime = realtime;
+        this.chatHistory = chatHistory;
+        this.objectMapper = objectMapper;
+        this.virtualNodes = properties.getCluster().getVirtualNodes();
+        this.queryTimeoutMillis = properties.getCluster().getQueryTimeout().toMillis();
+        this.localNode = bus.localNode();
+        this.ring = new ConsistentHashRing(bus.members(), virtualNodes);
+    }
+
+    private record Route(Long roomId, String node) {}
+
+    private record ChatPageQuery(Long roomId, Long before, int limit) {}
+
+    public record ClusterStats(String localNode, Set<String> members, int localSessions, int forwardedSessions,
+                               int relayedSessions, long droppedMessages) {}
+
+    /**
+     * 由 WebSocket 处理器在初始化时调用，之后开始接收其他节点的消息。
+     */
+    void attach(WebSocketHandler handler) {
+        this.handler = handler;
+        bus.start(this);
+    }
+
+    static boolean isRelayed(WebSocketSession session) {
+        return session instanceof RelayedSession;
+    }
+
+    void opened(WebSocketSession session) {
+        if (!isRelayed(session)) {
+            localSessions.put(session.getId(), session);
+        }
+    }
+
+    void closed(WebSocketSession session) {
+        if (isRelayed(session)) {
+            return;
+        }
+        localSessions.remove(session.getId());
+        Route route = routes.remove(session.getId());
+        if (route != null && !localNode.equals(route.node())) {
+            bus.send(route.node(), new ClusterMessage.Closed(session.getId()));
+        }
+    }
+
+    /**
+     * 需要时把上行帧转给房间 owner。join / resume 决定会话之后的去向，其余命令跟随当前路由。
+     *
+     * @return true 表示已转发，本节点不再处理
+     */
+    boolean forward(WebSocketSession session, InboundCommand command, WebSocketMessage<?> message) {
+        // 其他节点转来的命令总在本节点执行
+        if (isRelayed(session)) {
+            return false;
+        }
+        Route route;
+        Long roomId = command instanceof JoinCommand join ? join.roomId()
+                : command instanceof ResumeCommand resume ? resume.roomId() : null;
+        if (roomId != null) {
+            route = new Route(roomId, ring.owner(roomId));
+            Route previous = routes.put(session.getId(), route);
+            if (previous != null && !previous.node().equals(route.node()) && !localNode.equals(previous.node())) {
+                bus.send(previous.node(), new ClusterMessage.Closed(session.getId()));
+            }
+            if (localNode.equals(route.node())) {
+                return false;
+            }
+            // 之前可能在本节点的房间里
+            realtime.leave(session);
+        } else {
+            route = command instanceof LeaveCommand ? routes.remove(session.getId()) : routes.get(session.getId());
+            if (route == null || localNode.equals(route.node())) {
+                return false;
+            }
+        }
+        boolean binary = message instanceof BinaryMessage;
+        byte[] payload = binary ? bytes((BinaryMessage) message) : ((TextMessage) message).asBytes();
+        if (!bus.send(route.node(),
+                new ClusterMessage.Inbound(session.getId(), session.getAcceptedProtocol(), binary, payload))) {
+            // 命令到不了 owner，断开让客户端重连 resume，而不是让它一直等应答
+            routes.remove(session.getId(), route);
+            realtime.disconnect(session, OWNER_UNREACHABLE);
+        }
+        return true;
+    }
+
+    @Override
+    public void onMessage(String fromNode, ClusterMessage message) {
+        if (message instanceof ClusterMessage.Inbound m) {
+            RelayedSession session = relayed.get(fromNode + "/" + m.sessionId());
+            if (session == null) {
+                RelayedSession created = new RelayedSession(fromNode, m.sessionId(), m.protocol(), bus, this);
+                relayed.put(created.getId(), created);
+                invoke(() -> handler.afterConnectionEstablished(created));
+                session = created;
+            }
+            WebSocketMessage<?> inbound = m.binary() ? new BinaryMessage(m.payload()) : new TextMessage(m.payload());
+            RelayedSession target = session;
+            invoke(() -> handler.handleMessage(target, inbound));
+        } else if (message instanceof ClusterMessage.Closed m) {
+            RelayedSession session = relayed.remove(fromNode + "/" + m.sessionId());
+            if (session != null && session.markClosed()) {
+                invoke(() -> handler.afterConnectionClosed(session, CloseStatus.GOING_AWAY));
+            }
+        } else if (message instanceof ClusterMessage.Outbound m) {
+            WebSocketSession session = localSessions.get(m.sessionId());
+            if (session != null) {
+                realtime.sendTo(session, OutboundFrame.relayed(m.type(), m.payload(), m.binary()));
+            }
+        } else if (message instanceof ClusterMessage.Evict m) {
+            WebSocketSession session = localSessions.get(m.sessionId());
+            if (session != null) {
+                realtime.disconnect(session, new CloseStatus(m.code(), m.reason().isEmpty() ? null : m.reason()));
+            }
+        } else if (message instanceof ClusterMessage.Query m) {
+            bus.send(fromNode, new ClusterMessage.Reply(m.queryId(), answer(m)));
+        } else if (message instanceof ClusterMessage.Reply m) {
+            CompletableFuture<byte[]> reply = pendingQueries.get(m.queryId());
+            if (reply != null) {
+                reply.complete(m.body());
+            }
+        }
+    }
+
+    @Override
+    public void onMembershipChanged(Set<String> members) {
+        ring = new ConsistentHashRing(members, virtualNodes);
+
+        for (RelayedSession session : relayed.values()) {
+            if (!members.contains(session.originNode()) && relayed.remove(session.getId(), session)
+                    && session.markClosed()) {
+                invoke(() -> handler.afterConnectionClosed(session, CloseStatus.GOING_AWAY));
+            }
+        }
+
+        for (Map.Entry<String, Route> e : routes.entrySet()) {
+            Route route = e.getValue();
+            if (route.node().equals(ring.owner(route.roomId())) || !routes.remove(e.getKey(), route)) {
+                continue;
+            }
+            if (!localNode.equals(route.node()) && members.contains(route.node())) {
+                bus.send(route.node(), new ClusterMessage.Closed(e.getKey()));
+            }
+            WebSocketSession session = localSessions.get(e.getKey());
+            if (session != null) {
+                realtime.disconnect(session, ROOM_MOVED);
+            }
+        }
+    }
+
+    /**
+     * owner 端的代理会话被关闭（慢连接淘汰等），按连接断开处理。
+     */
+    void relayedClosed(RelayedSession session, CloseStatus status) {
+        if (relayed.remove(session.getId(), session)) {
+            invoke(() -> handler.afterConnectionClosed(session, status));
+        }
+    }
+
+    /**
+     * 各房间的在线/专注人数，按 owner 分组读取。没有及时应答的 owner 上的房间不出现在结果里。
+     */
+    public Map<Long, RoomRealtimeService.RoomCounts> roomCounts(Collection<Long> roomIds) {
+        Map<String, List<Long>> byOwner = new HashMap<>();
+        for (Long roomId : roomIds) {
+            byOwner.computeIfAbsent(owner(roomId), node -> new ArrayList<>()).add(roomId);
+        }
+        List<Long> local = byOwner.remove(localNode);
+        Map<String, CompletableFuture<byte[]>> replies = new HashMap<>();
+        byOwner.forEach((node, ids) -> replies.put(node, query(node, Q_ROOM_COUNTS, ids)));
+
+        Map<Long, RoomRealtimeService.RoomCounts> counts =
+                new HashMap<>(local == null ? Map.of() : realtime.roomCounts(local));
+        for (CompletableFuture<byte[]> reply : replies.values()) {
+            Map<Long, RoomRealtimeService.RoomCounts> remote = await(reply, ROOM_COUNTS);
+            if (remote != null) {
+                counts.putAll(remote);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @return null 表示 owner 没有及时应答
+     */
+    public RoomRealtimeService.RoomTrafficStats trafficStats(Long roomId) {
+        String owner = owner(roomId);
+        return localNode.equals(owner)
+                ? realtime.trafficStats(roomId)
+                : await(query(owner, Q_TRAFFIC_STATS, roomId), TRAFFIC_STATS);
+    }
+
+    /**
+     * 聊天历史分页，记录只落在 owner 节点上。
+     *
+     * @return null 表示 owner 没有及时应答
+     */
+    public ChatLog.ChatPage chatPage(Long roomId, Long before, int limit) {
+        String owner = owner(roomId);
+        return localNode.equals(owner)
+                ? chatHistory.page(roomId, before, limit)
+                : await(query(owner, Q_CHAT_PAGE, new ChatPageQuery(roomId, before, limit)), CHAT_PAGE);
+    }
+
+    /**
+     * @return 房间当前的 owner；哈希环为空时为本节点
+     */
+    String owner(Long roomId) {
+        String owner = ring.owner(roomId);
+        return owner == null ? localNode : owner;
+    }
+
+    private CompletableFuture<byte[]> query(String node, String kind, Object request) {
+        long queryId = queryIds.incrementAndGet();
+        CompletableFuture<byte[]> reply = new CompletableFuture<byte[]>()
+                .orTimeout(queryTimeoutMillis, TimeUnit.MILLISECONDS);
+        reply.whenComplete((body, e) -> pendingQueries.remove(queryId));
+        pendingQueries.put(queryId, reply);
+        try {
+            if (!bus.send(node, new ClusterMessage.Query(queryId, kind, objectMapper.writeValueAsBytes(request)))) {
+                reply.complete(new byte[0]);
+            }
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+        return reply;
+    }
+
+    /**
+     * @return null 表示超时或 owner 处理失败
+     */
+    private <T> T await(CompletableFuture<byte[]> reply, TypeReference<T> type) {
+        try {
+            byte[] body = reply.get();
+            return body.length == 0 ? null : objectMapper.readValue(body, type);
+        } catch (ExecutionException | IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * 在 owner 上执行其他节点发来的查询，结果编码为 JSON；失败时返回空数组。
+     */
+    private byte[] answer(ClusterMessage.Query query) {
+        try {
+            Object result = switch (query.kind()) {
+                case Q_ROOM_COUNTS -> realtime.roomCounts(objectMapper.readValue(query.body(), ROOM_IDS));
+                case Q_TRAFFIC_STATS -> realtime.trafficStats(objectMapper.readValue(query.body(), Long.class));
+                case Q_CHAT_PAGE -> {
+                    ChatPageQuery q = objectMapper.readValue(query.body(), ChatPageQuery.class);
+                    yield chatHistory.page(q.roomId(), q.before(), q.limit());
+                }
+                default -> throw new IllegalArgumentException("unknown query " + query.kind());
+            };
+            return objectMapper.writeValueAsBytes(result);
+        } catch (IOException | RuntimeException e) {
+            return new byte[0];
+        }
+    }
+
+    public ClusterStats stats() {
+        int forwarded = (int) routes.values().stream().filter(r -> !localNode.equals(r.node())).count();
+        return new ClusterStats(localNode, bus.members(), localSessions.size(), forwarded, relayed.size(),
+                bus.droppedMessages());
+    }
+
+    static byte[] bytes(BinaryMessage message) {
+        ByteBuffer buffer = message.getPayload().duplicate();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private interface HandlerCall {
+        void run() throws Exception;
+    }
+
+    private static void invoke(HandlerCall call) {
+        try {
+            call.run();
+        } catch (Exception ignored) {
+            // 单条消息处理失败不影响总线
+        }
+    }
+}
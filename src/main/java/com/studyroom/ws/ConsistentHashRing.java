@@ -0,0 +1,73 @@
+package com.studyroom.ws;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * 一致性哈希环（不可变），把房间映射到 owner 节点。每个节点在环上放 virtualNodes 个点，
+ * 节点增减时只有落在相邻区间的房间换 owner。成员变化时整体重建一个新环。
+ */
+final class ConsistentHashRing {
+
+    private final long[] points;
+    private final String[] owners;
+
+    ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        int perNode = Math.max(1, virtualNodes);
+        long[][] entries = new long[nodes.size() * perNode][];
+        String[] names = nodes.toArray(new String[0]);
+        int n = 0;
+        for (int i = 0; i < names.length; i++) {
+            for (int v = 0; v < perNode; v++) {
+                entries[n++] = new long[]{hash(names[i] + "#" + v), i};
+            }
+        }
+        // 哈希相同时按节点名决定先后，保证各节点算出的环一致
+        Arrays.sort(entries, (a, b) -> a[0] != b[0]
+                ? Long.compare(a[0], b[0])
+                : names[(int) a[1]].compareTo(names[(int) b[1]]));
+        this.points = new long[n];
+        this.owners = new String[n];
+        for (int i = 0; i < n; i++) {
+            points[i] = entries[i][0];
+            owners[i] = names[(int) entries[i][1]];
+        }
+    }
+
+    /**
+     * @return 环上顺时针第一个点所属的节点；环为空时返回 null
+     */
+    String owner(long key) {
+        if (points.length == 0) {
+            return null;
+        }
+        int i = Arrays.binarySearch(points, mix(key));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i == points.length ? 0 : i];
+    }
+
+    private static long hash(String s) {
+        // FNV-1a，再经过 mix 打散
+        long h = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * MurmurHash3 的 fmix64。
+     */
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
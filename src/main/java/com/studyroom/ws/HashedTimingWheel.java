@@ -0,0 +1,227 @@
+package com.studyroom.ws;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * 哈希时间轮，用于数量很大、精度要求不高的定时任务（会话心跳、房间计时器）。
+ * 新增和取消都是 O(1) 的入队操作，由单个工作线程每个 tick 批量挂到槽位上并触发到期任务。
+ * <p>
+ * 到期任务在工作线程上执行，必须很短；需要 IO 的工作应当转交给其他线程。
+ */
+@Component
+public class HashedTimingWheel {
+
+    static final long TICK_MILLIS = 100;
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+    private static final int WHEEL_SIZE = 512;
+    private static final int MASK = WHEEL_SIZE - 1;
+    /** 每个 tick 最多从待加入队列转移的任务数，避免突发注册拖慢到期处理 */
+    private static final int MAX_TRANSFER_PER_TICK = 100_000;
+
+    private final Bucket[] wheel = new Bucket[WHEEL_SIZE];
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final LongSupplier clock;
+    private final long startTime;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    // 只由工作线程访问
+    private long tick;
+
+    public HashedTimingWheel() {
+        this(System::nanoTime, true);
+    }
+
+    /**
+     * @param clock       纳秒时钟，只用于计算新任务的到期时刻
+     * @param startWorker 为 false 时不启动工作线程，由调用方串行调用 {@link #advance()} 推进
+     */
+    HashedTimingWheel(LongSupplier clock, boolean startWorker) {
+        this.clock = clock;
+        this.startTime = clock.getAsLong();
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new Bucket();
+        }
+        if (startWorker) {
+            worker = new Thread(this::run, "ws-timing-wheel");
+            worker.setDaemon(true);
+            worker.start();
+        } else {
+            worker = null;
+        }
+    }
+
+    /**
+     * @param delayMillis 延迟时间，实际触发时刻向上取整到 tick（{@value #TICK_MILLIS}ms）
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        long deadline = clock.getAsLong() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        Timeout timeout = new Timeout(this, task, deadline);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            long sleep = TICK_NANOS * (tick + 1) - (clock.getAsLong() - startTime);
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+                continue;
+            }
+            advance();
+        }
+    }
+
+    /**
+     * 推进一个 tick：清理已取消的任务，挂入新任务，触发当前槽位上到期的任务。
+     * 第 n 次调用处理的是 [n * TICK, (n + 1) * TICK) 内到期的任务。
+     */
+    void advance() {
+        removeCancelled();
+        transferPending();
+        wheel[(int) (tick & MASK)].expire();
+        tick++;
+    }
+
+    private void transferPending() {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            Timeout timeout = pending.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state.get() != Timeout.ST_INIT) {
+                continue;
+            }
+            long due = timeout.deadline / TICK_NANOS;
+            timeout.remainingRounds = (due - tick) / WHEEL_SIZE;
+            wheel[(int) (Math.max(due, tick) & MASK)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    public static final class Timeout {
+
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final HashedTimingWheel owner;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+        // 以下只由工作线程访问
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(HashedTimingWheel owner, Runnable task, long deadline) {
+            this.owner = owner;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return false 表示任务已经触发或此前已取消
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            owner.cancelled.add(this);
+            return true;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException ignored) {
+                // 单个任务失败不影响时间轮
+            }
+        }
+    }
+
+    /**
+     * 槽位内的双向链表，只由工作线程访问。
+     */
+    private static final class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire() {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.state.get() == Timeout.ST_CANCELLED) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.studyroom.ws;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 上行消息的流式解析：不构建 JsonNode 树，读到 type 后直接把 payload 绑定成 {@link WsCommands} 里的记录。
+ * JSON 文本帧和 CBOR 二进制帧共用同一套读取逻辑。
+ * <p>
+ * 约定客户端先写 type 再写 payload；如果顺序相反，payload 会先缓存到 TokenBuffer 再回放。
+ */
+@Component
+public class InboundCommandReader {
+
+    private final ObjectMapper objectMapper;
+    private final JsonFactory jsonFactory;
+    private final CBORFactory cborFactory = new CBORFactory();
+
+    public InboundCommandReader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    public WsCommands.InboundCommand readJson(String text) throws IOException {
+        try (JsonParser p = jsonFactory.createParser(text)) {
+            return read(p);
+        }
+    }
+
+    public WsCommands.InboundCommand readCbor(ByteBuffer buf) throws IOException {
+        JsonParser parser;
+        if (buf.hasArray()) {
+            parser = cborFactory.createParser(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+        } else {
+            byte[] bytes = new byte[buf.remaining()];
+            buf.duplicate().get(bytes);
+            parser = cborFactory.createParser(bytes);
+        }
+        try (JsonParser p = parser) {
+            return read(p);
+        }
+    }
+
+    private WsCommands.InboundCommand read(JsonParser p) throws IOException {
+        if (p.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("envelope must be an object");
+        }
+        String type = null;
+        TokenBuffer bufferedPayload = null;
+        WsCommands.InboundCommand command = null;
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            if ("type".equals(field)) {
+                type = p.getValueAsString("");
+            } else if ("payload".equals(field)) {
+                if (type != null) {
+                    command = bind(type, p);
+                } else {
+                    bufferedPayload = new TokenBuffer(p, null);
+                    bufferedPayload.copyCurrentStructure(p);
+                }
+            } else {
+                p.skipChildren();
+            }
+        }
+
+        if (command != null) {
+            return command;
+        }
+        if (type == null) {
+            type = "";
+        }
+        if (bufferedPayload != null) {
+            try (JsonParser replay = bufferedPayload.asParser(objectMapper)) {
+                replay.nextToken();
+                return bind(type, replay);
+            }
+        }
+        return bind(type, null);
+    }
+
+    /**
+     * @param p 当前 token 为 payload 值；为 null 表示消息没有 payload
+     */
+    private WsCommands.InboundCommand bind(String type, JsonParser p) throws IOException {
+        return switch (type) {
+            case "join" -> readJoin(p);
+            case "leave" -> {
+                skip(p);
+                yield WsCommands.LeaveCommand.INSTANCE;
+            }
+            case "chat" -> readChat(p);
+            case "timerStatus" -> readTimerStatus(p);
+            case "roomTimer" -> readRoomTimer(p);
+            case "sync" -> readSync(p);
+            case "resume" -> readResume(p);
+            default -> {
+                skip(p);
+                yield new WsCommands.UnknownCommand(type);
+            }
+        };
+    }
+
+    private WsCommands.JoinCommand readJoin(JsonParser p) throws IOException {
+        Long roomId = null;
+        RoomRealtimeService.WsUser user = null;
+        if (isObject(p)) {
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                if ("roomId".equals(field)) {
+                    roomId = readLong(p);
+                } else if ("user".equals(field)) {
+                    user = readUser(p);
+                } else {
+                    p.skipChildren();
+                }
+            }
+        }
+        return new WsCommands.JoinCommand(roomId, user == null ? new RoomRealtimeService.WsUser(null, null) : user);
+    }
+
+    private WsCommands.ResumeCommand readResume(JsonParser p) throws IOException {
+        Long roomId = null;
+        RoomRealtimeService.WsUser user = null;
+        Long epoch = null;
+        Long lastSeq = null;
+        Long version = null;
+        if (isObject(p)) {
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                if ("roomId".equals(field)) {
+                    roomId = readLong(p);
+                } else if ("user".equals(field)) {
+                    user = readUser(p);
+                } else if ("epoch".equals(field)) {
+                    epoch = readLong(p);
+                } else if ("lastSeq".equals(field)) {
+                    lastSeq = readLong(p);
+                } else if ("version".equals(field)) {
+                    version = readLong(p);
+                } else {
+                    p.skipChildren();
+                }
+            }
+        }
+        return new WsCommands.ResumeCommand(roomId,
+                user == null ? new RoomRealtimeService.WsUser(null, null) : user, epoch, lastSeq, version);
+    }
+
+    /**
+     * @return 值不是对象时返回 null
+     */
+    private RoomRealtimeService.WsUser readUser(JsonParser p) throws IOException {
+        if (!isObject(p)) {
+            return null;
+        }
+        String userId = null;
+        String name = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            if ("id".equals(field)) {
+                userId = readText(p);
+            } else if ("name".equals(field)) {
+                name = readText(p);
+            } else {
+                p.skipChildren();
+            }
+        }
+        return new RoomRealtimeService.WsUser(userId, name);
+    }
+
+    private WsCommands.ChatCommand readChat(JsonParser p) throws IOException {
+        Long roomId = null;
+        String content = null;
+        if (isObject(p)) {
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                if ("roomId".equals(field)) {
+                    roomId = readLong(p);
+                } else if ("content".equals(field)) {
+                    content = readText(p);
+                } else {
+                    p.skipChildren();
+                }
+            }
+        }
+        return new WsCommands.ChatCommand(roomId, content);
+    }
+
+    private WsCommands.TimerStatusCommand readTimerStatus(JsonParser p) throws IOException {
+        String status = null;
+        if (isObject(p)) {
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                if ("status".equals(field)) {
+                    status = readText(p);
+                } else {
+                    p.skipChildren();
+                }
+            }
+        }
+        return new WsCommands.TimerStatusCommand(status);
+    }
+
+    private WsCommands.RoomTimerCommand readRoomTimer(JsonParser p) throws IOException {
+        String action = null;
+        Long focusMinutes = null;
+        Long breakMinutes = null;
+        if (isObject(p)) {
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                if ("action".equals(field)) {
+                    action = readText(p);
+                } else if ("focusMinutes".equals(field)) {
+                    focusMinutes = readLong(p);
+                } else if ("breakMinutes".equals(field)) {
+                    breakMinutes = readLong(p);
+                } else {
+                    p.skipChildren();
+                }
+            }
+        }
+        return new WsCommands.RoomTimerCommand(action, focusMinutes, breakMinutes);
+    }
+
+    private WsCommands.SyncCommand readSync(JsonParser p) throws IOException {
+        Long version = null;
+        if (isObject(p)) {
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                if ("version".equals(field)) {
+                    version = readLong(p);
+                } else {
+                    p.skipChildren();
+                }
+            }
+        }
+        return new WsCommands.SyncCommand(version);
+    }
+
+    private static boolean isObject(JsonParser p) throws IOException {
+        if (p == null) {
+            return false;
+        }
+        if (p.currentToken() == JsonToken.START_OBJECT) {
+            return true;
+        }
+        p.skipChildren();
+        return false;
+    }
+
+    private static void skip(JsonParser p) throws IOException {
+        if (p != null) {
+            p.skipChildren();
+        }
+    }
+
+    /**
+     * 与旧版 {@code JsonNode.asLong()} 一致：数字或数字字符串，其他值按 0 处理，null 视为缺失。
+     */
+    private static Long readLong(JsonParser p) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (p.currentToken().isStructStart()) {
+            p.skipChildren();
+            return 0L;
+        }
+        return p.getValueAsLong(0L);
+    }
+
+    private static String readText(JsonParser p) throws IOException {
+        if (p.currentToken().isStructStart()) {
+            p.skipChildren();
+            return null;
+        }
+        return p.getValueAsString(null);
+    }
+}
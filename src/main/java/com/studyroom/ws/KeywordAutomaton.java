@@ -0,0 +1,193 @@
+package com.studyroom.ws;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * 编译好的 Aho–Corasick 自动机（不可变，可被多线程共享）。
+ * <p>
+ * trie 按 BFS 编号后压成 CSR 数组：状态 s 的出边是 {@code edgeChars/edgeTargets[edgeStart[s], edgeStart[s+1])}，
+ * 按字符升序排列、二分查找；另有 fail 链和 {@code longest[s]}（以该状态结尾的最长词长度，已沿 fail 链合并）。
+ * 中文词表字符集很大，不展开成完整的转移表。
+ * <p>
+ * 扫描对文本只走一遍，ASCII 字母不区分大小写；{@link #find(CharSequence)} 不分配对象，
+ * {@link #mask(String, char)} 只在命中时分配一次结果数组。
+ */
+final class KeywordAutomaton {
+
+    static final KeywordAutomaton EMPTY = compile(List.of());
+
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    private final int[] fail;
+    private final int[] longest;
+    private final int words;
+
+    private KeywordAutomaton(int[] edgeStart, char[] edgeChars, int[] edgeTargets, int[] fail, int[] longest,
+                             int words) {
+        this.edgeStart = edgeStart;
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.fail = fail;
+        this.longest = longest;
+        this.words = words;
+    }
+
+    static KeywordAutomaton compile(Collection<String> dictionary) {
+        // 先用 TreeMap 建普通 trie，子节点天然有序
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        List<Integer> depth = new ArrayList<>();
+        List<Boolean> terminal = new ArrayList<>();
+        children.add(new TreeMap<>());
+        depth.add(0);
+        terminal.add(false);
+        int words = 0;
+        for (String word : dictionary) {
+            if (word == null || word.isEmpty()) {
+                continue;
+            }
+            int node = 0;
+            for (int i = 0; i < word.length(); i++) {
+                char c = fold(word.charAt(i));
+                Integer next = children.get(node).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.add(new TreeMap<>());
+                    depth.add(depth.get(node) + 1);
+                    terminal.add(false);
+                    children.get(node).put(c, next);
+                }
+                node = next;
+            }
+            if (!terminal.get(node)) {
+                terminal.set(node, true);
+                words++;
+            }
+        }
+
+        // BFS 重新编号，同时计算 fail 与 longest（父节点总是先于子节点处理）
+        int n = children.size();
+        int[] order = new int[n];
+        int[] index = new int[n];
+        int[] fail = new int[n];
+        int[] longest = new int[n];
+        int[] edgeStart = new int[n + 1];
+        char[] edgeChars = new char[n - 1];
+        int[] edgeTargets = new int[n - 1];
+
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(0);
+        int visited = 0;
+        while (!queue.isEmpty()) {
+            int old = queue.poll();
+            order[visited] = old;
+            index[old] = visited++;
+            queue.addAll(children.get(old).values());
+        }
+        int edges = 0;
+        for (int s = 0; s < n; s++) {
+            edgeStart[s] = edges;
+            for (var e : children.get(order[s]).entrySet()) {
+                edgeChars[edges] = e.getKey();
+                edgeTargets[edges++] = index[e.getValue()];
+            }
+        }
+        edgeStart[n] = edges;
+
+        KeywordAutomaton partial = new KeywordAutomaton(edgeStart, edgeChars, edgeTargets, fail, longest, words);
+        for (int s = 0; s < n; s++) {
+            for (int e = edgeStart[s]; e < edgeStart[s + 1]; e++) {
+                int child = edgeTargets[e];
+                if (s == 0) {
+                    fail[child] = 0;
+                } else {
+                    int f = fail[s];
+                    int next;
+                    while ((next = partial.edge(f, edgeChars[e])) < 0 && f != 0) {
+                        f = fail[f];
+                    }
+                    fail[child] = Math.max(next, 0);
+                }
+                int own = terminal.get(order[child]) ? depth.get(order[child]) : 0;
+                longest[child] = Math.max(own, longest[fail[child]]);
+            }
+        }
+        return partial;
+    }
+
+    int size() {
+        return words;
+    }
+
+    /**
+     * @return 第一个命中词的结束位置（不含），没有命中返回 -1
+     */
+    int find(CharSequence text) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = step(state, fold(text.charAt(i)));
+            if (longest[state] > 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 把所有命中的片段逐字符替换为 mask；没有命中时返回原字符串。
+     */
+    String mask(String text, char mask) {
+        char[] out = null;
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = step(state, fold(text.charAt(i)));
+            int len = longest[state];
+            if (len > 0) {
+                if (out == null) {
+                    out = text.toCharArray();
+                }
+                Arrays.fill(out, i + 1 - len, i + 1, mask);
+            }
+        }
+        return out == null ? text : new String(out);
+    }
+
+    private int step(int state, char c) {
+        while (true) {
+            int next = edge(state, c);
+            if (next >= 0) {
+                return next;
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = fail[state];
+        }
+    }
+
+    private int edge(int state, char c) {
+        int lo = edgeStart[state];
+        int hi = edgeStart[state + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char m = edgeChars[mid];
+            if (m < c) {
+                lo = mid + 1;
+            } else if (m > c) {
+                hi = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+        return -1;
+    }
+
+    private static char fold(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
@@ -0,0 +1,108 @@
+package com.studyroom.ws;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内总线。未启用集群时只有本节点自己；测试时可以让多个实例加入同一个 {@link Network}，
+ * 在一个 JVM 里模拟多节点，{@link #close()} 即模拟节点下线。
+ * 每个节点用一个线程按序投递收到的消息，与 TCP 实现的回调线程模型一致。
+ */
+public class LoopbackClusterBus implements ClusterBus, AutoCloseable {
+
+    /**
+     * 一组互相可达的节点。
+     */
+    public static final class Network {
+
+        private final ConcurrentHashMap<String, LoopbackClusterBus> nodes = new ConcurrentHashMap<>();
+
+        private synchronized void join(LoopbackClusterBus bus) {
+            nodes.put(bus.localNode, bus);
+            membershipChanged();
+        }
+
+        private synchronized void leave(LoopbackClusterBus bus) {
+            if (nodes.remove(bus.localNode, bus)) {
+                membershipChanged();
+            }
+        }
+
+        private void membershipChanged() {
+            Set<String> members = Collections.unmodifiableSet(new TreeSet<>(nodes.keySet()));
+            for (LoopbackClusterBus bus : nodes.values()) {
+                bus.deliver(() -> bus.listener.onMembershipChanged(members));
+            }
+        }
+    }
+
+    private final String localNode;
+    private final Network network;
+    private final ExecutorService delivery;
+    private final LongAdder dropped = new LongAdder();
+    private volatile Listener listener;
+
+    public LoopbackClusterBus(String localNode, Network network) {
+        this.localNode = localNode;
+        this.network = network;
+        this.delivery = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "cluster-loopback-" + localNode);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public String localNode() {
+        return localNode;
+    }
+
+    @Override
+    public Set<String> members() {
+        return listener == null
+                ? Set.of(localNode)
+                : Collections.unmodifiableSet(new TreeSet<>(network.nodes.keySet()));
+    }
+
+    @Override
+    public boolean send(String node, ClusterMessage message) {
+        LoopbackClusterBus target = network.nodes.get(node);
+        if (target == null || !target.deliver(() -> target.listener.onMessage(localNode, message))) {
+            dropped.increment();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void start(Listener listener) {
+        this.listener = listener;
+        network.join(this);
+    }
+
+    @Override
+    public long droppedMessages() {
+        return dropped.sum();
+    }
+
+    private boolean deliver(Runnable task) {
+        try {
+            delivery.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        network.leave(this);
+        delivery.shutdownNow();
+    }
+}
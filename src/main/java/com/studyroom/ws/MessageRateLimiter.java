@@ -0,0 +1,112 @@
+package com.studyroom.ws;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 上行 chat / timerStatus 的限速，在广播之前执行。
+ * 每个连接的令牌桶放在会话属性里（连接建立时创建，随会话释放），房间级的桶按需创建、空闲后清理。
+ */
+@Component
+public class MessageRateLimiter {
+
+    private static final String SESSION_BUCKETS_ATTR = MessageRateLimiter.class.getName() + ".buckets";
+    private static final long ROOM_BUCKET_SWEEP_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final RealtimeScheduler scheduler;
+    private final RealtimeProperties.RateLimit config;
+    private final ConcurrentHashMap<Long, TokenBucket> roomChatBuckets = new ConcurrentHashMap<>();
+
+    private final LongAdder sessionChatThrottled = new LongAdder();
+    private final LongAdder roomChatThrottled = new LongAdder();
+    private final LongAdder timerStatusThrottled = new LongAdder();
+
+    public MessageRateLimiter(RealtimeScheduler scheduler, RealtimeProperties properties) {
+        this.scheduler = scheduler;
+        this.config = properties.getRateLimit();
+    }
+
+    /**
+     * 累计被限速丢弃的消息数。
+     */
+    public record ThrottleStats(long sessionChat, long roomChat, long timerStatus, int trackedRooms) {}
+
+    private record SessionBuckets(TokenBucket chat, TokenBucket timerStatus) {}
+
+    @PostConstruct
+    void startSweep() {
+        if (config.getRoomChat().isEnabled()) {
+            scheduler.scheduleAtFixedRate(this::sweepRoomBuckets, ROOM_BUCKET_SWEEP_MILLIS);
+        }
+    }
+
+    public void register(WebSocketSession session) {
+        long now = System.nanoTime();
+        session.getAttributes().put(SESSION_BUCKETS_ATTR, new SessionBuckets(
+                newBucket(config.getSessionChat(), now),
+                newBucket(config.getSessionTimerStatus(), now)));
+    }
+
+    /**
+     * 先扣连接自己的令牌，再扣房间的，刷屏的连接不会消耗房间额度。
+     */
+    public boolean allowChat(WebSocketSession session, Long roomId) {
+        long now = System.nanoTime();
+        SessionBuckets buckets = sessionBuckets(session);
+        if (buckets != null && buckets.chat() != null && !buckets.chat().tryAcquire(now)) {
+            sessionChatThrottled.increment();
+            return false;
+        }
+        if (!config.getRoomChat().isEnabled()) {
+            return true;
+        }
+        TokenBucket room = roomChatBuckets.get(roomId);
+        if (room == null) {
+            room = roomChatBuckets.computeIfAbsent(roomId, id -> newBucket(config.getRoomChat(), now));
+        }
+        if (!room.tryAcquire(now)) {
+            roomChatThrottled.increment();
+            return false;
+        }
+        return true;
+    }
+
+    public boolean allowTimerStatus(WebSocketSession session) {
+        SessionBuckets buckets = sessionBuckets(session);
+        if (buckets != null && buckets.timerStatus() != null && !buckets.timerStatus().tryAcquire(System.nanoTime())) {
+            timerStatusThrottled.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 被限速时是否需要回复错误。
+     */
+    public boolean rejectsWithError() {
+        return config.getPolicy() == RealtimeProperties.ThrottlePolicy.REJECT;
+    }
+
+    public ThrottleStats stats() {
+        return new ThrottleStats(sessionChatThrottled.sum(), roomChatThrottled.sum(), timerStatusThrottled.sum(),
+                roomChatBuckets.size());
+    }
+
+    void sweepRoomBuckets() {
+        long now = System.nanoTime();
+        roomChatBuckets.values().removeIf(bucket -> bucket.isIdle(now));
+    }
+
+    private static SessionBuckets sessionBuckets(WebSocketSession session) {
+        return (SessionBuckets) session.getAttributes().get(SESSION_BUCKETS_ATTR);
+    }
+
+    private static TokenBucket newBucket(RealtimeProperties.Bucket bucket, long now) {
+        return bucket.isEnabled() ? new TokenBucket(bucket.getRate(), bucket.getBurst(), now) : null;
+    }
+}
@@ -0,0 +1,88 @@
+package com.studyroom.ws;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.function.Supplier;
+
+/**
+ * 编码完成的下行消息。一次广播只编码一次，同一个实例（以及其中的 TextMessage）被所有接收会话共享，
+ * 所以必须保持不可变。
+ * <p>
+ * 二进制（CBOR）形式按需生成：只有房间里存在协商了二进制子协议的会话时才编码，并且同样只编码一次。
+ * <p>
+ * 编码时按消息类型确定所属的 {@link OutboundLane}。
+ */
+public final class OutboundFrame {
+
+    private final String type;
+    private final OutboundLane lane;
+    private final byte[] bytes;
+    private final TextMessage textMessage;
+    private Supplier<byte[]> binaryEncoder;
+    private volatile BinaryMessage binaryMessage;
+
+    OutboundFrame(String type, byte[] utf8Json, Supplier<byte[]> binaryEncoder) {
+        this.type = type;
+        this.lane = OutboundLane.of(type);
+        this.bytes = utf8Json;
+        // TextMessage(byte[]) 同时保留字节和字符串视图，发送和计算长度都不会再次编码
+        this.textMessage = new TextMessage(utf8Json);
+        this.binaryEncoder = binaryEncoder;
+    }
+
+    /**
+     * 其他节点已经编码好的帧，只有接收会话所用的那一种形式有效。
+     * owner 上代理会话的队列不会积压（总线发送不阻塞），所以按原消息类型重建，
+     * 由客户端所在节点的 {@link SessionOutbox} 照常分通道、合并；类型未知时按可靠通道处理。
+     */
+    static OutboundFrame relayed(String type, byte[] payload, boolean binary) {
+        String effective = type == null || type.isEmpty() ? "relayed" : type;
+        return binary ? new OutboundFrame(effective, new byte[0], () -> payload)
+                : new OutboundFrame(effective, payload, null);
+    }
+
+    String type() {
+        return type;
+    }
+
+    OutboundLane lane() {
+        return lane;
+    }
+
+    public TextMessage textMessage() {
+        return textMessage;
+    }
+
+    public String text() {
+        return textMessage.getPayload();
+    }
+
+    public BinaryMessage binaryMessage() {
+        BinaryMessage m = binaryMessage;
+        if (m == null) {
+            synchronized (this) {
+                m = binaryMessage;
+                if (m == null) {
+                    m = new BinaryMessage(binaryEncoder.get());
+                    binaryMessage = m;
+                    binaryEncoder = null;
+                }
+            }
+        }
+        return m;
+    }
+
+    public WebSocketMessage<?> message(boolean binary) {
+        return binary ? binaryMessage() : textMessage;
+    }
+
+    public int size() {
+        return bytes.length;
+    }
+
+    public int size(boolean binary) {
+        return binary ? binaryMessage().getPayloadLength() : bytes.length;
+    }
+}
@@ -0,0 +1,23 @@
+package com.studyroom.ws;
+
+/**
+ * 下行消息的优先级通道，声明顺序即写出优先级。{@link SessionOutbox} 每次总是先写高优先级通道里的消息，
+ * 积压时只合并/丢弃低优先级通道，聊天不会排在成员快照后面。
+ */
+enum OutboundLane {
+
+    /** 聊天和针对本会话的回复（joined / resumed / 快照 / 错误），可靠、按序，不会被合并 */
+    RELIABLE,
+    /** 房间的完整状态（roomTimer / roomOccupancy），同类型只保留最新一条 */
+    STATE,
+    /** 成员增量，积压时只保留最新一条；客户端发现 version 断档后会 sync 拿完整快照 */
+    PRESENCE;
+
+    static OutboundLane of(String type) {
+        return switch (type) {
+            case "memberJoined", "memberLeft", "statusChanged", "presenceBatch" -> PRESENCE;
+            case "roomTimer", "roomOccupancy" -> STATE;
+            default -> RELIABLE;
+        };
+    }
+}
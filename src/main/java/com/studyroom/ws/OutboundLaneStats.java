@@ -0,0 +1,87 @@
+package com.studyroom.ws;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 所有会话共享的分通道统计：写出条数、被合并掉的条数，以及从入队到写完的耗时分布。
+ * 耗时按 2 的幂（微秒）分桶，百分位取桶的上界（不超过最大值），精度在两倍以内，记录时不分配对象也不加锁。
+ */
+final class OutboundLaneStats {
+
+    private static final int BUCKETS = 32;
+
+    private final Lane[] lanes = new Lane[OutboundLane.values().length];
+
+    OutboundLaneStats() {
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane();
+        }
+    }
+
+    private static final class Lane {
+        final LongAdder sent = new LongAdder();
+        final LongAdder superseded = new LongAdder();
+        final LongAdder totalMicros = new LongAdder();
+        final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+        final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+        Lane() {
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] = new LongAdder();
+            }
+        }
+    }
+
+    void sent(OutboundLane lane, long latencyNanos) {
+        Lane l = lanes[lane.ordinal()];
+        long micros = Math.max(0, latencyNanos / 1_000);
+        l.sent.increment();
+        l.totalMicros.add(micros);
+        l.maxMicros.accumulate(micros);
+        l.histogram[Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros | 1))].increment();
+    }
+
+    void superseded(OutboundLane lane, int count) {
+        if (count > 0) {
+            lanes[lane.ordinal()].superseded.add(count);
+        }
+    }
+
+    List<OutboundWriterPool.LaneStats> snapshot() {
+        List<OutboundWriterPool.LaneStats> result = new ArrayList<>(lanes.length);
+        for (OutboundLane lane : OutboundLane.values()) {
+            Lane l = lanes[lane.ordinal()];
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = l.histogram[i].sum();
+                total += counts[i];
+            }
+            long sent = l.sent.sum();
+            double max = l.maxMicros.get() / 1000.0;
+            result.add(new OutboundWriterPool.LaneStats(lane.name().toLowerCase(), sent, l.superseded.sum(),
+                    sent == 0 ? 0 : l.totalMicros.sum() / 1000.0 / sent,
+                    Math.min(max, percentile(counts, total, 0.50)), Math.min(max, percentile(counts, total, 0.99)),
+                    max));
+        }
+        return result;
+    }
+
+    private static double percentile(long[] counts, long total, double p) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * p);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return (1L << (i + 1)) / 1000.0;
+            }
+        }
+        return (1L << BUCKETS) / 1000.0;
+    }
+}
@@ -0,0 +1,72 @@
+package com.studyroom.ws;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 所有会话共享的写线程池，每个 {@link SessionOutbox} 同一时刻最多占用其中一个线程。
+ * <p>
+ * 单条消息的写出时间由时间轮上的看门狗检查，超时的会话即使之后没有新消息也会被淘汰；
+ * 淘汰时的 close 可能被卡住的写操作阻塞，放在单独的线程池里执行，不占用写线程。
+ */
+@Component
+public class OutboundWriterPool {
+
+    private final RealtimeProperties.Outbound limits;
+    private final ExecutorService executor;
+    private final ExecutorService closer;
+    private final HashedTimingWheel wheel;
+    private final OutboundLaneStats laneStats = new OutboundLaneStats();
+
+    public OutboundWriterPool(RealtimeProperties properties, HashedTimingWheel wheel) {
+        this.wheel = wheel;
+        this.limits = properties.getOutbound();
+        int threads = limits.getWriterThreads() > 0
+                ? limits.getWriterThreads()
+                : Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "ws-writer-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        AtomicInteger closerSeq = new AtomicInteger();
+        ThreadPoolExecutor closerPool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "ws-closer-" + closerSeq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        closerPool.allowCoreThreadTimeOut(true);
+        this.closer = closerPool;
+    }
+
+    /**
+     * 某个优先级通道的累计写出情况，耗时为从入队到写完，单位毫秒。
+     */
+    public record LaneStats(String lane, long sent, long superseded, double avgMillis, double p50Millis,
+                            double p99Millis, double maxMillis) {}
+
+    SessionOutbox open(WebSocketSession session) {
+        return new SessionOutbox(session, executor, closer, wheel, limits, laneStats);
+    }
+
+    public List<LaneStats> laneStats() {
+        return laneStats.snapshot();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        closer.shutdownNow();
+    }
+}
@@ -0,0 +1,283 @@
+package com.studyroom.ws;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * /ws 实时通道相关配置，前缀 {@code studyroom.realtime}。
+ */
+@ConfigurationProperties(prefix = "studyroom.realtime")
+public class RealtimeProperties {
+
+    private final Outbound outbound = new Outbound();
+    private final Presence presence = new Presence();
+    private final Protocol protocol = new Protocol();
+    private final ChatHistory chatHistory = new ChatHistory();
+    private final Resume resume = new Resume();
+    private final ChatLog chatLog = new ChatLog();
+    private final Heartbeat heartbeat = new Heartbeat();
+    private final RateLimit rateLimit = new RateLimit();
+    private final Capacity capacity = new Capacity();
+    private final Cluster cluster = new Cluster();
+    private final Moderation moderation = new Moderation();
+
+    public Outbound getOutbound() { return outbound; }
+    public Presence getPresence() { return presence; }
+    public Protocol getProtocol() { return protocol; }
+    public ChatHistory getChatHistory() { return chatHistory; }
+    public Resume getResume() { return resume; }
+    public ChatLog getChatLog() { return chatLog; }
+    public Heartbeat getHeartbeat() { return heartbeat; }
+    public RateLimit getRateLimit() { return rateLimit; }
+    public Capacity getCapacity() { return capacity; }
+    public Cluster getCluster() { return cluster; }
+    public Moderation getModeration() { return moderation; }
+
+    public enum SlowConsumerPolicy {
+        /** 超限直接关闭会话，客户端需要重连 */
+        CLOSE,
+        /**
+         * 超限时丢弃新的状态和成员增量帧，会话保留（客户端靠 version 断档自行 sync）；
+         * 聊天等带 seq 的帧不丢，放不下时仍关闭会话，客户端重连后 resume 补齐
+         */
+        DROP
+    }
+
+    public enum ModerationPolicy {
+        /** 命中的词逐字替换为 *，消息照常发送 */
+        MASK,
+        /** 命中即拒绝整条消息，回复 content rejected 错误 */
+        REJECT
+    }
+
+    public enum ThrottlePolicy {
+        /** 超出速率的消息丢弃，并回复一条 rate limited 错误 */
+        REJECT,
+        /** 超出速率的消息静默丢弃 */
+        DROP
+    }
+
+    public static class Outbound {
+        /** 单条消息写出允许的最长时间，超过即视为慢连接 */
+        private Duration sendTimeLimit = Duration.ofSeconds(10);
+        /** 每个会话待发送缓冲的上限 */
+        private DataSize bufferSizeLimit = DataSize.ofKilobytes(512);
+        /** 写线程数，0 表示按 CPU 核数自动选择 */
+        private int writerThreads = 0;
+        private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.CLOSE;
+        /** 单个会话积压的成员增量超过该条数时只保留最新一条，客户端据 version 断档重新同步 */
+        private int presenceBacklog = 16;
+
+        public Duration getSendTimeLimit() { return sendTimeLimit; }
+        public void setSendTimeLimit(Duration sendTimeLimit) { this.sendTimeLimit = sendTimeLimit; }
+        public DataSize getBufferSizeLimit() { return bufferSizeLimit; }
+        public void setBufferSizeLimit(DataSize bufferSizeLimit) { this.bufferSizeLimit = bufferSizeLimit; }
+        public int getWriterThreads() { return writerThreads; }
+        public void setWriterThreads(int writerThreads) { this.writerThreads = writerThreads; }
+        public SlowConsumerPolicy getSlowConsumerPolicy() { return slowConsumerPolicy; }
+        public void setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) { this.slowConsumerPolicy = slowConsumerPolicy; }
+        public int getPresenceBacklog() { return presenceBacklog; }
+        public void setPresenceBacklog(int presenceBacklog) { this.presenceBacklog = presenceBacklog; }
+    }
+
+    public static class Presence {
+        /** 成员/专注状态变化的合并窗口，窗口内的变化合成一条广播；0 表示立即发送 */
+        private Duration coalesceWindow = Duration.ofMillis(100);
+
+        public Duration getCoalesceWindow() { return coalesceWindow; }
+        public void setCoalesceWindow(Duration coalesceWindow) { this.coalesceWindow = coalesceWindow; }
+    }
+
+    public static class Protocol {
+        /** 是否允许客户端协商 permessage-deflate 压缩（RFC 7692） */
+        private boolean permessageDeflate = true;
+
+        public boolean isPermessageDeflate() { return permessageDeflate; }
+        public void setPermessageDeflate(boolean permessageDeflate) { this.permessageDeflate = permessageDeflate; }
+    }
+
+    public static class ChatHistory {
+        /** 每个房间保留的最近聊天条数，0 表示关闭 */
+        private int capacity = 50;
+        /** 房间聊天记录多久无人读写后从内存清理 */
+        private Duration idleTtl = Duration.ofMinutes(30);
+
+        public int getCapacity() { return capacity; }
+        public void setCapacity(int capacity) { this.capacity = capacity; }
+        public Duration getIdleTtl() { return idleTtl; }
+        public void setIdleTtl(Duration idleTtl) { this.idleTtl = idleTtl; }
+    }
+
+    public static class Resume {
+        /** 每个房间保留的最近事件条数，断线期间错过的事件不超过该值时可以直接补发 */
+        private int bufferSize = 256;
+        /** 连接断开后成员保留多久，期间 resume 回来不会产生离开/加入广播；0 表示立即移除 */
+        private Duration gracePeriod = Duration.ofSeconds(20);
+
+        public int getBufferSize() { return bufferSize; }
+        public void setBufferSize(int bufferSize) { this.bufferSize = bufferSize; }
+        public Duration getGracePeriod() { return gracePeriod; }
+        public void setGracePeriod(Duration gracePeriod) { this.gracePeriod = gracePeriod; }
+    }
+
+    public static class ChatLog {
+        /** 是否把聊天写入磁盘日志，关闭后只保留内存中的最近记录 */
+        private boolean enabled = true;
+        /** 段文件目录 */
+        private String directory = "data/chat-log";
+        /** 单个段文件大小，写满后切换到新段 */
+        private DataSize segmentSize = DataSize.ofMegabytes(16);
+        /** 段内最新消息早于该时长的整段删除 */
+        private Duration retention = Duration.ofDays(7);
+        /** 所有段的总大小上限，超出时从最旧的段开始删除 */
+        private DataSize retentionSize = DataSize.ofGigabytes(1);
+        /** 待写队列长度，写满时新消息只进内存不落盘 */
+        private int queueCapacity = 65536;
+        /** 刷盘（msync）间隔，进程崩溃不丢数据，机器掉电最多丢失这段时间内的消息 */
+        private Duration forceInterval = Duration.ofSeconds(1);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public String getDirectory() { return directory; }
+        public void setDirectory(String directory) { this.directory = directory; }
+        public DataSize getSegmentSize() { return segmentSize; }
+        public void setSegmentSize(DataSize segmentSize) { this.segmentSize = segmentSize; }
+        public Duration getRetention() { return retention; }
+        public void setRetention(Duration retention) { this.retention = retention; }
+        public DataSize getRetentionSize() { return retentionSize; }
+        public void setRetentionSize(DataSize retentionSize) { this.retentionSize = retentionSize; }
+        public int getQueueCapacity() { return queueCapacity; }
+        public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+        public Duration getForceInterval() { return forceInterval; }
+        public void setForceInterval(Duration forceInterval) { this.forceInterval = forceInterval; }
+    }
+
+    public static class Heartbeat {
+        /** 服务端 ping 间隔，期间收到客户端任何帧都算存活；0 表示关闭心跳 */
+        private Duration interval = Duration.ofSeconds(25);
+        /** 连续多少个间隔没有收到任何帧就判定连接已死并移出房间 */
+        private int maxMissed = 2;
+
+        public Duration getInterval() { return interval; }
+        public void setInterval(Duration interval) { this.interval = interval; }
+        public int getMaxMissed() { return maxMissed; }
+        public void setMaxMissed(int maxMissed) { this.maxMissed = maxMissed; }
+    }
+
+    public static class RateLimit {
+        /** 单个连接发送聊天的速率 */
+        private final Bucket sessionChat = new Bucket(1, 5);
+        /** 单个房间所有人合计的聊天速率 */
+        private final Bucket roomChat = new Bucket(20, 40);
+        /** 单个连接上报专注状态的速率 */
+        private final Bucket sessionTimerStatus = new Bucket(1, 3);
+        private ThrottlePolicy policy = ThrottlePolicy.REJECT;
+
+        public Bucket getSessionChat() { return sessionChat; }
+        public Bucket getRoomChat() { return roomChat; }
+        public Bucket getSessionTimerStatus() { return sessionTimerStatus; }
+        public ThrottlePolicy getPolicy() { return policy; }
+        public void setPolicy(ThrottlePolicy policy) { this.policy = policy; }
+    }
+
+    public static class Capacity {
+        /** 单个房间分片的连接数上限，满员后新加入的连接进入溢出分片；0 表示不分片 */
+        private int maxSessionsPerShard = 200;
+
+        public int getMaxSessionsPerShard() { return maxSessionsPerShard; }
+        public void setMaxSessionsPerShard(int maxSessionsPerShard) { this.maxSessionsPerShard = maxSessionsPerShard; }
+    }
+
+    public static class Cluster {
+        /** 是否启用多节点；关闭时使用进程内总线，所有房间都在本节点 */
+        private boolean enabled = false;
+        /** 本节点 id，集群内唯一 */
+        private String nodeId = "node-1";
+        /** 节点间 TCP 监听地址，默认只监听本机；跨主机部署时设为内网地址 */
+        private String bindAddress = "127.0.0.1";
+        /** 节点间 TCP 监听端口 */
+        private int port = 7400;
+        /** 节点间共享密钥，连接建立时做 HMAC 挑战应答，启用集群时必须配置 */
+        private String secret = "";
+        /** 节点间单帧载荷的上限，发送时超过的消息直接丢弃，接收时超过的断开连接 */
+        private DataSize maxFrameSize = DataSize.ofMegabytes(4);
+        /** 其他节点，格式为 nodeId@host:port */
+        private List<String> peers = new ArrayList<>();
+        /** 一致性哈希环上每个节点的虚拟节点数 */
+        private int virtualNodes = 128;
+        /** 与对端断开后的重连间隔，空闲时也按这个间隔发送保活帧 */
+        private Duration reconnectInterval = Duration.ofSeconds(2);
+        /** 每个对端的待发送队列长度，写满后新消息丢弃 */
+        private int queueCapacity = 65536;
+        /** 向房间 owner 读取人数、统计、聊天历史时等待应答的时间 */
+        private Duration queryTimeout = Duration.ofSeconds(1);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public String getNodeId() { return nodeId; }
+        public void setNodeId(String nodeId) { this.nodeId = nodeId; }
+        public String getBindAddress() { return bindAddress; }
+        public void setBindAddress(String bindAddress) { this.bindAddress = bindAddress; }
+        public int getPort() { return port; }
+        public void setPort(int port) { this.port = port; }
+        public String getSecret() { return secret; }
+        public void setSecret(String secret) { this.secret = secret; }
+        public DataSize getMaxFrameSize() { return maxFrameSize; }
+        public void setMaxFrameSize(DataSize maxFrameSize) { this.maxFrameSize = maxFrameSize; }
+        public List<String> getPeers() { return peers; }
+        public void setPeers(List<String> peers) { this.peers = peers; }
+        public int getVirtualNodes() { return virtualNodes; }
+        public void setVirtualNodes(int virtualNodes) { this.virtualNodes = virtualNodes; }
+        public Duration getReconnectInterval() { return reconnectInterval; }
+        public void setReconnectInterval(Duration reconnectInterval) { this.reconnectInterval = reconnectInterval; }
+        public int getQueueCapacity() { return queueCapacity; }
+        public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+        public Duration getQueryTimeout() { return queryTimeout; }
+        public void setQueryTimeout(Duration queryTimeout) { this.queryTimeout = queryTimeout; }
+    }
+
+    public static class Moderation {
+        /** 是否启用聊天敏感词过滤 */
+        private boolean enabled = true;
+        /** 词表文件，每行一个词；文件不存在时不过滤 */
+        private String dictionary = "data/moderation/words.txt";
+        private ModerationPolicy policy = ModerationPolicy.MASK;
+        /** 检查词表文件是否变化的间隔，0 表示只在启动时加载 */
+        private Duration reloadInterval = Duration.ofSeconds(10);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public String getDictionary() { return dictionary; }
+        public void setDictionary(String dictionary) { this.dictionary = dictionary; }
+        public ModerationPolicy getPolicy() { return policy; }
+        public void setPolicy(ModerationPolicy policy) { this.policy = policy; }
+        public Duration getReloadInterval() { return reloadInterval; }
+        public void setReloadInterval(Duration reloadInterval) { this.reloadInterval = reloadInterval; }
+    }
+
+    public static class Bucket {
+        /** 每秒补充的令牌数，0 表示不限速 */
+        private double rate;
+        /** 桶容量，即允许的突发条数 */
+        private int burst;
+
+        public Bucket() {
+        }
+
+        Bucket(double rate, int burst) {
+            this.rate = rate;
+            this.burst = burst;
+        }
+
+        public double getRate() { return rate; }
+        public void setRate(double rate) { this.rate = rate; }
+        public int getBurst() { return burst; }
+        public void setBurst(int burst) { this.burst = burst; }
+
+        boolean isEnabled() { return rate > 0; }
+    }
+}
@@ -0,0 +1,41 @@
+package com.studyroom.ws;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 实时通道的延时与周期任务（presence 合并窗口、历史清理等）。任务都很短，单线程即可。
+ */
+@Component
+public class RealtimeScheduler {
+
+    private final ScheduledExecutorService executor;
+
+    public RealtimeScheduler() {
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "ws-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        pool.setRemoveOnCancelPolicy(true);
+        this.executor = pool;
+    }
+
+    public ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long periodMillis) {
+        return executor.scheduleAtFixedRate(task, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
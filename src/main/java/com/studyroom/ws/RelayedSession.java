@@ -0,0 +1,172 @@
+package com.studyroom.ws;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 房间 owner 节点上代表"连在其他节点上的客户端"的会话。
+ * 在 {@link RoomRealtimeService} 看来它和本地会话一样（有自己的 SessionOutbox、限速桶），
+ * 只是发送时把编码好的帧经总线交给客户端所在节点写出，close 则通知那个节点断开客户端。
+ * <p>
+ * 总线发送不阻塞，这里的 SessionOutbox 几乎不会积压；通道优先级和合并在客户端所在节点的会话队列上生效，
+ * 所以 {@link #send(OutboundFrame, boolean)} 连同帧的消息类型一起转发。
+ */
+final class RelayedSession implements WebSocketSession {
+
+    private final String id;
+    private final String originNode;
+    private final String originSessionId;
+    private final String protocol;
+    private final ClusterBus bus;
+    private final ClusterRelay relay;
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    RelayedSession(String originNode, String originSessionId, String protocol, ClusterBus bus, ClusterRelay relay) {
+        this.id = originNode + "/" + originSessionId;
+        this.originNode = originNode;
+        this.originSessionId = originSessionId;
+        this.protocol = protocol;
+        this.bus = bus;
+        this.relay = relay;
+    }
+
+    String originNode() {
+        return originNode;
+    }
+
+    /**
+     * 客户端所在节点已经报告断开，不再回发 Evict。
+     *
+     * @return false 表示此前已关闭
+     */
+    boolean markClosed() {
+        return closed.compareAndSet(false, true);
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public URI getUri() {
+        return null;
+    }
+
+    @Override
+    public HttpHeaders getHandshakeHeaders() {
+        return HttpHeaders.EMPTY;
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public Principal getPrincipal() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return null;
+    }
+
+    @Override
+    public String getAcceptedProtocol() {
+        return protocol;
+    }
+
+    @Override
+    public void setTextMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getTextMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getBinaryMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public List<WebSocketExtension> getExtensions() {
+        return List.of();
+    }
+
+    /**
+     * 由 {@link SessionOutbox} 调用，带上帧的消息类型。
+     */
+    void send(OutboundFrame frame, boolean binary) throws IOException {
+        if (closed.get()) {
+            throw new IOException("session closed");
+        }
+        WebSocketMessage<?> message = frame.message(binary);
+        byte[] payload = binary ? ClusterRelay.bytes((BinaryMessage) message) : ((TextMessage) message).asBytes();
+        if (!bus.send(originNode, new ClusterMessage.Outbound(originSessionId, frame.type(), binary, payload))) {
+            // 丢掉的帧可能带 seq，由 SessionOutbox 淘汰本会话，客户端重连后 resume 补齐
+            throw new IOException("cluster link to " + originNode + " dropped a frame");
+        }
+    }
+
+    /**
+     * 不经过 SessionOutbox 的消息没有类型信息，客户端所在节点按可靠通道写出。
+     */
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (closed.get()) {
+            throw new IOException("session closed");
+        }
+        // ping 由客户端所在节点负责，这里只转发数据帧
+        if (message instanceof TextMessage text) {
+            bus.send(originNode, new ClusterMessage.Outbound(originSessionId, null, false, text.asBytes()));
+        } else if (message instanceof BinaryMessage binary) {
+            bus.send(originNode, new ClusterMessage.Outbound(originSessionId, null, true, ClusterRelay.bytes(binary)));
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    @Override
+    public void close() {
+        close(CloseStatus.NORMAL);
+    }
+
+    @Override
+    public void close(CloseStatus status) {
+        if (markClosed()) {
+            bus.send(originNode, new ClusterMessage.Evict(originSessionId, status.getCode(), status.getReason()));
+            relay.relayedClosed(this, status);
+        }
+    }
+}
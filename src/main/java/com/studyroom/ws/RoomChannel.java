@@ -0,0 +1,475 @@
+package com.studyroom.ws;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 单个房间的实时状态。所有读写都在该对象的监视器内完成，
+ * 因此不同房间之间互不阻塞；房间清空后标记为 retired 并从索引中移除，
+ * 之后再进入的会话会创建新的 RoomChannel。
+ * <p>
+ * 成员变化以增量事件（memberJoined / memberLeft / statusChanged）下发，每次变化 version 加一，
+ * 且在锁内入队，所以每个会话看到的 version 严格递增；完整快照只在加入或客户端发现断档时单独发送。
+ * 增量不是立即发送，而是在 coalesce 窗口内合并，整点集中进房时只会产生少量广播。
+ * 成员另外按名字维护一个有序索引，随每次变化增量更新；完整快照由索引拷贝得到并缓存到下一次变化，不需要排序。
+ * <p>
+ * 可靠通道上的房间事件（聊天）在锁内分配连续的 seq，并保留最近若干条已编码的帧。
+ * 各通道之间不保证顺序，所以 seq 只覆盖可靠通道：成员增量有自己的 version，
+ * roomTimer / roomOccupancy 只需要最新一条，都不带 seq，也不进补发缓冲。
+ * 客户端断线重连后带着 epoch、lastSeq 和成员 version 发 resume，缺口仍在缓冲内就只补发这些帧，
+ * 随后总是重发当前的番茄钟和人数，成员 version 落后时再补一份完整快照；
+ * 连接断开后成员会保留一段宽限期，期间 resume 回来不会产生任何成员变化广播。
+ * <p>
+ * 房间共享番茄钟（{@link RoomFocusTimer}）属于整个逻辑房间，由 {@link RoomShards} 计时并把每次阶段切换推给所有分片；
+ * 分片广播 roomTimer 事件，进入专注阶段时所有成员状态置为 focusing，暂停/休息/结束时置回 idle，合并成一次成员增量。
+ * <p>
+ * 人数较多的房间会被 {@link RoomShards} 拆成多个分片，每个分片就是一个 RoomChannel，
+ * 成员、seq、补发缓冲都只在分片内有效；聊天由 {@link RoomShards#publishToAll} 发给每个分片，各自分配 seq，
+ * 其余跨分片的只有番茄钟和 roomOccupancy 总人数。
+ */
+final class RoomChannel {
+
+    private static final Comparator<RoomRealtimeService.RoomMember> MEMBER_ORDER = Comparator
+            .comparing((RoomRealtimeService.RoomMember m) -> m.name() == null ? "" : m.name())
+            .thenComparing(RoomRealtimeService.RoomMember::id);
+
+    final Long roomId;
+    private final RoomEventEncoder encoder;
+    private final RealtimeScheduler scheduler;
+    private final long coalesceWindowMillis;
+    /** 成员增减后通知所属 RoomShards 汇总人数，在锁内调用，只能做调度 */
+    private final Runnable occupancyListener;
+    /** 整个逻辑房间共享的人数计数，在锁内随成员变化更新 */
+    private final RoomCounters counters;
+    /** 房间本次生命周期的标识，限制在 2^53 内以便 JS 端按数字处理 */
+    final long epoch = ThreadLocalRandom.current().nextLong(1, 1L << 53);
+
+    // guarded by this
+    private final Map<String, MemberState> members = new HashMap<>();
+    /** 按 MEMBER_ORDER 排序的成员视图 */
+    private final List<RoomRealtimeService.RoomMember> sortedMembers = new ArrayList<>();
+    private final Set<SessionOutbox> sessions = new LinkedHashSet<>();
+    private boolean retired;
+    private long version;
+    private long flushedVersion;
+    private final Map<String, PendingPresence> pendingPresence = new LinkedHashMap<>();
+    private boolean flushScheduled;
+    /** 可靠通道事件的序号 */
+    private long seq;
+    private final OutboundFrame[] replay;
+    /** 房间番茄钟的最新状态，由 RoomShards 推送，创建分片时即有初始值 */
+    private WsPayloads.RoomTimer timer;
+    /** 当前 version 的成员快照，成员变化时置空，下次读取时重建 */
+    private volatile RoomRealtimeService.RoomMembersSnapshot cachedSnapshot;
+    /** 最近一次跨分片人数汇总，只有一个分片时为 null */
+    private WsPayloads.RoomOccupancy occupancy;
+
+    private long droppedMessages;
+    private long evictedSessions;
+
+    RoomChannel(Long roomId, RoomEventEncoder encoder, RealtimeScheduler scheduler,
+                long coalesceWindowMillis, int replayCapacity, RoomCounters counters, Runnable occupancyListener) {
+        this.roomId = roomId;
+        this.encoder = encoder;
+        this.scheduler = scheduler;
+        this.coalesceWindowMillis = coalesceWindowMillis;
+        this.counters = counters;
+        this.occupancyListener = occupancyListener;
+        this.replay = new OutboundFrame[Math.max(0, replayCapacity)];
+    }
+
+    static final class MemberState {
+        final String userId;
+        String name;
+        String status; // focusing / idle
+        int connections;
+        /** 最后一个连接断开后保留到的时刻（nanoTime），仅在 connections == 0 时有意义 */
+        long lingerUntil;
+        /** 当前名字/状态对应的不可变视图，同时是它在 sortedMembers 中的位置键 */
+        RoomRealtimeService.RoomMember view;
+
+        MemberState(String userId, String name) {
+            this.userId = userId;
+            this.name = name;
+            this.status = "idle";
+            this.connections = 0;
+        }
+    }
+
+    private record PendingPresence(boolean present, String name, String status) {}
+
+    /**
+     * @return false 表示该房间已被回收，调用方需要重新获取 RoomChannel
+     */
+    synchronized boolean attach(SessionOutbox session, String userId, String name) {
+        if (retired) {
+            return false;
+        }
+        MemberState ms = members.get(userId);
+        boolean changed = ms == null || !Objects.equals(ms.name, name);
+        if (changed) {
+            markPending(userId, ms);
+        }
+        if (ms == null) {
+            ms = new MemberState(userId, name);
+            if (timerFocusing()) {
+                ms.status = "focusing";
+            }
+            members.put(userId, ms);
+            counters.memberAdded(ms.status);
+        }
+        if (changed) {
+            reindex(ms, name, ms.status);
+        }
+        ms.connections += 1;
+        sessions.add(session);
+        if (changed) {
+            version++;
+            schedulePresenceFlush();
+        }
+        return true;
+    }
+
+    /**
+     * 在 attach 的同时尝试续上断线前的事件流：epoch 一致且 lastSeq 之后的事件都还在缓冲里时，
+     * 入队 resumed 回执并按顺序补发缺失的帧，再补上断线期间可能错过的状态，返回 true；
+     * 否则只完成 attach，返回 false，由调用方走完整同步。
+     *
+     * @param version 客户端当前的成员 version，null 表示未知
+     * @return null 表示该房间已被回收，调用方需要重新获取 RoomChannel
+     */
+    synchronized Boolean resume(SessionOutbox session, String userId, String name, Long epoch, Long lastSeq,
+                                Long version) {
+        if (!attach(session, userId, name)) {
+            return null;
+        }
+        if (epoch == null || epoch != this.epoch || lastSeq == null
+                || lastSeq < 0 || lastSeq > seq || seq - lastSeq > replay.length) {
+            return false;
+        }
+        session.offer(encoder.encode("resumed", new WsPayloads.Resumed(roomId,
+                new RoomRealtimeService.WsUser(userId, name), this.epoch, lastSeq, seq)));
+        for (long s = lastSeq + 1; s <= seq; s++) {
+            session.offer(replay[(int) (s % replay.length)]);
+        }
+        // 断线时还排在旧连接状态/增量通道里的帧已经丢了，而它们不在 seq 里，这里按当前状态补齐
+        if (version == null || version < flushedVersion) {
+            sendSnapshot(session);
+        } else {
+            if (timer != null) {
+                session.offer(encoder.encode("roomTimer", timer.at(System.currentTimeMillis())));
+            }
+            session.offer(encoder.encode("roomOccupancy", occupancy != null ? occupancy
+                    : new WsPayloads.RoomOccupancy(roomId, counters.online(), 1)));
+        }
+        return true;
+    }
+
+    /**
+     * @param graceMillis 成员最后一个连接断开后保留的时间，0 表示立即移除；
+     *                    大于 0 时调用方需要在到期后调用 {@link #expireLinger(String)}
+     * @return true 表示房间已清空并被回收
+     */
+    synchronized boolean detach(SessionOutbox session, String userId, long graceMillis) {
+        sessions.remove(session);
+        MemberState ms = members.get(userId);
+        if (ms != null) {
+            ms.connections = Math.max(0, ms.connections - 1);
+            if (ms.connections <= 0) {
+                if (graceMillis > 0) {
+                    ms.lingerUntil = System.nanoTime() + graceMillis * 1_000_000L;
+                } else {
+                    removeMember(ms);
+                }
+            }
+        }
+        return retireIfEmpty();
+    }
+
+    /**
+     * 宽限期到期：成员仍没有连接就正式移除。期间重新断开过的成员以最新的到期时间为准。
+     *
+     * @return true 表示房间已清空并被回收
+     */
+    synchronized boolean expireLinger(String userId) {
+        if (retired) {
+            return false;
+        }
+        MemberState ms = members.get(userId);
+        if (ms != null && ms.connections <= 0 && System.nanoTime() - ms.lingerUntil >= 0) {
+            removeMember(ms);
+        }
+        return retireIfEmpty();
+    }
+
+    private void removeMember(MemberState ms) {
+        markPending(ms.userId, ms);
+        members.remove(ms.userId);
+        counters.memberRemoved(ms.status);
+        sortedMembers.remove(Collections.binarySearch(sortedMembers, ms.view, MEMBER_ORDER));
+        cachedSnapshot = null;
+        version++;
+        schedulePresenceFlush();
+    }
+
+    private boolean retireIfEmpty() {
+        if (sessions.isEmpty() && members.isEmpty()) {
+            retired = true;
+            pendingPresence.clear();
+        }
+        return retired;
+    }
+
+    synchronized boolean hasMember(String userId) {
+        return members.containsKey(userId);
+    }
+
+    synchronized int sessionCount() {
+        return sessions.size();
+    }
+
+    synchronized void updateStatus(String userId, String status) {
+        MemberState ms = members.get(userId);
+        if (ms == null || ms.status.equals(status)) {
+            return;
+        }
+        markPending(userId, ms);
+        reindex(ms, ms.name, status);
+        version++;
+        schedulePresenceFlush();
+    }
+
+    /**
+     * 只给一个会话发送当前完整快照（加入时或客户端报告 version 断档时）。
+     * 快照包含尚未 flush 的变化，客户端随后收到的增量按幂等方式应用即可。
+     */
+    synchronized void sendSnapshot(SessionOutbox session) {
+        session.offer(encoder.encode("roomMembersUpdate", seq, snapshot().toPayload(epoch)));
+        if (timer != null && !RoomFocusTimer.IDLE.equals(timer.phase())) {
+            session.offer(encoder.encode("roomTimer", timer.at(System.currentTimeMillis())));
+        }
+        if (occupancy != null) {
+            session.offer(encoder.encode("roomOccupancy", occupancy));
+        }
+    }
+
+    /**
+     * 广播整个逻辑房间的人数汇总，并记下来供之后的快照使用。
+     */
+    synchronized void publishOccupancy(WsPayloads.RoomOccupancy occupancy) {
+        if (retired) {
+            return;
+        }
+        publish("roomOccupancy", occupancy);
+        this.occupancy = occupancy.shards() > 1 ? occupancy : null;
+    }
+
+    /**
+     * 房间番茄钟发生了阶段切换（或新分片取得当前状态）：广播 roomTimer，并把所有成员状态置为 memberStatus。
+     */
+    synchronized void timerChanged(WsPayloads.RoomTimer timer, String memberStatus) {
+        if (retired) {
+            return;
+        }
+        this.timer = timer;
+        publish("roomTimer", timer);
+        boolean changed = false;
+        for (MemberState ms : members.values()) {
+            if (!ms.status.equals(memberStatus)) {
+                markPending(ms.userId, ms);
+                reindex(ms, ms.name, memberStatus);
+                version++;
+                changed = true;
+            }
+        }
+        if (changed) {
+            schedulePresenceFlush();
+        }
+    }
+
+    private boolean timerFocusing() {
+        return timer != null && RoomFocusTimer.FOCUS.equals(timer.phase()) && !timer.paused();
+    }
+
+    /**
+     * 修改成员的名字/状态，同步维护有序索引并作废缓存的快照。名字不变时排序位置不变，原位替换。
+     */
+    private void reindex(MemberState ms, String name, String status) {
+        if (ms.view != null) {
+            counters.statusChanged(ms.status, status);
+        }
+        if (ms.view != null && Objects.equals(ms.name, name)) {
+            int i = Collections.binarySearch(sortedMembers, ms.view, MEMBER_ORDER);
+            ms.status = status;
+            ms.view = toMember(ms);
+            sortedMembers.set(i, ms.view);
+        } else {
+            if (ms.view != null) {
+                sortedMembers.remove(Collections.binarySearch(sortedMembers, ms.view, MEMBER_ORDER));
+            }
+            ms.name = name;
+            ms.status = status;
+            ms.view = toMember(ms);
+            int i = Collections.binarySearch(sortedMembers, ms.view, MEMBER_ORDER);
+            sortedMembers.add(-i - 1, ms.view);
+        }
+        cachedSnapshot = null;
+    }
+
+    /**
+     * 记录某成员在本窗口开始前的状态，flush 时与当前状态比较得出净变化。
+     */
+    private void markPending(String userId, MemberState before) {
+        pendingPresence.computeIfAbsent(userId, uid -> before == null
+                ? new PendingPresence(false, null, null)
+                : new PendingPresence(true, before.name, before.status));
+    }
+
+    private void schedulePresenceFlush() {
+        if (coalesceWindowMillis <= 0) {
+            flushPresence();
+            return;
+        }
+        if (!flushScheduled) {
+            flushScheduled = true;
+            scheduler.schedule(this::flushPresence, coalesceWindowMillis);
+        }
+    }
+
+    /**
+     * 把窗口内累积的成员变化合并成一条消息发出。只有一次变化时仍发单条增量，
+     * 多次变化发 presenceBatch，携带 [fromVersion, version] 区间；同一成员先进后出这类抵消掉的变化不会下发。
+     * 整个窗口都抵消掉时 flushedVersion 不动，下一条增量的区间从上次发出的位置接着算，客户端看到的版本仍然连续，
+     * 不会因为跳号去请求快照。
+     */
+    synchronized void flushPresence() {
+        flushScheduled = false;
+        if (pendingPresence.isEmpty()) {
+            return;
+        }
+        long fromVersion = flushedVersion + 1;
+
+        List<WsPayloads.PresenceEvent> events = new ArrayList<>(pendingPresence.size());
+        boolean membershipChanged = false;
+        for (Map.Entry<String, PendingPresence> e : pendingPresence.entrySet()) {
+            PendingPresence before = e.getValue();
+            MemberState now = members.get(e.getKey());
+            if (now != null && (!before.present() || !Objects.equals(before.name(), now.name))) {
+                events.add(WsPayloads.PresenceEvent.joined(now.view));
+                membershipChanged |= !before.present();
+            } else if (now != null && !Objects.equals(before.status(), now.status)) {
+                events.add(WsPayloads.PresenceEvent.statusChanged(now.userId, now.status));
+            } else if (now == null && before.present()) {
+                events.add(WsPayloads.PresenceEvent.left(e.getKey()));
+                membershipChanged = true;
+            }
+        }
+        pendingPresence.clear();
+        if (events.isEmpty()) {
+            return;
+        }
+        flushedVersion = version;
+        if (membershipChanged) {
+            occupancyListener.run();
+        }
+
+        int count = members.size();
+        if (events.size() == 1 && fromVersion == version) {
+            WsPayloads.PresenceEvent event = events.get(0);
+            Object payload = switch (event.type()) {
+                case "memberJoined" -> new WsPayloads.MemberJoined(roomId, version, event.member(), count);
+                case "memberLeft" -> new WsPayloads.MemberLeft(roomId, version, event.id(), count);
+                default -> new WsPayloads.StatusChanged(roomId, version, event.id(), event.status(), count);
+            };
+            publish(event.type(), payload);
+        } else {
+            publish("presenceBatch", new WsPayloads.PresenceBatch(roomId, fromVersion, version, count, events));
+        }
+    }
+
+    /**
+     * 编码一次并发给房间内所有会话。可靠通道的事件先分配下一个 seq 并记入补发缓冲，
+     * 其余通道的帧可能被合并或越过，不占用 seq。
+     *
+     * @return 已经关闭的会话，由调用方在锁外执行 leave
+     */
+    synchronized List<WebSocketSession> publish(String type, Object payload) {
+        if (OutboundLane.of(type) != OutboundLane.RELIABLE) {
+            return send(encoder.encode(type, payload));
+        }
+        OutboundFrame frame = encoder.encode(type, ++seq, payload);
+        if (replay.length > 0) {
+            replay[(int) (seq % replay.length)] = frame;
+        }
+        return send(frame);
+    }
+
+    /**
+     * 在房间锁内把消息放进各会话的发送队列，只入队不写 socket，
+     * 锁内顺序即每个会话收到消息的顺序。
+     *
+     * @return 已经关闭的会话，由调用方在锁外执行 leave
+     */
+    private List<WebSocketSession> send(OutboundFrame frame) {
+        List<WebSocketSession> closed = new ArrayList<>();
+        for (SessionOutbox s : sessions) {
+            switch (s.offer(frame)) {
+                case QUEUED -> { }
+                case DROPPED -> droppedMessages++;
+                case EVICTED -> {
+                    droppedMessages++;
+                    evictedSessions++;
+                }
+                case CLOSED -> closed.add(s.session());
+            }
+        }
+        return closed;
+    }
+
+    synchronized RoomRealtimeService.RoomTrafficStats trafficStats() {
+        int queued = 0;
+        int maxDepth = 0;
+        long bytes = 0;
+        for (SessionOutbox s : sessions) {
+            int depth = s.depth();
+            queued += depth;
+            maxDepth = Math.max(maxDepth, depth);
+            bytes += s.bufferedBytes();
+        }
+        return new RoomRealtimeService.RoomTrafficStats(roomId, 1, sessions.size(), queued, bytes, maxDepth,
+                droppedMessages, evictedSessions);
+    }
+
+    /**
+     * 当前成员快照（不可变，按名字排序）。没有变化时直接返回缓存，不加锁；
+     * 调用方可以比较 version 跳过没有变化的快照。
+     */
+    RoomRealtimeService.RoomMembersSnapshot snapshot() {
+        RoomRealtimeService.RoomMembersSnapshot snapshot = cachedSnapshot;
+        return snapshot != null ? snapshot : rebuildSnapshot();
+    }
+
+    private synchronized RoomRealtimeService.RoomMembersSnapshot rebuildSnapshot() {
+        RoomRealtimeService.RoomMembersSnapshot snapshot = cachedSnapshot;
+        if (snapshot == null) {
+            snapshot = new RoomRealtimeService.RoomMembersSnapshot(roomId, version, List.copyOf(sortedMembers));
+            cachedSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    private static RoomRealtimeService.RoomMember toMember(MemberState m) {
+        return new RoomRealtimeService.RoomMember(m.userId, m.name, m.status);
+    }
+}
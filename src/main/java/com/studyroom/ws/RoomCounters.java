@@ -0,0 +1,45 @@
+package com.studyroom.ws;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一个逻辑房间（所有分片合计）的在线人数和专注人数。
+ * 由各分片在自己的锁内随成员变化增减，读取不加锁，供房间列表等只需要数字的地方使用。
+ */
+final class RoomCounters {
+
+    private final AtomicInteger online = new AtomicInteger();
+    private final AtomicInteger focusing = new AtomicInteger();
+
+    void memberAdded(String status) {
+        online.incrementAndGet();
+        if (isFocusing(status)) {
+            focusing.incrementAndGet();
+        }
+    }
+
+    void memberRemoved(String status) {
+        online.decrementAndGet();
+        if (isFocusing(status)) {
+            focusing.decrementAndGet();
+        }
+    }
+
+    void statusChanged(String from, String to) {
+        if (isFocusing(from) != isFocusing(to)) {
+            focusing.addAndGet(isFocusing(to) ? 1 : -1);
+        }
+    }
+
+    int online() {
+        return online.get();
+    }
+
+    RoomRealtimeService.RoomCounts snapshot() {
+        return new RoomRealtimeService.RoomCounts(online.get(), focusing.get());
+    }
+
+    private static boolean isFocusing(String status) {
+        return "focusing".equals(status);
+    }
+}
@@ -0,0 +1,87 @@
+package com.studyroom.ws;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.List;
+
+/**
+ * /ws 下行消息的统一编码：{@code {"type": ..., "payload": ...}}。
+ * 每个事件只编码一次，得到的 {@link OutboundFrame} 供所有接收者复用。
+ * <p>
+ * 客户端可以通过 {@code Sec-WebSocket-Protocol} 选择子协议：
+ * {@value #PROTOCOL_JSON}（默认，文本帧）或 {@value #PROTOCOL_CBOR}（二进制帧，结构相同，用 CBOR 编码）。
+ */
+@Component
+public class RoomEventEncoder {
+
+    public static final String PROTOCOL_JSON = "studyroom.v1.json";
+    public static final String PROTOCOL_CBOR = "studyroom.v1.cbor";
+    public static final List<String> PROTOCOLS = List.of(PROTOCOL_CBOR, PROTOCOL_JSON);
+
+    private static final WsPayloads.Envelope ENCODE_FAILED_ENVELOPE =
+            new WsPayloads.Envelope("error", new WsPayloads.Error("json encode failed"));
+
+    private final ObjectMapper objectMapper;
+    private final CBORMapper cborMapper = new CBORMapper();
+    private final OutboundFrame encodeFailed;
+    private final EnumMap<WsPayloads.ErrorCode, OutboundFrame> errorFrames = new EnumMap<>(WsPayloads.ErrorCode.class);
+
+    public RoomEventEncoder(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.encodeFailed = new OutboundFrame("error",
+                "{\"type\":\"error\",\"payload\":{\"message\":\"json encode failed\"}}".getBytes(StandardCharsets.UTF_8),
+                () -> toCbor(ENCODE_FAILED_ENVELOPE));
+        for (WsPayloads.ErrorCode code : WsPayloads.ErrorCode.values()) {
+            OutboundFrame frame = encode("error", new WsPayloads.Error(code.message()));
+            frame.binaryMessage();
+            errorFrames.put(code, frame);
+        }
+    }
+
+    /**
+     * 预编码的错误帧（JSON 与 CBOR 两种形式都已生成）。
+     */
+    public OutboundFrame error(WsPayloads.ErrorCode code) {
+        return errorFrames.get(code);
+    }
+
+    public static boolean isBinary(WebSocketSession session) {
+        return PROTOCOL_CBOR.equals(session.getAcceptedProtocol());
+    }
+
+    public CBORMapper cborMapper() {
+        return cborMapper;
+    }
+
+    public OutboundFrame encode(String type, Object payload) {
+        return encode(type, null, payload);
+    }
+
+    /**
+     * @param seq 房间事件序号，非房间事件传 null（不输出该字段）
+     */
+    public OutboundFrame encode(String type, Long seq, Object payload) {
+        WsPayloads.Envelope envelope = new WsPayloads.Envelope(type, seq, payload);
+        try {
+            return new OutboundFrame(type, objectMapper.writeValueAsBytes(envelope), () -> toCbor(envelope));
+        } catch (JsonProcessingException e) {
+            // fallback
+            return encodeFailed;
+        }
+    }
+
+    private byte[] toCbor(WsPayloads.Envelope envelope) {
+        try {
+            return cborMapper.writeValueAsBytes(envelope);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.studyroom.ws;
+
+/**
+ * 房间共享番茄钟的状态：focus → break → idle，可暂停。
+ * 不做同步，由所属 {@link RoomShards} 的锁保护；到期调度也由 RoomShards 负责。
+ * 对外只下发阶段切换，客户端根据 endsAt 和 serverTime 自行倒计时。
+ */
+final class RoomFocusTimer {
+
+    static final String FOCUS = "focus";
+    static final String BREAK = "break";
+    static final String IDLE = "idle";
+
+    private String phase = IDLE;
+    private boolean paused;
+    private long focusMillis;
+    private long breakMillis;
+    private long phaseMillis;
+    /** 当前阶段结束的墙上时间，暂停或 idle 时为 0 */
+    private long endsAt;
+    /** 暂停时剩余的时间 */
+    private long remainingMillis;
+    private String updatedBy;
+    /** 每次重新调度加一，过期的到期回调据此忽略 */
+    private long generation;
+    private HashedTimingWheel.Timeout timeout;
+
+    boolean isActive() {
+        return !IDLE.equals(phase);
+    }
+
+    boolean isFocusing() {
+        return FOCUS.equals(phase) && !paused;
+    }
+
+    boolean isPaused() {
+        return paused;
+    }
+
+    String phase() {
+        return phase;
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    void start(long focusMillis, long breakMillis, String by, long now) {
+        this.focusMillis = focusMillis;
+        this.breakMillis = breakMillis;
+        enter(FOCUS, focusMillis, by, now);
+    }
+
+    /**
+     * 当前阶段结束，进入下一阶段。
+     */
+    void advance(long now) {
+        if (FOCUS.equals(phase) && breakMillis > 0) {
+            enter(BREAK, breakMillis, null, now);
+        } else {
+            stop(null);
+        }
+    }
+
+    void pause(String by, long now) {
+        remainingMillis = Math.max(0, endsAt - now);
+        endsAt = 0;
+        paused = true;
+        updatedBy = by;
+        cancel();
+    }
+
+    void resume(String by, long now) {
+        paused = false;
+        endsAt = now + remainingMillis;
+        updatedBy = by;
+        generation++;
+    }
+
+    void stop(String by) {
+        phase = IDLE;
+        paused = false;
+        phaseMillis = 0;
+        endsAt = 0;
+        remainingMillis = 0;
+        updatedBy = by;
+        cancel();
+    }
+
+    /**
+     * @return 当前阶段剩余时间
+     */
+    long remaining(long now) {
+        return paused ? remainingMillis : Math.max(0, endsAt - now);
+    }
+
+    void scheduled(HashedTimingWheel.Timeout timeout) {
+        this.timeout = timeout;
+    }
+
+    void cancel() {
+        generation++;
+        if (timeout != null) {
+            timeout.cancel();
+            timeout = null;
+        }
+    }
+
+    private void enter(String phase, long millis, String by, long now) {
+        cancel();
+        this.phase = phase;
+        this.paused = false;
+        this.phaseMillis = millis;
+        this.endsAt = now + millis;
+        this.remainingMillis = 0;
+        this.updatedBy = by;
+    }
+
+    WsPayloads.RoomTimer toPayload(Long roomId, long now) {
+        return new WsPayloads.RoomTimer(roomId, phase, paused, phaseMillis, endsAt, remaining(now),
+                focusMillis, breakMillis, updatedBy, now);
+    }
+}
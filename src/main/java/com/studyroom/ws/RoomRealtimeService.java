@@ -1,43 +1,149 @@
 package com.studyroom.ws;
 
 import org.springframework.stereotype.Service;
-import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.WebSocketSession;
 
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * 房间在线状态。没有全局锁：每个房间分片由各自的 {@link RoomChannel} 串行化，
+ * 分片的分配由 {@link RoomShards} 负责（单分片连接数上限见 {@code capacity.max-sessions-per-shard}），
+ * 会话到房间的映射放在 {@code sessionStateBySessionId} 里，用 remove 的原子性保证同一会话只离开一次。
+ * 所有下行消息都经过会话自己的 {@link SessionOutbox}，调用方不会被慢连接阻塞。
+ * <p>
+ * 主动 leave 立即移除成员；连接断开则保留一个宽限期，客户端在期间 resume 即可无感续上。
+ * 心跳超时的会话视为已经死掉，直接 leave 后关闭，不再保留宽限期。
+ */
 @Service
 public class RoomRealtimeService {
 
-    private final ConcurrentHashMap<Long, ConcurrentHashMap<String, MemberState>> membersByRoom = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<Long, java.util.Set<WebSocketSession>> sessionsByRoom = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, RoomShards> roomsById = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, SessionState> sessionStateBySessionId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, SessionOutbox> outboxBySessionId = new ConcurrentHashMap<>();
+
+    private final OutboundWriterPool writerPool;
+    private final RoomEventEncoder encoder;
+    private final RealtimeScheduler scheduler;
+    private final SessionHeartbeat heartbeat;
+    private final HashedTimingWheel timingWheel;
+    private final long coalesceWindowMillis;
+    private final int replayCapacity;
+    private final long gracePeriodMillis;
+    private final int shardCapacity;
+
+    public RoomRealtimeService(OutboundWriterPool writerPool, RoomEventEncoder encoder,
+                               RealtimeScheduler scheduler, SessionHeartbeat heartbeat,
+                               HashedTimingWheel timingWheel, RealtimeProperties properties) {
+        this.writerPool = writerPool;
+        this.encoder = encoder;
+        this.scheduler = scheduler;
+        this.heartbeat = heartbeat;
+        this.timingWheel = timingWheel;
+        this.coalesceWindowMillis = properties.getPresence().getCoalesceWindow().toMillis();
+        this.replayCapacity = properties.getResume().getBufferSize();
+        this.gracePeriodMillis = properties.getResume().getGracePeriod().toMillis();
+        this.shardCapacity = properties.getCapacity().getMaxSessionsPerShard();
+    }
 
     public record WsUser(String id, String name) {}
 
-    private static final class MemberState {
-        private final String userId;
-        private volatile String name;
-        private volatile String status; // focusing / idle
-        private volatile int connections;
-
-        private MemberState(String userId, String name) {
-            this.userId = userId;
-            this.name = name;
-            this.status = "idle";
-            this.connections = 0;
+    /**
+     * @param resumed false 表示无法补发（房间已重建或缺口超出缓冲），需要按新加入处理
+     */
+    public record ResumeResult(WsUser user, boolean resumed) {}
+
+    private record SessionState(Long roomId, String userId, String name, SessionOutbox outbox, RoomShards room,
+                                RoomChannel channel) {}
+
+    public void open(WebSocketSession session) {
+        heartbeat.watch(outbox(session), this::reap);
+    }
+
+    /**
+     * 记录客户端活动（任何上行帧或 pong），供心跳判断存活。
+     */
+    public void touch(WebSocketSession session) {
+        SessionOutbox outbox = outboxBySessionId.get(session.getId());
+        if (outbox != null) {
+            outbox.touch();
         }
     }
 
-    private record SessionState(Long roomId, String userId, String name) {}
+    private void reap(SessionOutbox outbox) {
+        leave(outbox.session());
+        outbox.evict(CloseStatus.SESSION_NOT_RELIABLE.withReason("heartbeat timeout"));
+    }
 
-    public synchronized WsUser join(WebSocketSession session, Long roomId, WsUser user) {
+    /**
+     * 连接已断开：成员保留宽限期，等待同一用户 resume。
+     */
+    public void close(WebSocketSession session) {
+        leave(session, gracePeriodMillis);
+        outboxBySessionId.remove(session.getId());
+    }
+
+    /**
+     * 经写线程关闭会话，之后走正常的 afterConnectionClosed 流程。
+     */
+    public void disconnect(WebSocketSession session, CloseStatus status) {
+        outbox(session).evict(status);
+    }
+
+    private SessionOutbox outbox(WebSocketSession session) {
+        return outboxBySessionId.computeIfAbsent(session.getId(), id -> writerPool.open(session));
+    }
+
+    public void sendTo(WebSocketSession session, OutboundFrame frame) {
+        outbox(session).offer(frame);
+    }
+
+    public WsUser join(WebSocketSession session, Long roomId, WsUser user) {
+        WsUser effective = prepareJoin(session, roomId, user);
+        SessionOutbox outbox = outbox(session);
+
+        // 房间可能恰好在并发 leave 中被回收，此时重新取一个新的 RoomShards
+        RoomShards room;
+        RoomChannel channel;
+        while ((channel = (room = roomsById.computeIfAbsent(roomId, this::newRoom))
+                .admit(outbox, effective.id(), effective.name())) == null) {
+            Thread.onSpinWait();
+        }
+
+        sessionStateBySessionId.put(session.getId(),
+                new SessionState(roomId, effective.id(), effective.name(), outbox, room, channel));
+        return effective;
+    }
+
+    /**
+     * 断线重连：加入房间并尽量只补发 lastSeq 之后错过的事件，成员 version 落后时另补完整快照。
+     */
+    public ResumeResult resume(WebSocketSession session, Long roomId, WsUser user, Long epoch, Long lastSeq,
+                               Long version) {
+        WsUser effective = prepareJoin(session, roomId, user);
+        SessionOutbox outbox = outbox(session);
+
+        RoomShards room;
+        RoomShards.Admission admission;
+        while ((admission = (room = roomsById.computeIfAbsent(roomId, this::newRoom))
+                .resume(outbox, effective.id(), effective.name(), epoch, lastSeq, version)) == null) {
+            Thread.onSpinWait();
+        }
+
+        sessionStateBySessionId.put(session.getId(),
+                new SessionState(roomId, effective.id(), effective.name(), outbox, room, admission.channel()));
+        return new ResumeResult(effective, admission.resumed());
+    }
+
+    /**
+     * 校验参数、离开之前的房间，并补全 userId / name。
+     */
+    private WsUser prepareJoin(WebSocketSession session, Long roomId, WsUser user) {
         if (roomId == null) {
             throw new IllegalArgumentException("roomId is required");
         }
@@ -52,71 +158,95 @@ public class RoomRealtimeService {
                 ? "匿名"
                 : user.name();
 
-        sessionStateBySessionId.put(session.getId(), new SessionState(roomId, userId, name));
+        return new WsUser(userId, name);
+    }
 
-        sessionsByRoom.computeIfAbsent(roomId, k -> ConcurrentHashMap.newKeySet()).add(session);
-        ConcurrentHashMap<String, MemberState> memberMap = membersByRoom.computeIfAbsent(roomId, k -> new ConcurrentHashMap<>());
-        MemberState ms = memberMap.computeIfAbsent(userId, uid -> new MemberState(uid, name));
-        ms.name = name;
-        ms.connections += 1;
+    private RoomShards newRoom(Long roomId) {
+        return new RoomShards(roomId, shardCapacity, scheduler, timingWheel, coalesceWindowMillis,
+                (counters, occupancyListener) -> new RoomChannel(roomId, encoder, scheduler,
+                        coalesceWindowMillis, replayCapacity, counters, occupancyListener));
+    }
 
-        return new WsUser(userId, name);
+    public void leave(WebSocketSession session) {
+        leave(session, 0);
     }
 
-    public synchronized void leave(WebSocketSession session) {
+    private void leave(WebSocketSession session, long graceMillis) {
         SessionState ss = sessionStateBySessionId.remove(session.getId());
         if (ss == null) {
             return;
         }
 
-        Long roomId = ss.roomId();
-        String userId = ss.userId();
-
-        java.util.Set<WebSocketSession> sessions = sessionsByRoom.get(roomId);
-        if (sessions != null) {
-            sessions.remove(session);
-            if (sessions.isEmpty()) {
-                sessionsByRoom.remove(roomId);
-            }
+        RoomChannel channel = ss.channel();
+        if (channel.detach(ss.outbox(), ss.userId(), graceMillis)) {
+            retire(ss.roomId(), channel);
+        } else if (graceMillis > 0) {
+            scheduler.schedule(() -> {
+                if (channel.expireLinger(ss.userId())) {
+                    retire(ss.roomId(), channel);
+                }
+            }, graceMillis);
         }
+    }
 
-        ConcurrentHashMap<String, MemberState> memberMap = membersByRoom.get(roomId);
-        if (memberMap != null) {
-            MemberState ms = memberMap.get(userId);
-            if (ms != null) {
-                ms.connections = Math.max(0, ms.connections - 1);
-                if (ms.connections <= 0) {
-                    memberMap.remove(userId);
-                }
-            }
-            if (memberMap.isEmpty()) {
-                membersByRoom.remove(roomId);
-            }
+    /**
+     * 摘掉已清空的分片，整个房间都空了就从索引中移除。
+     */
+    private void retire(Long roomId, RoomChannel channel) {
+        RoomShards room = roomsById.get(roomId);
+        if (room != null && room.retire(channel)) {
+            roomsById.remove(roomId, room);
         }
     }
 
-    public synchronized Long getJoinedRoomId(WebSocketSession session) {
+    public Long getJoinedRoomId(WebSocketSession session) {
         SessionState ss = sessionStateBySessionId.get(session.getId());
         return ss == null ? null : ss.roomId();
     }
 
-    public synchronized WsUser getJoinedUser(WebSocketSession session) {
+    public WsUser getJoinedUser(WebSocketSession session) {
         SessionState ss = sessionStateBySessionId.get(session.getId());
         if (ss == null) return null;
         return new WsUser(ss.userId(), ss.name());
     }
 
-    public synchronized void updateStatus(WebSocketSession session, String status) {
+    public void updateStatus(WebSocketSession session, String status) {
+        SessionState ss = sessionStateBySessionId.get(session.getId());
+        if (ss == null) {
+            throw new IllegalStateException("not joined");
+        }
+        ss.channel().updateStatus(ss.userId(), normalizeStatus(status));
+    }
+
+    /**
+     * 给已加入的会话补发一次完整成员快照。
+     */
+    public void sendSnapshot(WebSocketSession session) {
         SessionState ss = sessionStateBySessionId.get(session.getId());
         if (ss == null) {
             throw new IllegalStateException("not joined");
         }
-        String normalized = normalizeStatus(status);
-        ConcurrentHashMap<String, MemberState> memberMap = membersByRoom.get(ss.roomId());
-        if (memberMap == null) return;
-        MemberState ms = memberMap.get(ss.userId());
-        if (ms == null) return;
-        ms.status = normalized;
+        ss.channel().sendSnapshot(ss.outbox());
+    }
+
+    /**
+     * 控制所在房间的共享番茄钟，变化推送到房间的所有分片。
+     *
+     * @return false 表示 action 无法识别，或在当前状态下不适用（暂停没有运行的番茄钟、继续没有暂停的番茄钟、停止已经停下的番茄钟）
+     */
+    public boolean controlRoomTimer(WebSocketSession session, String action, long focusMillis, long breakMillis) {
+        SessionState ss = sessionStateBySessionId.get(session.getId());
+        if (ss == null) {
+            throw new IllegalStateException("not joined");
+        }
+        RoomShards room = ss.room();
+        return switch (action == null ? "" : action) {
+            case "start" -> room.startTimer(ss.userId(), focusMillis, breakMillis);
+            case "pause" -> room.pauseTimer(ss.userId());
+            case "resume" -> room.resumeTimer(ss.userId());
+            case "stop" -> room.stopTimer(ss.userId());
+            default -> false;
+        };
     }
 
     private static String normalizeStatus(String status) {
@@ -125,58 +255,81 @@ public class RoomRealtimeService {
         return s.equals("focusing") ? "focusing" : "idle";
     }
 
-    public synchronized void broadcastToRoom(Long roomId, String json) {
-        java.util.Set<WebSocketSession> sessions = sessionsByRoom.get(roomId);
-        if (sessions == null || sessions.isEmpty()) return;
+    /**
+     * 向发送者所在房间的所有分片广播一条带 seq 的事件，每个分片编码一次并各自分配 seq。
+     */
+    public void broadcastToRoom(WebSocketSession sender, String type, Object payload) {
+        SessionState ss = sessionStateBySessionId.get(sender.getId());
+        if (ss == null) return;
 
-        List<WebSocketSession> closed = new ArrayList<>();
-        for (WebSocketSession s : sessions) {
-            if (s == null || !s.isOpen()) {
-                closed.add(s);
-                continue;
-            }
-            try {
-                s.sendMessage(new TextMessage(json));
-            } catch (IOException e) {
-                closed.add(s);
-            }
-        }
-        // cleanup
+        List<WebSocketSession> closed = ss.room().publishToAll(type, payload);
+        // cleanup：连接已断开，和 afterConnectionClosed 一样保留宽限期
         for (WebSocketSession s : closed) {
             if (s != null) {
-                leave(s);
+                leave(s, gracePeriodMillis);
             }
         }
     }
 
-    public synchronized RoomMembersSnapshot snapshotMembers(Long roomId) {
-        ConcurrentHashMap<String, MemberState> memberMap = membersByRoom.get(roomId);
-        if (memberMap == null) {
-            return new RoomMembersSnapshot(roomId, List.of());
+    /**
+     * 批量读取房间人数（所有分片合计），每个房间只读两个计数，不涉及成员列表也不加锁。
+     * 没有人的房间不在结果里。
+     */
+    public Map<Long, RoomCounts> roomCounts(Collection<Long> roomIds) {
+        Map<Long, RoomCounts> counts = new HashMap<>();
+        for (Long roomId : roomIds) {
+            RoomShards room = roomsById.get(roomId);
+            if (room != null) {
+                counts.put(roomId, room.counters().snapshot());
+            }
         }
+        return counts;
+    }
 
-        List<RoomMember> members = memberMap.values().stream()
-                .filter(m -> m.connections > 0)
-                .sorted(Comparator.comparing((MemberState m) -> m.name == null ? "" : m.name))
-                .map(m -> new RoomMember(m.userId, m.name, m.status))
-                .toList();
+    /**
+     * @param online   在线成员数（含断线宽限期内的成员）
+     * @param focusing 其中处于专注状态的人数
+     */
+    public record RoomCounts(int online, int focusing) {
+        public static final RoomCounts EMPTY = new RoomCounts(0, 0);
+    }
 
-        return new RoomMembersSnapshot(roomId, members);
+    public RoomTrafficStats trafficStats(Long roomId) {
+        RoomShards room = roomsById.get(roomId);
+        RoomChannel[] shards = room == null ? new RoomChannel[0] : room.shards();
+        int sessions = 0;
+        int queued = 0;
+        long bytes = 0;
+        int maxDepth = 0;
+        long dropped = 0;
+        long evicted = 0;
+        for (RoomChannel channel : shards) {
+            RoomTrafficStats s = channel.trafficStats();
+            sessions += s.sessions();
+            queued += s.queuedMessages();
+            bytes += s.queuedBytes();
+            maxDepth = Math.max(maxDepth, s.maxQueueDepth());
+            dropped += s.droppedMessages();
+            evicted += s.evictedSessions();
+        }
+        return new RoomTrafficStats(roomId, shards.length, sessions, queued, bytes, maxDepth, dropped, evicted);
     }
 
+    /**
+     * 房间下行队列的即时统计（所有分片合计）；丢弃/淘汰计数在分片存活期间累计。
+     */
+    public record RoomTrafficStats(Long roomId, int shards, int sessions, int queuedMessages, long queuedBytes,
+                                   int maxQueueDepth, long droppedMessages, long evictedSessions) {}
+
     public record RoomMember(String id, String name, String status) {}
 
-    public record RoomMembersSnapshot(Long roomId, List<RoomMember> members) {
+    public record RoomMembersSnapshot(Long roomId, long version, List<RoomMember> members) {
         public int count() {
             return members == null ? 0 : members.size();
         }
 
-        public Map<String, Object> toPayload() {
-            return Map.of(
-                    "roomId", roomId,
-                    "members", members == null ? List.of() : members,
-                    "count", count()
-            );
+        public WsPayloads.MembersUpdate toPayload(long epoch) {
+            return new WsPayloads.MembersUpdate(roomId, epoch, version, members == null ? List.of() : members, count());
         }
     }
 }
@@ -0,0 +1,305 @@
+package com.studyroom.ws;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+
+/**
+ * 一个逻辑房间的所有分片。每个分片是一个独立的 {@link RoomChannel}，会话数不超过 capacity；
+ * 房间满员后新加入的会话被放进溢出分片，对客户端透明。成员增量只在分片内广播，扇出以 capacity 为上限；
+ * 聊天与聊天历史一样属于整个房间，发给每个分片，由各分片各自分配 seq；跨分片汇总人数，以 roomOccupancy 事件合并下发。
+ * <p>
+ * 房间共享番茄钟属于整个逻辑房间，状态和时间轮上的到期调度都在这里，由本对象的锁保护；
+ * 每次阶段切换推给所有分片各自广播并更新成员状态，新开的分片创建时即取得当前状态。
+ * <p>
+ * 加入（选分片 + attach）在本对象的锁内串行，锁顺序固定为 RoomShards → RoomChannel；
+ * 离开只经过 RoomChannel 的锁，分片清空后再调用 {@link #retire(RoomChannel)} 把它摘掉。
+ * 所有分片都被摘掉后本对象标记为 retired，调用方需要重新创建。
+ */
+final class RoomShards {
+
+    /**
+     * @param resumed 是否已在分片内续上断线前的事件流
+     */
+    record Admission(RoomChannel channel, boolean resumed) {}
+
+    final Long roomId;
+    private final int capacity;
+    private final RealtimeScheduler scheduler;
+    private final HashedTimingWheel timingWheel;
+    private final long coalesceWindowMillis;
+    /** 参数为所有分片共享的计数和分片成员增减时的回调 */
+    private final BiFunction<RoomCounters, Runnable, RoomChannel> channelFactory;
+    private final RoomCounters counters = new RoomCounters();
+
+    /** 写时复制，读分片列表不加锁 */
+    private volatile RoomChannel[] shards = new RoomChannel[0];
+    // guarded by this
+    private boolean retired;
+    private final RoomFocusTimer timer = new RoomFocusTimer();
+
+    private final AtomicBoolean occupancyScheduled = new AtomicBoolean();
+    /** 最近一次下发的汇总，只在调度线程上写 */
+    private volatile WsPayloads.RoomOccupancy published;
+
+    RoomShards(Long roomId, int capacity, RealtimeScheduler scheduler, HashedTimingWheel timingWheel,
+               long coalesceWindowMillis, BiFunction<RoomCounters, Runnable, RoomChannel> channelFactory) {
+        this.roomId = roomId;
+        this.capacity = capacity;
+        this.scheduler = scheduler;
+        this.timingWheel = timingWheel;
+        this.coalesceWindowMillis = coalesceWindowMillis;
+        this.channelFactory = channelFactory;
+    }
+
+    /**
+     * 选一个分片并 attach：同一用户的其他连接（或宽限期内的成员）所在分片优先，
+     * 其次是第一个未满的分片，都满了就新开一个。
+     *
+     * @return null 表示本对象已被回收
+     */
+    synchronized RoomChannel admit(SessionOutbox session, String userId, String name) {
+        if (retired) {
+            return null;
+        }
+        while (true) {
+            RoomChannel target = select(userId);
+            if (target == null) {
+                target = channelFactory.apply(counters, this::occupancyChanged);
+                target.timerChanged(timer.toPayload(roomId, System.currentTimeMillis()), memberStatus());
+                RoomChannel[] current = shards;
+                RoomChannel[] next = Arrays.copyOf(current, current.length + 1);
+                next[current.length] = target;
+                shards = next;
+                occupancyChanged();
+            }
+            if (target.attach(session, userId, name)) {
+                return target;
+            }
+            // 分片刚好在并发 leave 中被回收
+            drop(target);
+        }
+    }
+
+    /**
+     * 断线重连：epoch 对应的分片还在就回到原分片（成员在宽限期内仍占着位置，不受 capacity 限制），
+     * 否则按新加入分配分片。
+     *
+     * @return null 表示本对象已被回收
+     */
+    synchronized Admission resume(SessionOutbox session, String userId, String name, Long epoch, Long lastSeq,
+                             Long version) {
+        if (retired) {
+            return null;
+        }
+        if (epoch != null) {
+            for (RoomChannel channel : shards) {
+                if (channel.epoch != epoch) {
+                    continue;
+                }
+                Boolean resumed = channel.resume(session, userId, name, epoch, lastSeq, version);
+                if (resumed != null) {
+                    return new Admission(channel, resumed);
+                }
+                drop(channel);
+                break;
+            }
+        }
+        return new Admission(admit(session, userId, name), false);
+    }
+
+    private RoomChannel select(String userId) {
+        RoomChannel open = null;
+        for (RoomChannel channel : shards) {
+            if (channel.hasMember(userId)) {
+                return channel;
+            }
+            if (open == null && (capacity <= 0 || channel.sessionCount() < capacity)) {
+                open = channel;
+            }
+        }
+        return open;
+    }
+
+    /**
+     * 摘掉一个已回收的分片。
+     *
+     * @return true 表示所有分片都已清空，本对象随之回收
+     */
+    synchronized boolean retire(RoomChannel channel) {
+        if (drop(channel) && shards.length == 0) {
+            retired = true;
+            timer.stop(null);
+        }
+        return retired;
+    }
+
+    private boolean drop(RoomChannel channel) {
+        RoomChannel[] current = shards;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == channel) {
+                RoomChannel[] next = new RoomChannel[current.length - 1];
+                System.arraycopy(current, 0, next, 0, i);
+                System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                shards = next;
+                occupancyChanged();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 开始（或重新开始）房间番茄钟。
+     *
+     * @return false 表示本对象已被回收
+     */
+    synchronized boolean startTimer(String userId, long focusMillis, long breakMillis) {
+        if (retired) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        timer.start(focusMillis, breakMillis, userId, now);
+        scheduleTimer(now);
+        timerChanged(now);
+        return true;
+    }
+
+    /**
+     * @return false 表示当前没有在计时
+     */
+    synchronized boolean pauseTimer(String userId) {
+        if (retired || !timer.isActive() || timer.isPaused()) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        timer.pause(userId, now);
+        timerChanged(now);
+        return true;
+    }
+
+    /**
+     * @return false 表示当前不是暂停状态
+     */
+    synchronized boolean resumeTimer(String userId) {
+        if (retired || !timer.isActive() || !timer.isPaused()) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        timer.resume(userId, now);
+        scheduleTimer(now);
+        timerChanged(now);
+        return true;
+    }
+
+    /**
+     * @return false 表示番茄钟本来就没有运行
+     */
+    synchronized boolean stopTimer(String userId) {
+        if (retired || !timer.isActive()) {
+            return false;
+        }
+        timer.stop(userId);
+        timerChanged(System.currentTimeMillis());
+        return true;
+    }
+
+    private void scheduleTimer(long now) {
+        long generation = timer.generation();
+        timer.scheduled(timingWheel.schedule(() -> onTimerPhaseEnd(generation), timer.remaining(now)));
+    }
+
+    /**
+     * 时间轮线程上的到期回调：切到下一阶段并推给所有分片。
+     */
+    private synchronized void onTimerPhaseEnd(long generation) {
+        if (retired || generation != timer.generation()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        timer.advance(now);
+        if (timer.isActive()) {
+            scheduleTimer(now);
+        }
+        timerChanged(now);
+    }
+
+    private void timerChanged(long now) {
+        WsPayloads.RoomTimer payload = timer.toPayload(roomId, now);
+        String status = memberStatus();
+        for (RoomChannel channel : shards) {
+            channel.timerChanged(payload, status);
+        }
+    }
+
+    /**
+     * 番茄钟当前阶段对应的成员状态。
+     */
+    private String memberStatus() {
+        return timer.isFocusing() ? "focusing" : "idle";
+    }
+
+    /**
+     * 向所有分片广播一条可靠通道事件。在本对象的锁内逐个分片入队，所有分片看到的聊天顺序一致。
+     *
+     * @return 已经关闭的会话，由调用方在锁外执行 leave
+     */
+    synchronized List<WebSocketSession> publishToAll(String type, Object payload) {
+        RoomChannel[] current = shards;
+        if (current.length == 1) {
+            return current[0].publish(type, payload);
+        }
+        List<WebSocketSession> closed = new ArrayList<>();
+        for (RoomChannel channel : current) {
+            closed.addAll(channel.publish(type, payload));
+        }
+        return closed;
+    }
+
+    RoomChannel[] shards() {
+        return shards;
+    }
+
+    RoomCounters counters() {
+        return counters;
+    }
+
+    /**
+     * 分片增减或分片内成员增减。只有一个分片时人数已经随成员增量下发，不需要汇总；
+     * 多个分片时在合并窗口后统一向所有分片广播一次 roomOccupancy。可能在 RoomChannel 锁内调用。
+     */
+    private void occupancyChanged() {
+        if (shards.length <= 1 && publishedShards() <= 1) {
+            return;
+        }
+        if (occupancyScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::flushOccupancy, Math.max(0, coalesceWindowMillis));
+        }
+    }
+
+    private void flushOccupancy() {
+        occupancyScheduled.set(false);
+        RoomChannel[] current = shards;
+        if (current.length <= 1 && publishedShards() <= 1) {
+            return;
+        }
+        WsPayloads.RoomOccupancy occupancy = new WsPayloads.RoomOccupancy(roomId, counters.online(), current.length);
+        if (occupancy.equals(published)) {
+            return;
+        }
+        published = occupancy;
+        // 已关闭的会话由 afterConnectionClosed 清理，这里不处理
+        for (RoomChannel channel : current) {
+            channel.publishOccupancy(occupancy);
+        }
+    }
+
+    private int publishedShards() {
+        WsPayloads.RoomOccupancy last = published;
+        return last == null ? 0 : last.shards();
+    }
+}
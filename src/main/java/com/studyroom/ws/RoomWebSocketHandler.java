@@ -1,158 +1,289 @@
 package com.studyroom.ws;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.studyroom.ws.WsCommands.ChatCommand;
+import com.studyroom.ws.WsCommands.InboundCommand;
+import com.studyroom.ws.WsCommands.JoinCommand;
+import com.studyroom.ws.WsCommands.LeaveCommand;
+import com.studyroom.ws.WsCommands.ResumeCommand;
+import com.studyroom.ws.WsCommands.RoomTimerCommand;
+import com.studyroom.ws.WsCommands.SyncCommand;
+import com.studyroom.ws.WsCommands.TimerStatusCommand;
+import com.studyroom.ws.WsPayloads.ErrorCode;
+import jakarta.annotation.PostConstruct;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 
 import java.time.Instant;
-import java.util.Map;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @Component
-public class RoomWebSocketHandler extends TextWebSocketHandler {
+public class RoomWebSocketHandler extends AbstractWebSocketHandler implements SubProtocolCapable {
 
-    private final ObjectMapper objectMapper;
+    private final InboundCommandReader commandReader;
     private final RoomRealtimeService roomRealtimeService;
+    private final RoomEventEncoder encoder;
+    private final ChatHistoryStore chatHistory;
+    private final MessageRateLimiter rateLimiter;
+    private final ClusterRelay clusterRelay;
+    private final ChatModerator moderator;
 
-    public RoomWebSocketHandler(ObjectMapper objectMapper, RoomRealtimeService roomRealtimeService) {
-        this.objectMapper = objectMapper;
+    public RoomWebSocketHandler(InboundCommandReader commandReader, RoomRealtimeService roomRealtimeService,
+                                RoomEventEncoder encoder, ChatHistoryStore chatHistory,
+                                MessageRateLimiter rateLimiter, ClusterRelay clusterRelay,
+                                ChatModerator moderator) {
+        this.commandReader = commandReader;
         this.roomRealtimeService = roomRealtimeService;
+        this.encoder = encoder;
+        this.chatHistory = chatHistory;
+        this.rateLimiter = rateLimiter;
+        this.clusterRelay = clusterRelay;
+        this.moderator = moderator;
+    }
+
+    /**
+     * 其他节点转来的客户端（{@link RelayedSession}）也走这个处理器。
+     */
+    @PostConstruct
+    void attachCluster() {
+        clusterRelay.attach(this);
+    }
+
+    @Override
+    public List<String> getSubProtocols() {
+        return RoomEventEncoder.PROTOCOLS;
     }
 
     @Override
     public void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-        JsonNode root;
+        roomRealtimeService.touch(session);
+        InboundCommand command;
         try {
-            root = objectMapper.readTree(message.getPayload());
+            command = commandReader.readJson(message.getPayload());
         } catch (Exception e) {
-            send(session, envelope("error", Map.of("message", "invalid json")));
+            send(session, ErrorCode.INVALID_JSON);
+            return;
+        }
+        if (clusterRelay.forward(session, command, message)) {
             return;
         }
+        dispatch(session, command);
+    }
 
-        String type = root.path("type").asText("");
-        JsonNode payload = root.path("payload");
+    /**
+     * CBOR 子协议的上行帧，结构与 JSON 文本帧相同。
+     */
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) throws Exception {
+        roomRealtimeService.touch(session);
+        InboundCommand command;
+        try {
+            command = commandReader.readCbor(message.getPayload());
+        } catch (Exception e) {
+            send(session, ErrorCode.INVALID_CBOR);
+            return;
+        }
+        if (clusterRelay.forward(session, command, message)) {
+            return;
+        }
+        dispatch(session, command);
+    }
+
+    /**
+     * 服务端心跳 ping 的回应。
+     */
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) throws Exception {
+        roomRealtimeService.touch(session);
+    }
 
-        switch (type) {
-            case "join" -> handleJoin(session, payload);
-            case "leave" -> handleLeave(session);
-            case "chat" -> handleChat(session, payload);
-            case "timerStatus" -> handleTimerStatus(session, payload);
-            default -> send(session, envelope("error", Map.of("message", "unknown type")));
+    private void dispatch(WebSocketSession session, InboundCommand command) {
+        if (command instanceof JoinCommand join) {
+            handleJoin(session, join);
+        } else if (command instanceof ResumeCommand resume) {
+            handleResume(session, resume);
+        } else if (command instanceof LeaveCommand) {
+            handleLeave(session);
+        } else if (command instanceof ChatCommand chat) {
+            handleChat(session, chat);
+        } else if (command instanceof TimerStatusCommand timerStatus) {
+            handleTimerStatus(session, timerStatus);
+        } else if (command instanceof RoomTimerCommand roomTimer) {
+            handleRoomTimer(session, roomTimer);
+        } else if (command instanceof SyncCommand) {
+            handleSync(session);
+        } else {
+            send(session, ErrorCode.UNKNOWN_TYPE);
+        }
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        rateLimiter.register(session);
+        clusterRelay.opened(session);
+        // 转来的会话由客户端所在节点做心跳
+        if (!ClusterRelay.isRelayed(session)) {
+            roomRealtimeService.open(session);
         }
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        handleLeave(session);
+        // 不立即 leave：成员保留宽限期，客户端重连后可以 resume
+        roomRealtimeService.close(session);
+        clusterRelay.closed(session);
         super.afterConnectionClosed(session, status);
     }
 
-    private void handleJoin(WebSocketSession session, JsonNode payload) throws Exception {
-        Long roomId = payload.path("roomId").isMissingNode() ? null : payload.path("roomId").asLong();
+    private void handleJoin(WebSocketSession session, JoinCommand command) {
+        Long roomId = command.roomId();
 
-        JsonNode userNode = payload.path("user");
-        String userId = userNode.path("id").asText(null);
-        String name = userNode.path("name").asText(null);
+        RoomRealtimeService.WsUser effective = roomRealtimeService.join(session, roomId, command.user());
+        sendJoined(session, roomId, effective);
+    }
 
-        RoomRealtimeService.WsUser effective = roomRealtimeService.join(session, roomId, new RoomRealtimeService.WsUser(userId, name));
+    /**
+     * 断线重连。能补发时 resumed 回执和缺失的事件已经在房间锁内入队；
+     * 否则（房间已重建或缺口太大）和新加入一样回 joined + 完整快照。
+     */
+    private void handleResume(WebSocketSession session, ResumeCommand command) {
+        Long roomId = command.roomId();
 
-        // ack，让前端拿到服务端最终 userId（如果前端没传 id）
-        send(session, envelope("joined", Map.of(
-                "roomId", roomId,
-                "user", effective
-        )));
+        RoomRealtimeService.ResumeResult result = roomRealtimeService.resume(
+                session, roomId, command.user(), command.epoch(), command.lastSeq(), command.version());
+        if (!result.resumed()) {
+            sendJoined(session, roomId, result.user());
+        }
+    }
+
+    private void sendJoined(WebSocketSession session, Long roomId, RoomRealtimeService.WsUser effective) {
+        // ack，让前端拿到服务端最终 userId（如果前端没传 id），同时带上最近的聊天记录
+        send(session, encoder.encode("joined", new WsPayloads.Joined(roomId, effective, chatHistory.recent(roomId))));
 
-        broadcastMembers(roomId);
+        // 其他成员已经通过 memberJoined 增量得知，这里只给自己发完整快照
+        roomRealtimeService.sendSnapshot(session);
     }
 
-    private void handleLeave(WebSocketSession session) throws Exception {
-        Long roomId = roomRealtimeService.getJoinedRoomId(session);
+    private void handleLeave(WebSocketSession session) {
         roomRealtimeService.leave(session);
-        if (roomId != null) {
-            broadcastMembers(roomId);
+    }
+
+    /**
+     * 客户端发现 version 不连续时请求重新同步成员列表。
+     */
+    private void handleSync(WebSocketSession session) {
+        if (roomRealtimeService.getJoinedRoomId(session) == null) {
+            send(session, ErrorCode.NOT_JOINED);
+            return;
         }
+        roomRealtimeService.sendSnapshot(session);
     }
 
-    private void handleChat(WebSocketSession session, JsonNode payload) throws Exception {
-        Long roomId = payload.path("roomId").isMissingNode() ? null : payload.path("roomId").asLong();
-        String content = payload.path("content").asText("").trim();
+    private void handleChat(WebSocketSession session, ChatCommand command) {
+        Long roomId = command.roomId();
+        String content = command.content() == null ? "" : command.content().trim();
         if (content.isBlank()) {
-            send(session, envelope("error", Map.of("message", "content is empty")));
+            send(session, ErrorCode.CONTENT_EMPTY);
             return;
         }
         if (content.length() > 500) {
-            send(session, envelope("error", Map.of("message", "content too long")));
+            send(session, ErrorCode.CONTENT_TOO_LONG);
             return;
         }
 
         Long joinedRoomId = roomRealtimeService.getJoinedRoomId(session);
         if (joinedRoomId == null) {
-            send(session, envelope("error", Map.of("message", "not joined")));
+            send(session, ErrorCode.NOT_JOINED);
             return;
         }
         if (roomId != null && !roomId.equals(joinedRoomId)) {
-            send(session, envelope("error", Map.of("message", "roomId mismatch")));
+            send(session, ErrorCode.ROOM_ID_MISMATCH);
+            return;
+        }
+        if (!rateLimiter.allowChat(session, joinedRoomId)) {
+            throttled(session);
+            return;
+        }
+        content = moderator.moderate(content);
+        if (content == null) {
+            send(session, ErrorCode.CONTENT_REJECTED);
             return;
         }
 
         RoomRealtimeService.WsUser user = roomRealtimeService.getJoinedUser(session);
-        Map<String, Object> chatPayload = Map.of(
-                "id", UUID.randomUUID().toString(),
-                "roomId", joinedRoomId,
-                "user", user,
-                "content", content,
-                "ts", Instant.now().toEpochMilli()
+        var chatPayload = new WsPayloads.ChatMessage(
+                UUID.randomUUID().toString(),
+                joinedRoomId,
+                user,
+                content,
+                Instant.now().toEpochMilli()
         );
 
-        roomRealtimeService.broadcastToRoom(joinedRoomId, envelope("chatMessage", chatPayload));
+        chatHistory.append(chatPayload);
+        // 与历史一样面向整个房间：每个分片编码一次并分配自己的 seq，分片内所有会话共享同一个 frame
+        roomRealtimeService.broadcastToRoom(session, "chatMessage", chatPayload);
     }
 
-    private void handleTimerStatus(WebSocketSession session, JsonNode payload) throws Exception {
-        String status = payload.path("status").asText(null);
-
+    private void handleTimerStatus(WebSocketSession session, TimerStatusCommand command) {
         Long joinedRoomId = roomRealtimeService.getJoinedRoomId(session);
         if (joinedRoomId == null) {
-            send(session, envelope("error", Map.of("message", "not joined")));
+            send(session, ErrorCode.NOT_JOINED);
+            return;
+        }
+        if (!rateLimiter.allowTimerStatus(session)) {
+            throttled(session);
             return;
         }
 
-        roomRealtimeService.updateStatus(session, status);
-        RoomRealtimeService.WsUser user = roomRealtimeService.getJoinedUser(session);
+        // 状态确有变化时由房间广播 statusChanged 增量
+        roomRealtimeService.updateStatus(session, command.status());
+    }
 
-        roomRealtimeService.broadcastToRoom(joinedRoomId, envelope("timerStatus", Map.of(
-                "roomId", joinedRoomId,
-                "userId", user == null ? null : user.id(),
-                "status", (status == null ? "idle" : status)
-        )));
+    /**
+     * 房间共享番茄钟：服务端计时，阶段切换由房间广播 roomTimer，客户端不再逐秒上报。
+     */
+    private void handleRoomTimer(WebSocketSession session, RoomTimerCommand command) {
+        if (roomRealtimeService.getJoinedRoomId(session) == null) {
+            send(session, ErrorCode.NOT_JOINED);
+            return;
+        }
+        if (!rateLimiter.allowTimerStatus(session)) {
+            throttled(session);
+            return;
+        }
 
-        broadcastMembers(joinedRoomId);
+        long focusMinutes = clamp(command.focusMinutes(), 1, 180, 25);
+        long breakMinutes = clamp(command.breakMinutes(), 0, 60, 5);
+        if (!roomRealtimeService.controlRoomTimer(session, command.action(),
+                TimeUnit.MINUTES.toMillis(focusMinutes), TimeUnit.MINUTES.toMillis(breakMinutes))) {
+            send(session, ErrorCode.INVALID_TIMER_ACTION);
+        }
     }
 
-    private void broadcastMembers(Long roomId) {
-        var snapshot = roomRealtimeService.snapshotMembers(roomId);
-        roomRealtimeService.broadcastToRoom(roomId, envelope("roomMembersUpdate", snapshot.toPayload()));
+    private static long clamp(Long value, long min, long max, long defaultValue) {
+        return value == null ? defaultValue : Math.max(min, Math.min(max, value));
     }
 
-    private void send(WebSocketSession session, String json) throws Exception {
-        if (session != null && session.isOpen()) {
-            session.sendMessage(new TextMessage(json));
+    private void throttled(WebSocketSession session) {
+        if (rateLimiter.rejectsWithError()) {
+            send(session, ErrorCode.RATE_LIMITED);
         }
     }
 
-    private String envelope(String type, Object payload) {
-        try {
-            return objectMapper.writeValueAsString(Map.of(
-                    "type", type,
-                    "payload", payload
-            ));
-        } catch (JsonProcessingException e) {
-            // fallback
-            return "{\"type\":\"error\",\"payload\":{\"message\":\"json encode failed\"}}";
+    private void send(WebSocketSession session, ErrorCode error) {
+        send(session, encoder.error(error));
+    }
+
+    private void send(WebSocketSession session, OutboundFrame frame) {
+        if (session != null && session.isOpen()) {
+            roomRealtimeService.sendTo(session, frame);
         }
     }
 }
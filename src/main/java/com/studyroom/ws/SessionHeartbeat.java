@@ -0,0 +1,62 @@
+package com.studyroom.ws;
+
+import org.springframework.stereotype.Component;
+
+import java.util.function.Consumer;
+
+/**
+ * 服务端心跳：每个会话在时间轮上挂一个周期检查，每个间隔发一次 ping，
+ * 连续若干个间隔没有收到客户端任何帧（消息或 pong）就回调 onDead。
+ * 会话关闭后检查不再续期，不需要显式注销。
+ */
+@Component
+public class SessionHeartbeat {
+
+    private final HashedTimingWheel wheel;
+    private final long intervalMillis;
+    private final int maxMissed;
+
+    public SessionHeartbeat(HashedTimingWheel wheel, RealtimeProperties properties) {
+        this.wheel = wheel;
+        this.intervalMillis = properties.getHeartbeat().getInterval().toMillis();
+        this.maxMissed = Math.max(1, properties.getHeartbeat().getMaxMissed());
+    }
+
+    void watch(SessionOutbox outbox, Consumer<SessionOutbox> onDead) {
+        if (intervalMillis <= 0) {
+            return;
+        }
+        wheel.schedule(new Check(outbox, onDead), intervalMillis);
+    }
+
+    private final class Check implements Runnable {
+
+        private final SessionOutbox outbox;
+        private final Consumer<SessionOutbox> onDead;
+        private long lastSeen;
+        private int missed;
+
+        Check(SessionOutbox outbox, Consumer<SessionOutbox> onDead) {
+            this.outbox = outbox;
+            this.onDead = onDead;
+            this.lastSeen = outbox.lastInboundAt();
+        }
+
+        @Override
+        public void run() {
+            if (outbox.isClosed()) {
+                return;
+            }
+            long seen = outbox.lastInboundAt();
+            if (seen != lastSeen) {
+                lastSeen = seen;
+                missed = 0;
+            } else if (++missed >= maxMissed) {
+                onDead.accept(outbox);
+                return;
+            }
+            outbox.ping();
+            wheel.schedule(this, intervalMillis);
+        }
+    }
+}
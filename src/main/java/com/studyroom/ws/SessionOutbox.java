@@ -0,0 +1,303 @@
+package com.studyroom.ws;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 每个 WebSocket 会话一个有界发送队列。
+ * 生产者只做入队，真正的 sendMessage 由写线程池里最多一个任务串行执行，
+ * 所以慢客户端只会让自己的队列变长，不会拖住广播方。
+ * <p>
+ * 队列按 {@link OutboundLane} 分成三个通道，写任务每次取优先级最高的非空通道：
+ * 聊天不会排在成员增量后面；roomTimer / roomOccupancy 同类型只保留最新一条；
+ * 成员增量积压超过 presenceBacklog 或缓冲超限时只保留最新一条，客户端发现 version 断档后 sync 拿完整快照。
+ * 缓冲超限时 DROP 策略只丢状态和成员增量帧，可靠通道的帧放不下时与 CLOSE 策略一样关闭会话。
+ * 通道之间不保证顺序，同一通道内仍按入队顺序，所以只有可靠通道的房间事件带 seq。
+ * <p>
+ * 心跳 ping 也由写任务发出（与普通消息共用同一个串行写出点），不占队列容量。
+ * <p>
+ * 有消息正在写出时，时间轮上挂一个看门狗，单条消息写出超过 sendTimeLimit 就淘汰会话；
+ * 入队时也做同样的检查。看门狗只在写出期间存在，每个会话最多一个。
+ */
+final class SessionOutbox implements Runnable {
+
+    /** 单次调度最多写出的消息数，避免一个繁忙会话长期霸占写线程 */
+    private static final int DRAIN_BATCH = 64;
+    private static final PingMessage PING = new PingMessage();
+
+    enum OfferResult {
+        QUEUED,
+        /** 按 DROP 策略丢弃了状态或成员增量帧，会话仍然在线 */
+        DROPPED,
+        /** 本次入队触发了慢连接淘汰 */
+        EVICTED,
+        /** 会话此前已关闭 */
+        CLOSED
+    }
+
+    private record Queued(OutboundFrame frame, int size, long enqueuedAt) {}
+
+    private final WebSocketSession session;
+    /** 协商了 CBOR 子协议的会话发二进制帧 */
+    private final boolean binary;
+    private final Executor executor;
+    /** 执行淘汰时的 close，与写线程分开 */
+    private final Executor closer;
+    private final HashedTimingWheel wheel;
+    private final long sendTimeLimitNanos;
+    private final long bufferSizeLimit;
+    private final RealtimeProperties.SlowConsumerPolicy policy;
+    private final int presenceBacklog;
+    private final OutboundLaneStats laneStats;
+
+    // guarded by this
+    private final ArrayDeque<Queued> reliable = new ArrayDeque<>();
+    private final ArrayDeque<Queued> state = new ArrayDeque<>();
+    private final ArrayDeque<Queued> presence = new ArrayDeque<>();
+    /** 三个通道的合计，写在锁内，统计时可以不加锁读取 */
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final AtomicBoolean pingRequested = new AtomicBoolean();
+    private final AtomicBoolean watchdogArmed = new AtomicBoolean();
+    private volatile long sendStartedAt;
+    /** 最近一次收到客户端任何帧（含 pong）的时间，System.nanoTime() */
+    private volatile long lastInboundAt = System.nanoTime();
+
+    SessionOutbox(WebSocketSession session, Executor executor, Executor closer, HashedTimingWheel wheel,
+                  RealtimeProperties.Outbound limits, OutboundLaneStats laneStats) {
+        this.session = session;
+        this.binary = RoomEventEncoder.isBinary(session);
+        this.executor = executor;
+        this.closer = closer;
+        this.wheel = wheel;
+        this.sendTimeLimitNanos = limits.getSendTimeLimit().toNanos();
+        this.bufferSizeLimit = limits.getBufferSizeLimit().toBytes();
+        this.policy = limits.getSlowConsumerPolicy();
+        this.presenceBacklog = Math.max(1, limits.getPresenceBacklog());
+        this.laneStats = laneStats;
+    }
+
+    WebSocketSession session() {
+        return session;
+    }
+
+    int depth() {
+        return depth.get();
+    }
+
+    long bufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    long lastInboundAt() {
+        return lastInboundAt;
+    }
+
+    void touch() {
+        lastInboundAt = System.nanoTime();
+    }
+
+    /**
+     * 请求写任务在下一轮发送一个 ping，客户端的 pong 会经由 {@link #touch()} 记录。
+     */
+    void ping() {
+        if (!isClosed() && pingRequested.compareAndSet(false, true)) {
+            schedule();
+        }
+    }
+
+    boolean isClosed() {
+        return closed.get() || !session.isOpen();
+    }
+
+    OfferResult offer(OutboundFrame frame) {
+        int size = frame.size(binary);
+        if (isClosed()) {
+            return OfferResult.CLOSED;
+        }
+        long started = sendStartedAt;
+        if (started != 0 && System.nanoTime() - started > sendTimeLimitNanos) {
+            evict(CloseStatus.SESSION_NOT_RELIABLE.withReason("send time limit exceeded"));
+            return OfferResult.EVICTED;
+        }
+        OutboundLane lane = frame.lane();
+        synchronized (this) {
+            if (lane == OutboundLane.STATE) {
+                supersedeState(frame.type());
+            } else if (lane == OutboundLane.PRESENCE && presence.size() >= presenceBacklog) {
+                collapsePresence(0);
+            }
+            if (bufferedBytes.get() + size > bufferSizeLimit && depth.get() > 0) {
+                // 先丢低优先级的积压，仍然放不下才按慢连接处理；留下最新一条增量作为断档信号
+                collapsePresence(lane == OutboundLane.PRESENCE ? 0 : 1);
+                if (bufferedBytes.get() + size > bufferSizeLimit && depth.get() > 0) {
+                    // 可靠通道的帧带 seq，丢掉会留下客户端察觉不到的缺口，DROP 策略下也关闭会话让客户端 resume 补齐
+                    if (policy == RealtimeProperties.SlowConsumerPolicy.CLOSE || lane == OutboundLane.RELIABLE) {
+                        evict(CloseStatus.SESSION_NOT_RELIABLE.withReason("buffer size limit exceeded"));
+                        return OfferResult.EVICTED;
+                    }
+                    return OfferResult.DROPPED;
+                }
+            }
+            lane(lane).add(new Queued(frame, size, System.nanoTime()));
+            depth.incrementAndGet();
+            bufferedBytes.addAndGet(size);
+        }
+        schedule();
+        return OfferResult.QUEUED;
+    }
+
+    private ArrayDeque<Queued> lane(OutboundLane lane) {
+        return switch (lane) {
+            case RELIABLE -> reliable;
+            case STATE -> state;
+            case PRESENCE -> presence;
+        };
+    }
+
+    /**
+     * 同类型的完整状态只需要最新一条。
+     */
+    private void supersedeState(String type) {
+        Iterator<Queued> it = state.iterator();
+        while (it.hasNext()) {
+            Queued q = it.next();
+            if (q.frame().type().equals(type)) {
+                it.remove();
+                dequeued(q);
+                laneStats.superseded(OutboundLane.STATE, 1);
+            }
+        }
+    }
+
+    /**
+     * 丢掉积压的成员增量，只保留最新的 keep 条。
+     */
+    private void collapsePresence(int keep) {
+        int dropped = 0;
+        while (presence.size() > keep) {
+            dequeued(presence.poll());
+            dropped++;
+        }
+        laneStats.superseded(OutboundLane.PRESENCE, dropped);
+    }
+
+    private void dequeued(Queued q) {
+        depth.decrementAndGet();
+        bufferedBytes.addAndGet(-q.size());
+    }
+
+    private synchronized Queued poll() {
+        Queued q = reliable.poll();
+        if (q == null) {
+            q = state.poll();
+        }
+        if (q == null) {
+            q = presence.poll();
+        }
+        if (q != null) {
+            dequeued(q);
+        }
+        return q;
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (pingRequested.getAndSet(false) && !isClosed()) {
+                session.sendMessage(PING);
+            }
+            for (int i = 0; i < DRAIN_BATCH; i++) {
+                if (isClosed()) {
+                    break;
+                }
+                Queued q = poll();
+                if (q == null) {
+                    break;
+                }
+                sendStartedAt = System.nanoTime();
+                armWatchdog();
+                try {
+                    if (session instanceof RelayedSession relayed) {
+                        relayed.send(q.frame(), binary);
+                    } else {
+                        session.sendMessage(q.frame().message(binary));
+                    }
+                } finally {
+                    sendStartedAt = 0;
+                }
+                laneStats.sent(q.frame().lane(), System.nanoTime() - q.enqueuedAt());
+            }
+        } catch (IOException | RuntimeException e) {
+            evict(CloseStatus.SESSION_NOT_RELIABLE);
+        } finally {
+            scheduled.set(false);
+            if ((depth.get() > 0 || pingRequested.get()) && !isClosed()) {
+                schedule();
+            }
+        }
+    }
+
+    private void armWatchdog() {
+        if (sendTimeLimitNanos > 0 && watchdogArmed.compareAndSet(false, true)) {
+            wheel.schedule(this::checkSendTime, TimeUnit.NANOSECONDS.toMillis(sendTimeLimitNanos));
+        }
+    }
+
+    /**
+     * 时间轮线程上的看门狗：当前这条消息写出超时就淘汰会话，仍在写出就按剩余时间续期，否则撤掉。
+     */
+    private void checkSendTime() {
+        long started = sendStartedAt;
+        if (started == 0 || isClosed()) {
+            watchdogArmed.set(false);
+            // 撤掉的同时可能刚开始写下一条，它的 armWatchdog 看到的还是已挂上
+            if (sendStartedAt != 0 && !isClosed()) {
+                armWatchdog();
+            }
+            return;
+        }
+        long elapsed = System.nanoTime() - started;
+        if (elapsed > sendTimeLimitNanos) {
+            watchdogArmed.set(false);
+            evict(CloseStatus.SESSION_NOT_RELIABLE.withReason("send time limit exceeded"));
+            return;
+        }
+        wheel.schedule(this::checkSendTime, TimeUnit.NANOSECONDS.toMillis(sendTimeLimitNanos - elapsed) + 1);
+    }
+
+    /**
+     * 关闭底层会话，后续会走正常的 afterConnectionClosed → leave 流程。
+     */
+    void evict(CloseStatus status) {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        // close 可能因为卡住的写操作而阻塞，放到单独的线程里做，不占用写线程
+        closer.execute(() -> {
+            try {
+                session.close(status);
+            } catch (IOException | RuntimeException ignored) {
+                // 连接已经不可用，忽略
+            }
+        });
+    }
+}
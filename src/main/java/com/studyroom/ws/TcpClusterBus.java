@@ -0,0 +1,438 @@
+package com.studyroom.ws;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于 TCP 的节点总线，对端列表静态配置（nodeId@host:port）。
+ * <p>
+ * 每对节点之间两条单向连接：本节点主动连出的连接只用来发送，对端连进来的连接只用来接收，
+ * 因此每个方向的消息天然有序。连出的连接完成握手、且对端连进来的连接也已通过校验时对端才视为在线，
+ * 任一方向断开即视为下线，两端因此得到一致的成员列表；连出的连接写失败后按间隔重连。
+ * 空闲时按同样的间隔发送保活帧，接收端超过三个间隔收不到任何数据就断开。
+ * <p>
+ * 发送队列满时丢弃消息并断开这条连出的连接：队列里和之后的消息不会越过丢失的消息送达，
+ * 两端都把对方视为下线，受影响的客户端按房间迁移重连、resume 补齐。
+ * <p>
+ * 只监听配置的地址。连接建立时接收端先发一个随机挑战，发送端回 HMAC-SHA256(共享密钥, 挑战 + nodeId)，
+ * 校验通过后接收端回一个确认字节，发送端收到确认才把对端视为在线；
+ * 校验不通过或 nodeId 不在对端列表里的连接直接断开；单帧载荷超过 maxFrameSize 的连接同样断开，
+ * 不会按对端声明的长度分配内存。
+ */
+public class TcpClusterBus implements ClusterBus, AutoCloseable {
+
+    private static final int MAGIC = 0x53524331; // "SRC1"
+    private static final byte T_PING = 0;
+    private static final byte T_INBOUND = 1;
+    private static final byte T_OUTBOUND = 2;
+    private static final byte T_CLOSED = 3;
+    private static final byte T_EVICT = 4;
+    private static final byte T_QUERY = 5;
+    private static final byte T_REPLY = 6;
+    private static final String HMAC = "HmacSHA256";
+    private static final int CHALLENGE_BYTES = 32;
+
+    private final String localNode;
+    private final String bindAddress;
+    private final int port;
+    private final SecretKeySpec secret;
+    private final int maxFrameBytes;
+    private final SecureRandom random = new SecureRandom();
+    private final long intervalMillis;
+    private final Map<String, PeerLink> links = new ConcurrentHashMap<>();
+    private final LongAdder dropped = new LongAdder();
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile Set<String> members;
+    private volatile Listener listener;
+    private volatile boolean running = true;
+    private ServerSocket server;
+
+    public TcpClusterBus(RealtimeProperties.Cluster config) {
+        this.localNode = config.getNodeId();
+        this.bindAddress = config.getBindAddress();
+        this.port = config.getPort();
+        if (config.getSecret() == null || config.getSecret().isBlank()) {
+            throw new IllegalArgumentException("studyroom.realtime.cluster.secret must be set when cluster is enabled");
+        }
+        this.secret = new SecretKeySpec(config.getSecret().getBytes(StandardCharsets.UTF_8), HMAC);
+        this.maxFrameBytes = (int) Math.min(Integer.MAX_VALUE, config.getMaxFrameSize().toBytes());
+        this.intervalMillis = Math.max(100, config.getReconnectInterval().toMillis());
+        for (String peer : config.getPeers()) {
+            int at = peer.indexOf('@');
+            int colon = peer.lastIndexOf(':');
+            if (at <= 0 || colon <= at) {
+                throw new IllegalArgumentException("invalid cluster peer: " + peer);
+            }
+            String node = peer.substring(0, at);
+            InetSocketAddress address = InetSocketAddress.createUnresolved(
+                    peer.substring(at + 1, colon), Integer.parseInt(peer.substring(colon + 1)));
+            links.put(node, new PeerLink(node, address, config.getQueueCapacity()));
+        }
+        this.members = Set.of(localNode);
+    }
+
+    @Override
+    public String localNode() {
+        return localNode;
+    }
+
+    @Override
+    public Set<String> members() {
+        return members;
+    }
+
+    @Override
+    public boolean send(String node, ClusterMessage message) {
+        PeerLink link = links.get(node);
+        if (link == null || !link.up || payloadSize(message) > maxFrameBytes) {
+            dropped.increment();
+            return false;
+        }
+        if (!link.queue.offer(message)) {
+            dropped.increment();
+            link.reset();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public long droppedMessages() {
+        return dropped.sum();
+    }
+
+    @Override
+    public synchronized void start(Listener listener) {
+        this.listener = listener;
+        try {
+            server = new ServerSocket();
+            server.setReuseAddress(true);
+            server.bind(new InetSocketAddress(InetAddress.getByName(bindAddress), port));
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot listen on cluster address " + bindAddress + ":" + port, e);
+        }
+        startThread(this::acceptLoop, "cluster-acceptor");
+        for (PeerLink link : links.values()) {
+            startThread(link, "cluster-link-" + link.node);
+        }
+    }
+
+    private void startThread(Runnable task, String name) {
+        Thread t = new Thread(task, name);
+        t.setDaemon(true);
+        t.start();
+        threads.add(t);
+    }
+
+    private synchronized void updateMembers() {
+        // 关闭过程中连接逐个断开，不再通知上层
+        if (!running) {
+            return;
+        }
+        Set<String> next = new TreeSet<>();
+        next.add(localNode);
+        links.values().stream()
+                .filter(link -> link.up && link.inbound.get() > 0)
+                .forEach(link -> next.add(link.node));
+        if (next.equals(members)) {
+            return;
+        }
+        members = Collections.unmodifiableSet(next);
+        listener.onMembershipChanged(members);
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = server.accept();
+                Thread reader = new Thread(() -> readLoop(socket), "cluster-reader");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!running) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void readLoop(Socket socket) {
+        PeerLink peer = null;
+        try (socket) {
+            socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, intervalMillis * 3));
+            byte[] challenge = new byte[CHALLENGE_BYTES];
+            random.nextBytes(challenge);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(MAGIC);
+            out.write(challenge);
+            out.flush();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            String from = in.readUTF();
+            byte[] response = new byte[sign(challenge, from).length];
+            in.readFully(response);
+            if (!links.containsKey(from) || !MessageDigest.isEqual(response, sign(challenge, from))) {
+                return;
+            }
+            out.writeByte(1);
+            out.flush();
+            Thread.currentThread().setName("cluster-reader-" + from);
+            peer = links.get(from);
+            peer.inbound.incrementAndGet();
+            updateMembers();
+            while (running) {
+                ClusterMessage message = read(in);
+                if (message != null) {
+                    listener.onMessage(from, message);
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            // 对端长时间没有任何数据，连接作废，等它重连
+        } catch (IOException | RuntimeException e) {
+            // 连接断开
+        } finally {
+            if (peer != null) {
+                peer.inbound.decrementAndGet();
+                updateMembers();
+            }
+        }
+    }
+
+    /**
+     * 到某个对端的发送连接，一个线程负责连接、重连和写出。
+     */
+    private final class PeerLink implements Runnable {
+
+        final String node;
+        final InetSocketAddress address;
+        final BlockingQueue<ClusterMessage> queue;
+        /** 对端连进来、已通过校验的接收连接数 */
+        final AtomicInteger inbound = new AtomicInteger();
+        volatile boolean up;
+        private volatile Socket socket;
+
+        PeerLink(String node, InetSocketAddress address, int queueCapacity) {
+            this.node = node;
+            this.address = address;
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try (Socket socket = new Socket()) {
+                    this.socket = socket;
+                    socket.connect(new InetSocketAddress(address.getHostString(), address.getPort()),
+                            (int) intervalMillis);
+                    socket.setTcpNoDelay(true);
+                    socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, intervalMillis * 3));
+                    DataInputStream in = new DataInputStream(socket.getInputStream());
+                    if (in.readInt() != MAGIC) {
+                        throw new IOException("unexpected cluster handshake from " + node);
+                    }
+                    byte[] challenge = new byte[CHALLENGE_BYTES];
+                    in.readFully(challenge);
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    out.writeInt(MAGIC);
+                    out.writeUTF(localNode);
+                    out.write(sign(challenge, localNode));
+                    out.flush();
+                    // 对端校验失败会直接断开，这里读到 EOF
+                    in.readByte();
+                    up = true;
+                    updateMembers();
+                    pump(out);
+                } catch (IOException e) {
+                    // 连接失败或断开
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    socket = null;
+                    if (up) {
+                        up = false;
+                        queue.clear();
+                        updateMembers();
+                    }
+                }
+                try {
+                    Thread.sleep(intervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 丢弃消息后断开连接，由发送线程的 finally 清空队列、更新成员。
+         */
+        void reset() {
+            Socket current = socket;
+            if (current == null) {
+                return;
+            }
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // 已断开
+            }
+        }
+
+        private void pump(DataOutputStream out) throws IOException, InterruptedException {
+            while (running) {
+                ClusterMessage message = queue.poll(intervalMillis, TimeUnit.MILLISECONDS);
+                if (message == null) {
+                    out.writeByte(T_PING);
+                } else {
+                    do {
+                        write(out, message);
+                    } while ((message = queue.poll()) != null);
+                }
+                out.flush();
+            }
+        }
+    }
+
+    private byte[] sign(byte[] challenge, String node) {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(secret);
+            mac.update(challenge);
+            return mac.doFinal(node.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int payloadSize(ClusterMessage message) {
+        if (message instanceof ClusterMessage.Inbound m) {
+            return m.payload().length;
+        }
+        if (message instanceof ClusterMessage.Outbound m) {
+            return m.payload().length;
+        }
+        if (message instanceof ClusterMessage.Query m) {
+            return m.body().length;
+        }
+        if (message instanceof ClusterMessage.Reply m) {
+            return m.body().length;
+        }
+        return 0;
+    }
+
+    private static void write(DataOutputStream out, ClusterMessage message) throws IOException {
+        if (message instanceof ClusterMessage.Inbound m) {
+            out.writeByte(T_INBOUND);
+            out.writeUTF(m.sessionId());
+            out.writeUTF(m.protocol() == null ? "" : m.protocol());
+            out.writeBoolean(m.binary());
+            writeBytes(out, m.payload());
+        } else if (message instanceof ClusterMessage.Outbound m) {
+            out.writeByte(T_OUTBOUND);
+            out.writeUTF(m.sessionId());
+            out.writeUTF(m.type() == null ? "" : m.type());
+            out.writeBoolean(m.binary());
+            writeBytes(out, m.payload());
+        } else if (message instanceof ClusterMessage.Closed m) {
+            out.writeByte(T_CLOSED);
+            out.writeUTF(m.sessionId());
+        } else if (message instanceof ClusterMessage.Evict m) {
+            out.writeByte(T_EVICT);
+            out.writeUTF(m.sessionId());
+            out.writeInt(m.code());
+            out.writeUTF(m.reason() == null ? "" : m.reason());
+        } else if (message instanceof ClusterMessage.Query m) {
+            out.writeByte(T_QUERY);
+            out.writeLong(m.queryId());
+            out.writeUTF(m.kind());
+            writeBytes(out, m.body());
+        } else if (message instanceof ClusterMessage.Reply m) {
+            out.writeByte(T_REPLY);
+            out.writeLong(m.queryId());
+            writeBytes(out, m.body());
+        }
+    }
+
+    /**
+     * @return null 表示保活帧
+     */
+    private ClusterMessage read(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        return switch (type) {
+            case T_PING -> null;
+            case T_INBOUND -> {
+                String sessionId = in.readUTF();
+                String protocol = in.readUTF();
+                boolean binary = in.readBoolean();
+                yield new ClusterMessage.Inbound(sessionId, protocol.isEmpty() ? null : protocol, binary, readBytes(in));
+            }
+            case T_OUTBOUND -> {
+                String sessionId = in.readUTF();
+                String frameType = in.readUTF();
+                boolean binary = in.readBoolean();
+                yield new ClusterMessage.Outbound(sessionId, frameType.isEmpty() ? null : frameType, binary,
+                        readBytes(in));
+            }
+            case T_CLOSED -> new ClusterMessage.Closed(in.readUTF());
+            case T_EVICT -> new ClusterMessage.Evict(in.readUTF(), in.readInt(), in.readUTF());
+            case T_QUERY -> new ClusterMessage.Query(in.readLong(), in.readUTF(), readBytes(in));
+            case T_REPLY -> new ClusterMessage.Reply(in.readLong(), readBytes(in));
+            default -> throw new IOException("unknown cluster message type " + type);
+        };
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxFrameBytes) {
+            throw new IOException("cluster frame of " + length + " bytes exceeds limit");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        try {
+            if (server != null) {
+                server.close();
+            }
+        } catch (IOException ignored) {
+            // 关闭中
+        }
+        threads.forEach(Thread::interrupt);
+    }
+}
@@ -0,0 +1,47 @@
+package com.studyroom.ws;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 令牌桶，用 GCRA（理论到达时间）实现：整个状态只有一个 AtomicLong，
+ * {@link #tryAcquire(long)} 只做 CAS，不加锁也不分配对象。
+ * <p>
+ * 平均速率为 {@code ratePerSecond}，空闲时最多积攒 {@code burst} 个令牌。
+ */
+final class TokenBucket {
+
+    /** 每个令牌对应的间隔 */
+    private final long emissionNanos;
+    /** 允许的理论到达时间超前量，等价于桶容量 */
+    private final long limitNanos;
+    private final AtomicLong theoreticalArrival;
+
+    TokenBucket(double ratePerSecond, int burst, long now) {
+        this.emissionNanos = Math.max(1L, (long) (1_000_000_000L / ratePerSecond));
+        this.limitNanos = emissionNanos * Math.max(1, burst);
+        this.theoreticalArrival = new AtomicLong(now);
+    }
+
+    /**
+     * @param now System.nanoTime()
+     */
+    boolean tryAcquire(long now) {
+        while (true) {
+            long tat = theoreticalArrival.get();
+            long next = Math.max(tat, now) + emissionNanos;
+            if (next - now > limitNanos) {
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(tat, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 桶已经回满（很久没有使用），可以丢弃后按需重建。
+     */
+    boolean isIdle(long now) {
+        return theoreticalArrival.get() - now <= 0;
+    }
+}
@@ -0,0 +1,39 @@
+package com.studyroom.ws;
+
+/**
+ * /ws 上行消息解析后的命令。payload 中未知字段会被忽略，缺失字段为 null。
+ */
+public final class WsCommands {
+
+    private WsCommands() {
+    }
+
+    public sealed interface InboundCommand
+            permits JoinCommand, ResumeCommand, LeaveCommand, ChatCommand, TimerStatusCommand, RoomTimerCommand,
+            SyncCommand, UnknownCommand {}
+
+    public record JoinCommand(Long roomId, RoomRealtimeService.WsUser user) implements InboundCommand {}
+
+    /**
+     * 断线重连：epoch 和 lastSeq 取自断线前最后收到的可靠房间事件，version 是客户端当前的成员 version。
+     */
+    public record ResumeCommand(Long roomId, RoomRealtimeService.WsUser user, Long epoch, Long lastSeq, Long version)
+            implements InboundCommand {}
+
+    public record LeaveCommand() implements InboundCommand {
+        static final LeaveCommand INSTANCE = new LeaveCommand();
+    }
+
+    public record ChatCommand(Long roomId, String content) implements InboundCommand {}
+
+    public record TimerStatusCommand(String status) implements InboundCommand {}
+
+    /**
+     * 房间番茄钟控制，action 为 start / pause / resume / stop；时长只在 start 时使用。
+     */
+    public record RoomTimerCommand(String action, Long focusMinutes, Long breakMinutes) implements InboundCommand {}
+
+    public record SyncCommand(Long version) implements InboundCommand {}
+
+    public record UnknownCommand(String type) implements InboundCommand {}
+}
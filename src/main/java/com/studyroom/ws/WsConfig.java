@@ -1,24 +1,37 @@
 package com.studyroom.ws;
 
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.List;
 
 @Configuration
 @EnableWebSocket
+@EnableConfigurationProperties(RealtimeProperties.class)
 public class WsConfig implements WebSocketConfigurer {
 
+    private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
     private final RoomWebSocketHandler roomWebSocketHandler;
+    private final RealtimeProperties properties;
 
-    public WsConfig(RoomWebSocketHandler roomWebSocketHandler) {
+    public WsConfig(RoomWebSocketHandler roomWebSocketHandler, RealtimeProperties properties) {
         this.roomWebSocketHandler = roomWebSocketHandler;
+        this.properties = properties;
     }
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry
                 .addHandler(roomWebSocketHandler, "/ws")
+            // 子协议由 RoomWebSocketHandler#getSubProtocols 协商；压缩扩展由容器实现，这里只决定是否放行
+            .setHandshakeHandler(new ExtensionFilteringHandshakeHandler(properties.getProtocol().isPermessageDeflate()))
             // 允许本地开发 + 线上 Vercel
             .setAllowedOriginPatterns(
                 "http://localhost:5173",
@@ -29,4 +42,26 @@ public class WsConfig implements WebSocketConfigurer {
                 "https://studyroom-kappa.vercel.app"
             );
     }
+
+    private static final class ExtensionFilteringHandshakeHandler extends DefaultHandshakeHandler {
+
+        private final boolean permessageDeflate;
+
+        private ExtensionFilteringHandshakeHandler(boolean permessageDeflate) {
+            this.permessageDeflate = permessageDeflate;
+        }
+
+        @Override
+        protected List<WebSocketExtension> filterRequestedExtensions(ServerHttpRequest request,
+                                                                     List<WebSocketExtension> requestedExtensions,
+                                                                     List<WebSocketExtension> supportedExtensions) {
+            List<WebSocketExtension> accepted = super.filterRequestedExtensions(request, requestedExtensions, supportedExtensions);
+            if (permessageDeflate) {
+                return accepted;
+            }
+            return accepted.stream()
+                    .filter(ext -> !PERMESSAGE_DEFLATE.equalsIgnoreCase(ext.getName()))
+                    .toList();
+        }
+    }
 }
@@ -0,0 +1,121 @@
+package com.studyroom.ws;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * /ws 下行消息的信封与各类 payload。字段顺序即 JSON 输出顺序。
+ */
+public final class WsPayloads {
+
+    private WsPayloads() {
+    }
+
+    /**
+     * seq 只出现在可靠通道的房间事件（聊天）和成员快照上：同一房间内从 1 开始连续递增，客户端断线后凭它 resume。
+     * 成员增量、roomTimer、roomOccupancy 可能被合并或越过可靠通道先到，不带 seq。
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Envelope(String type, Long seq, Object payload) {
+
+        public Envelope(String type, Object payload) {
+            this(type, null, payload);
+        }
+    }
+
+    public record Error(String message) {}
+
+    /**
+     * 固定的错误回复，启动时预先编码，发送时不再序列化。
+     */
+    public enum ErrorCode {
+        INVALID_JSON("invalid json"),
+        INVALID_CBOR("invalid cbor"),
+        UNKNOWN_TYPE("unknown type"),
+        NOT_JOINED("not joined"),
+        CONTENT_EMPTY("content is empty"),
+        CONTENT_TOO_LONG("content too long"),
+        ROOM_ID_MISMATCH("roomId mismatch"),
+        RATE_LIMITED("rate limited"),
+        CONTENT_REJECTED("content rejected"),
+        INVALID_TIMER_ACTION("invalid timer action");
+
+        private final String message;
+
+        ErrorCode(String message) {
+            this.message = message;
+        }
+
+        public String message() {
+            return message;
+        }
+    }
+
+    public record Joined(Long roomId, RoomRealtimeService.WsUser user, List<ChatMessage> history) {}
+
+    /**
+     * 聊天消息发给房间内所有连接（包括其他分片上的），与聊天历史的范围一致；
+     * 外层 Envelope 的 seq 由连接所在分片分配，只用于该连接断线 resume，不同分片的连接看到的 seq 不同。
+     */
+    public record ChatMessage(String id, Long roomId, RoomRealtimeService.WsUser user, String content, long ts) {}
+
+    /**
+     * resume 成功的回执，之后紧跟 (lastSeq, seq] 区间内补发的原始事件，以及当前的番茄钟、人数（成员 version 落后时是完整快照）。
+     */
+    public record Resumed(Long roomId, RoomRealtimeService.WsUser user, long epoch, long lastSeq, long seq) {}
+
+    /**
+     * epoch 标识房间这一次的生命周期，房间被回收重建后 seq 从头开始，epoch 也随之改变。
+     */
+    public record MembersUpdate(Long roomId, long epoch, long version, List<RoomRealtimeService.RoomMember> members, int count) {}
+
+    public record MemberJoined(Long roomId, long version, RoomRealtimeService.RoomMember member, int count) {}
+
+    public record MemberLeft(Long roomId, long version, String id, int count) {}
+
+    public record StatusChanged(Long roomId, long version, String id, String status, int count) {}
+
+    public record PresenceBatch(Long roomId, long fromVersion, long version, int count, List<PresenceEvent> events) {}
+
+    /**
+     * presenceBatch 中的单条变化，type 为 memberJoined / memberLeft / statusChanged。
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record PresenceEvent(String type, RoomRealtimeService.RoomMember member, String id, String status) {
+
+        static PresenceEvent joined(RoomRealtimeService.RoomMember member) {
+            return new PresenceEvent("memberJoined", member, null, null);
+        }
+
+        static PresenceEvent left(String id) {
+            return new PresenceEvent("memberLeft", null, id, null);
+        }
+
+        static PresenceEvent statusChanged(String id, String status) {
+            return new PresenceEvent("statusChanged", null, id, status);
+        }
+    }
+
+    /**
+     * 房间拆成多个分片后，整个逻辑房间的在线人数；count 为所有分片的成员数之和。
+     * 成员列表和增量里的 count 只覆盖自己所在的分片。shards 回落到 1 时最后发一次，之后不再发送。
+     */
+    public record RoomOccupancy(Long roomId, int count, int shards) {}
+
+    /**
+     * 房间番茄钟的一次阶段切换。phase 为 focus / break / idle；
+     * endsAt 为当前阶段结束的服务端时间（暂停或 idle 时为 0），客户端用 serverTime 校正本地时钟后自行倒计时。
+     */
+    public record RoomTimer(Long roomId, String phase, boolean paused, long phaseMs, long endsAt, long remainingMs,
+                            long focusMs, long breakMs, String updatedBy, long serverTime) {
+
+        /**
+         * 同一状态在 now 时刻的视图，只重算剩余时间和 serverTime，供之后加入或重连的会话使用。
+         */
+        public RoomTimer at(long now) {
+            long remaining = paused || endsAt == 0 ? remainingMs : Math.max(0, endsAt - now);
+            return new RoomTimer(roomId, phase, paused, phaseMs, endsAt, remaining, focusMs, breakMs, updatedBy, now);
+        }
+    }
+}
@@ -30,6 +30,8 @@ CREATE TABLE note_share (
     collect_count INT DEFAULT 0
 );
 
+CREATE INDEX idx_note_share_room_time ON note_share (room_id, create_time, id);
+
 CREATE TABLE note_collect (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
     note_id BIGINT,
@@ -47,6 +49,8 @@ CREATE TABLE comment (
     like_count INT DEFAULT 0
 );
 
+CREATE INDEX idx_comment_note_time ON comment (note_id, create_time, id);
+
 CREATE TABLE personal_note (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
     title VARCHAR(255),
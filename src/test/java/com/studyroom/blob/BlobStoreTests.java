@@ -0,0 +1,136 @@
+package com.studyroom.blob;
+
+import com.studyroom.exception.InvalidImageException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 内容寻址存储：只收认得出魔数的图片，超限即拒，同内容同 URL，文件名不合规则一律当作不存在。
+ */
+class BlobStoreTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void identicalContentSharesOneFile() throws IOException {
+        BlobStore store = store(DataSize.ofMegabytes(1));
+        byte[] png = png(4, 3);
+        BlobStore.Blob first = store.put(new ByteArrayInputStream(png));
+        BlobStore.Blob second = store.put(new ByteArrayInputStream(png));
+
+        assertEquals(first.url(), second.url());
+        assertEquals("image/png", first.contentType());
+        assertEquals(png.length, first.size());
+        String name = BlobStore.nameOf(first.url());
+        assertEquals(first.sha256() + ".png", name);
+        assertArrayEquals(png, Files.readAllBytes(store.find(name)));
+        assertEquals(List.of(store.find(name)), files());
+        assertTrue(leftovers().isEmpty());
+    }
+
+    @Test
+    void oversizeUploadIsRejected() throws IOException {
+        BlobStore store = store(DataSize.ofBytes(64));
+        InvalidImageException e = assertThrows(InvalidImageException.class,
+                () -> store.put(new ByteArrayInputStream(png(64, 64))));
+        assertEquals("image too large", e.getMessage());
+        // 中途放弃的临时文件也要清掉
+        assertTrue(leftovers().isEmpty());
+    }
+
+    @Test
+    void nonImageUploadIsRejected() throws IOException {
+        BlobStore store = store(DataSize.ofMegabytes(1));
+        // 声称是图片但内容是 HTML，不能存下来再原样下发
+        byte[] html = "<html><script>alert(1)</script></html>".getBytes();
+        InvalidImageException e = assertThrows(InvalidImageException.class,
+                () -> store.put(new ByteArrayInputStream(html)));
+        assertEquals("unsupported image type", e.getMessage());
+        assertThrows(InvalidImageException.class, () -> store.put(new ByteArrayInputStream(new byte[0])));
+        assertTrue(files().isEmpty());
+    }
+
+    @Test
+    void malformedNamesAreNeverResolved() throws IOException {
+        BlobStore store = store(DataSize.ofMegabytes(1));
+        String name = BlobStore.nameOf(store.put(new ByteArrayInputStream(png(2, 2))).url());
+        String hash = name.substring(0, 64);
+        assertNotNull(store.find(name));
+
+        for (String bad : new String[] {"../" + name, hash.substring(0, 2) + "/" + name, "..%2F" + name,
+                hash + ".png/..", hash + ".html", hash.toUpperCase() + ".png", hash + "-../x.png", "", null}) {
+            assertNull(store.find(bad), String.valueOf(bad));
+            assertNull(BlobStore.nameOf(BlobStore.URL_PREFIX + bad), String.valueOf(bad));
+        }
+        // 名字合法但文件不存在
+        assertNull(store.find("0".repeat(64) + ".png"));
+        // 外链和旧数据不是本存储的引用
+        assertNull(BlobStore.nameOf("https://example.com/" + name));
+        assertNull(BlobStore.nameOf(null));
+    }
+
+    @Test
+    void dataUrlIsInternedOnlyWhenItIsABase64Image() throws IOException {
+        BlobStore store = store(DataSize.ofMegabytes(1));
+        byte[] png = png(3, 3);
+        String url = store.internDataUrl("data:image/png;base64," + Base64.getMimeEncoder().encodeToString(png));
+        assertEquals(store.put(new ByteArrayInputStream(png)).url(), url);
+
+        assertEquals("https://example.com/a.png", store.internDataUrl("https://example.com/a.png"));
+        assertNull(store.internDataUrl(null));
+        assertThrows(InvalidImageException.class, () -> store.internDataUrl("data:image/png,raw"));
+        assertThrows(InvalidImageException.class,
+                () -> store.internDataUrl("data:text/html;base64," + Base64.getEncoder().encodeToString("<b>".getBytes())));
+    }
+
+    private BlobStore store(DataSize maxSize) throws IOException {
+        BlobProperties properties = new BlobProperties();
+        properties.setDirectory(directory.toString());
+        properties.setMaxSize(maxSize);
+        return new BlobStore(properties);
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> all = Files.walk(directory)) {
+            return all.filter(Files::isRegularFile).toList();
+        }
+    }
+
+    private List<Path> leftovers() throws IOException {
+        try (Stream<Path> incoming = Files.list(directory.resolve("incoming"))) {
+            return incoming.toList();
+        }
+    }
+
+    static byte[] png(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, (x * 31 + y * 17) * 0x010203);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
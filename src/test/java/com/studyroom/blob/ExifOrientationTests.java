@@ -0,0 +1,118 @@
+package com.studyroom.blob;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * EXIF 方向：两种字节序都能读出 Orientation，读不出时当作正常方向；8 种方向转正后的像素位置。
+ */
+class ExifOrientationTests {
+
+    private static final int A = 0xFF0000;
+    private static final int B = 0x00FF00;
+    private static final int C = 0x0000FF;
+    private static final int D = 0xFFFF00;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsOrientationInBothByteOrders() throws IOException {
+        BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+        assertEquals(6, ExifOrientation.read(file("ii.jpg", withOrientation(jpeg(image), 6, ByteOrder.LITTLE_ENDIAN))));
+        assertEquals(8, ExifOrientation.read(file("mm.jpg", withOrientation(jpeg(image), 8, ByteOrder.BIG_ENDIAN))));
+    }
+
+    @Test
+    void missingOrBrokenExifIsNormal() throws IOException {
+        byte[] plain = jpeg(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB));
+        assertEquals(1, ExifOrientation.read(file("plain.jpg", plain)));
+        assertEquals(1, ExifOrientation.read(file("zero.jpg", withOrientation(plain, 0, ByteOrder.BIG_ENDIAN))));
+        assertEquals(1, ExifOrientation.read(file("truncated.jpg", Arrays.copyOf(plain, 5))));
+        assertEquals(1, ExifOrientation.read(file("text.jpg", "not a jpeg".getBytes())));
+    }
+
+    @Test
+    void applyTurnsEachOrientationUpright() {
+        // 存储的像素：上行 A B，下行 C D；期望的是转正后的上行、下行
+        int[][][] upright = {
+                {{A, B}, {C, D}},
+                {{B, A}, {D, C}},
+                {{D, C}, {B, A}},
+                {{C, D}, {A, B}},
+                {{A, C}, {B, D}},
+                {{C, A}, {D, B}},
+                {{D, B}, {C, A}},
+                {{B, D}, {A, C}},
+        };
+        BufferedImage stored = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
+        stored.setRGB(0, 0, A);
+        stored.setRGB(1, 0, B);
+        stored.setRGB(0, 1, C);
+        stored.setRGB(1, 1, D);
+        for (int orientation = 1; orientation <= 8; orientation++) {
+            BufferedImage out = ExifOrientation.apply(stored, orientation);
+            for (int y = 0; y < 2; y++) {
+                int[] row = {out.getRGB(0, y) & 0xFFFFFF, out.getRGB(1, y) & 0xFFFFFF};
+                assertArrayEquals(upright[orientation - 1][y], row, "orientation " + orientation + " row " + y);
+            }
+        }
+    }
+
+    @Test
+    void sidewaysOrientationsSwapDimensions() {
+        BufferedImage landscape = new BufferedImage(40, 10, BufferedImage.TYPE_INT_RGB);
+        for (int orientation = 1; orientation <= 8; orientation++) {
+            BufferedImage out = ExifOrientation.apply(landscape, orientation);
+            boolean swapped = orientation >= 5;
+            assertEquals(swapped ? 10 : 40, out.getWidth());
+            assertEquals(swapped ? 40 : 10, out.getHeight());
+        }
+    }
+
+    private Path file(String name, byte[] content) throws IOException {
+        return Files.write(directory.resolve(name), content);
+    }
+
+    static byte[] jpeg(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * 在 JFIF 的 APP0 段之后插入只有一项 Orientation 的 EXIF APP1 段。
+     */
+    static byte[] withOrientation(byte[] jpeg, int orientation, ByteOrder order) {
+        ByteBuffer tiff = ByteBuffer.allocate(26).order(order);
+        tiff.put(order == ByteOrder.LITTLE_ENDIAN ? (byte) 'I' : (byte) 'M');
+        tiff.put(order == ByteOrder.LITTLE_ENDIAN ? (byte) 'I' : (byte) 'M');
+        tiff.putShort((short) 42).putInt(8);
+        // IFD0：1 项，tag 0x0112，类型 SHORT，个数 1，值左对齐放在 4 字节里；下一个 IFD 偏移为 0
+        tiff.putShort((short) 1).putShort((short) 0x0112).putShort((short) 3).putInt(1)
+                .putShort((short) orientation).putShort((short) 0).putInt(0);
+        byte[] exif = new byte[6 + tiff.capacity()];
+        System.arraycopy("Exif".getBytes(), 0, exif, 0, 4);
+        System.arraycopy(tiff.array(), 0, exif, 6, tiff.capacity());
+
+        int insertAt = 4 + ((jpeg[4] & 0xFF) << 8 | jpeg[5] & 0xFF);
+        ByteBuffer out = ByteBuffer.allocate(jpeg.length + 4 + exif.length);
+        out.put(jpeg, 0, insertAt);
+        out.put((byte) 0xFF).put((byte) 0xE1).putShort((short) (2 + exif.length)).put(exif);
+        out.put(jpeg, insertAt, jpeg.length - insertAt);
+        return out.array();
+    }
+}
@@ -0,0 +1,262 @@
+package com.studyroom.blob;
+
+import com.studyroom.blob.ImageVariants.Variant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 图片缩小版本：预览图和缩略图的尺寸、透明底、EXIF 方向，以及失败重试间隔和队列满后的补交。
+ * 生成任务交给测试自己的单线程池，向池里再提交一个空任务并等它跑完，之前的任务就都结束了。
+ */
+class ImageVariantsTests {
+
+    private static final int PREVIEW = 200;
+    private static final int THUMBNAIL = 50;
+
+    @TempDir
+    Path directory;
+
+    private static final int QUEUE = 2;
+
+    private final ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(QUEUE));
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void transparentPngIsScaledOntoWhite() throws Exception {
+        BlobStore store = store();
+        ImageVariants variants = variants(store, Duration.ofHours(1));
+        // 左半透明，右半不透明的红色
+        BufferedImage image = new BufferedImage(600, 300, BufferedImage.TYPE_INT_ARGB);
+        for (int x = 300; x < 600; x++) {
+            for (int y = 0; y < 300; y++) {
+                image.setRGB(x, y, 0xFFFF0000);
+            }
+        }
+        String url = store.put(new ByteArrayInputStream(encode(image, "png"))).url();
+        variants.submit(url);
+        drain();
+
+        BufferedImage preview = read(store, variants.url(url, Variant.PREVIEW));
+        assertEquals(PREVIEW, preview.getWidth());
+        assertEquals(PREVIEW / 2, preview.getHeight());
+        assertTrue(isWhite(preview.getRGB(PREVIEW / 8, PREVIEW / 4)));
+        assertTrue(isRed(preview.getRGB(PREVIEW * 7 / 8, PREVIEW / 4)));
+        BufferedImage thumbnail = read(store, variants.url(url, Variant.THUMBNAIL));
+        assertEquals(THUMBNAIL, thumbnail.getWidth());
+        assertEquals(THUMBNAIL / 2, thumbnail.getHeight());
+    }
+
+    @Test
+    void rotatedJpegIsTurnedUpright() throws Exception {
+        BlobStore store = store();
+        ImageVariants variants = variants(store, Duration.ofHours(1));
+        // 按传感器方向存的横图：左半红，右半蓝；Orientation 6 表示显示时顺时针转 90°
+        BufferedImage image = new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 400; x++) {
+            for (int y = 0; y < 200; y++) {
+                image.setRGB(x, y, x < 200 ? 0xFF0000 : 0x0000FF);
+            }
+        }
+        byte[] jpeg = ExifOrientationTests.withOrientation(encode(image, "jpeg"), 6, ByteOrder.BIG_ENDIAN);
+        String url = store.put(new ByteArrayInputStream(jpeg)).url();
+        variants.submit(url);
+        drain();
+
+        BufferedImage preview = read(store, variants.url(url, Variant.PREVIEW));
+        assertEquals(PREVIEW / 2, preview.getWidth());
+        assertEquals(PREVIEW, preview.getHeight());
+        assertTrue(isRed(preview.getRGB(PREVIEW / 4, PREVIEW / 8)));
+        assertTrue(isBlue(preview.getRGB(PREVIEW / 4, PREVIEW * 7 / 8)));
+        BufferedImage thumbnail = read(store, variants.url(url, Variant.THUMBNAIL));
+        assertEquals(THUMBNAIL / 2, thumbnail.getWidth());
+        assertEquals(THUMBNAIL, thumbnail.getHeight());
+    }
+
+    @Test
+    void smallImageIsNotEnlarged() throws Exception {
+        BlobStore store = store();
+        ImageVariants variants = variants(store, Duration.ofHours(1));
+        String url = store.put(new ByteArrayInputStream(BlobStoreTests.png(30, 20))).url();
+        variants.submit(url);
+        drain();
+
+        BufferedImage preview = read(store, variants.url(url, Variant.PREVIEW));
+        assertEquals(30, preview.getWidth());
+        assertEquals(20, preview.getHeight());
+    }
+
+    @Test
+    void failedImageIsNotResubmittedWithinRetryInterval() throws Exception {
+        BlobStore store = store();
+        ImageVariants variants = variants(store, Duration.ofHours(1));
+        String url = brokenPng(store);
+        assertNull(variants.url(url, Variant.PREVIEW));
+        drain();
+
+        // 原图修好之后，重试间隔内也不再提交
+        repair(store, url);
+        assertNull(variants.url(url, Variant.PREVIEW));
+        drain();
+        assertNull(variants.url(url, Variant.PREVIEW));
+        drain();
+        assertFalse(variantExists(store, url));
+    }
+
+    @Test
+    void failedImageIsResubmittedAfterRetryInterval() throws Exception {
+        BlobStore store = store();
+        ImageVariants variants = variants(store, Duration.ZERO);
+        String url = brokenPng(store);
+        assertNull(variants.url(url, Variant.PREVIEW));
+        drain();
+
+        repair(store, url);
+        assertNull(variants.url(url, Variant.PREVIEW));
+        drain();
+        assertNotNull(variants.url(url, Variant.PREVIEW));
+    }
+
+    @Test
+    void submissionRejectedByFullQueueIsRetriedByUrl() throws Exception {
+        BlobStore store = store();
+        ImageVariants variants = variants(store, Duration.ofHours(1));
+        String url = store.put(new ByteArrayInputStream(BlobStoreTests.png(20, 20))).url();
+
+        // 占住唯一的线程并塞满队列
+        CountDownLatch gate = new CountDownLatch(1);
+        pool.execute(() -> {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Future<?> last = null;
+        for (int i = 0; i < QUEUE; i++) {
+            last = pool.submit(() -> { });
+        }
+        variants.submit(url);
+        assertNull(variants.url(url, Variant.PREVIEW));
+        gate.countDown();
+        last.get(5, TimeUnit.SECONDS);
+        assertFalse(variantExists(store, url));
+
+        // 被拒绝的图片不会卡在排队状态，下一次引用时重新提交
+        assertNull(variants.url(url, Variant.PREVIEW));
+        drain();
+        assertNotNull(variants.url(url, Variant.PREVIEW));
+    }
+
+    @Test
+    void onlyStoredPngAndJpegHaveVariants() throws Exception {
+        BlobStore store = store();
+        ImageVariants variants = variants(store, Duration.ofHours(1));
+        byte[] gif = {'G', 'I', 'F', '8', '9', 'a', 1, 0, 1, 0, 0, 0, 0, ';'};
+        String url = store.put(new ByteArrayInputStream(gif)).url();
+
+        assertNull(variants.url(url, Variant.PREVIEW));
+        assertNull(variants.url("https://example.com/a.png", Variant.PREVIEW));
+        assertNull(variants.url(null, Variant.PREVIEW));
+        assertEquals(0, pool.getTaskCount());
+    }
+
+    private BlobStore store() throws IOException {
+        BlobProperties properties = new BlobProperties();
+        properties.setDirectory(directory.toString());
+        return new BlobStore(properties);
+    }
+
+    private ImageVariants variants(BlobStore store, Duration retryInterval) {
+        BlobProperties properties = new BlobProperties();
+        properties.getVariants().setPreviewSize(PREVIEW);
+        properties.getVariants().setThumbnailSize(THUMBNAIL);
+        properties.getVariants().setRetryInterval(retryInterval);
+        return new ImageVariants(store, properties, pool);
+    }
+
+    private void drain() throws Exception {
+        pool.submit(() -> { }).get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 魔数是 png，能存下来，但解码失败。
+     */
+    private static String brokenPng(BlobStore store) throws IOException {
+        byte[] content = BlobStoreTests.png(20, 20);
+        for (int i = 16; i < content.length; i++) {
+            content[i] = (byte) 0xAB;
+        }
+        return store.put(new ByteArrayInputStream(content)).url();
+    }
+
+    private static void repair(BlobStore store, String url) throws IOException {
+        Files.write(store.find(BlobStore.nameOf(url)), BlobStoreTests.png(20, 20));
+    }
+
+    private static boolean variantExists(BlobStore store, String url) {
+        String name = BlobStore.nameOf(url);
+        return Files.exists(store.path(name.substring(0, name.indexOf('.')) + "-preview.jpg"));
+    }
+
+    private static BufferedImage read(BlobStore store, String url) throws IOException {
+        assertNotNull(url);
+        return ImageIO.read(store.find(BlobStore.nameOf(url)).toFile());
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    private static boolean isWhite(int rgb) {
+        return red(rgb) > 230 && green(rgb) > 230 && blue(rgb) > 230;
+    }
+
+    private static boolean isRed(int rgb) {
+        return red(rgb) > 200 && green(rgb) < 60 && blue(rgb) < 60;
+    }
+
+    private static boolean isBlue(int rgb) {
+        return red(rgb) < 60 && green(rgb) < 60 && blue(rgb) > 200;
+    }
+
+    private static int red(int rgb) {
+        return rgb >> 16 & 0xFF;
+    }
+
+    private static int green(int rgb) {
+        return rgb >> 8 & 0xFF;
+    }
+
+    private static int blue(int rgb) {
+        return rgb & 0xFF;
+    }
+}
@@ -0,0 +1,94 @@
+package com.studyroom.blob;
+
+import com.studyroom.entity.NoteShare;
+import com.studyroom.entity.PersonalNote;
+import com.studyroom.repository.NoteShareRepository;
+import com.studyroom.repository.PersonalNoteRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 启动迁移：能解出图片的 data: URL 换成引用，解不出来的行原样保留，不影响同批其他行。
+ */
+@SpringBootTest
+class InlineImageMigrationTests {
+
+    @Autowired
+    BlobProperties properties;
+    @Autowired
+    BlobStore blobStore;
+    @Autowired
+    NoteShareRepository noteShareRepository;
+    @Autowired
+    PersonalNoteRepository personalNoteRepository;
+
+    private final List<Long> shares = new ArrayList<>();
+    private final List<Long> notes = new ArrayList<>();
+
+    /**
+     * 与其他测试共用同一个库，造的行用完即删。
+     */
+    @AfterEach
+    void cleanup() {
+        noteShareRepository.deleteAllById(shares);
+        personalNoteRepository.deleteAllById(notes);
+    }
+
+    @Test
+    void malformedDataUrlsAreLeftUntouched() throws IOException {
+        String valid = "data:image/png;base64," + Base64.getEncoder().encodeToString(BlobStoreTests.png(5, 5));
+        // 不是 base64、解出来不是图片、base64 里全是非法字符
+        String notBase64 = "data:image/png,raw-bytes";
+        String notImage = "data:image/png;base64," + Base64.getEncoder().encodeToString("hello".getBytes());
+        String garbage = "data:image/png;base64,@@@@";
+
+        Long brokenShare = share(notBase64);
+        Long validShare = share(valid);
+        Long garbageShare = share(garbage);
+        Long brokenNote = note(notImage);
+        Long validNote = note(valid);
+        Long external = share("https://example.com/a.png");
+
+        new InlineImageMigration(properties, blobStore, noteShareRepository, personalNoteRepository).run(null);
+
+        assertEquals(notBase64, noteShareRepository.findById(brokenShare).orElseThrow().getImageUrl());
+        assertEquals(garbage, noteShareRepository.findById(garbageShare).orElseThrow().getImageUrl());
+        assertEquals(notImage, personalNoteRepository.findById(brokenNote).orElseThrow().getImageUrl());
+        assertEquals("https://example.com/a.png", noteShareRepository.findById(external).orElseThrow().getImageUrl());
+
+        String migrated = noteShareRepository.findById(validShare).orElseThrow().getImageUrl();
+        assertTrue(migrated.startsWith(BlobStore.URL_PREFIX), migrated);
+        assertNotNull(blobStore.find(BlobStore.nameOf(migrated)));
+        assertEquals(migrated, personalNoteRepository.findById(validNote).orElseThrow().getImageUrl());
+    }
+
+    private Long share(String imageUrl) {
+        NoteShare note = new NoteShare();
+        note.setRoomId(0L);
+        note.setTitle("migration");
+        note.setImageUrl(imageUrl);
+        Long id = noteShareRepository.save(note).getId();
+        shares.add(id);
+        return id;
+    }
+
+    private Long note(String imageUrl) {
+        PersonalNote note = new PersonalNote();
+        note.setTitle("migration");
+        note.setImageUrl(imageUrl);
+        Long id = personalNoteRepository.save(note).getId();
+        notes.add(id);
+        return id;
+    }
+}
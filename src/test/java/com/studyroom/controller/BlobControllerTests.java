@@ -0,0 +1,77 @@
+package com.studyroom.controller;
+
+import com.studyroom.blob.BlobProperties;
+import com.studyroom.blob.BlobStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 图片下载：哈希即 ETag，带上相同 If-None-Match 的请求直接 304，不合规的名字一律 404。
+ */
+class BlobControllerTests {
+
+    private static final byte[] GIF = {'G', 'I', 'F', '8', '9', 'a', 1, 0, 1, 0, 0, 0, 0, ';'};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void conditionalGetIsNotModified() throws IOException {
+        BlobStore store = store();
+        BlobController controller = new BlobController(store, new BlobProperties());
+        String name = BlobStore.nameOf(store.put(new ByteArrayInputStream(GIF)).url());
+
+        MockHttpServletResponse first = get(controller, name, null);
+        assertEquals(200, first.getStatus());
+        assertEquals("image/gif", first.getContentType());
+        assertArrayEquals(GIF, first.getContentAsByteArray());
+        String etag = first.getHeader(HttpHeaders.ETAG);
+        assertEquals("\"" + name.substring(0, 64) + "\"", etag);
+        assertTrue(first.getHeader(HttpHeaders.CACHE_CONTROL).contains("immutable"));
+
+        MockHttpServletResponse revalidated = get(controller, name, etag);
+        assertEquals(304, revalidated.getStatus());
+        assertEquals(0, revalidated.getContentAsByteArray().length);
+        assertEquals(etag, revalidated.getHeader(HttpHeaders.ETAG));
+
+        assertEquals(200, get(controller, name, "\"" + "0".repeat(64) + "\"").getStatus());
+    }
+
+    @Test
+    void unknownOrMalformedNameIsNotFound() throws IOException {
+        BlobStore store = store();
+        BlobController controller = new BlobController(store, new BlobProperties());
+        String name = BlobStore.nameOf(store.put(new ByteArrayInputStream(GIF)).url());
+
+        assertEquals(404, get(controller, "../" + name, null).getStatus());
+        assertEquals(404, get(controller, "0".repeat(64) + ".gif", null).getStatus());
+    }
+
+    private BlobStore store() throws IOException {
+        BlobProperties properties = new BlobProperties();
+        properties.setDirectory(directory.toString());
+        return new BlobStore(properties);
+    }
+
+    private static MockHttpServletResponse get(BlobController controller, String name, String ifNoneMatch)
+            throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/blobs/" + name);
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.download(name, request, response);
+        return response;
+    }
+}
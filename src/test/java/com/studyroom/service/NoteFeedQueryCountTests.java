@@ -0,0 +1,178 @@
+package com.studyroom.service;
+
+import com.studyroom.dto.NoteDTOs.CursorPage;
+import com.studyroom.dto.NoteDTOs.NoteShareView;
+import com.studyroom.dto.NoteDTOs.NoteSummaryView;
+import com.studyroom.entity.Comment;
+import com.studyroom.entity.NoteCollect;
+import com.studyroom.entity.NoteShare;
+import com.studyroom.entity.User;
+import com.studyroom.exception.InvalidCursorException;
+import com.studyroom.repository.CommentRepository;
+import com.studyroom.repository.NoteCollectRepository;
+import com.studyroom.repository.NoteShareRepository;
+import com.studyroom.repository.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 房间笔记流的查询条数不随笔记、评论、收藏数量增长（防止 N+1 回归），翻页的代价不随页数增长。
+ */
+@SpringBootTest
+class NoteFeedQueryCountTests {
+
+    /** 笔记摘要 + 评论条数 + 收藏 + 用户；详情是笔记 + 评论 + 收藏 + 用户 */
+    private static final int FEED_QUERIES = 4;
+
+    @Autowired
+    NoteService noteService;
+    @Autowired
+    NoteShareRepository noteShareRepository;
+    @Autowired
+    CommentRepository commentRepository;
+    @Autowired
+    NoteCollectRepository noteCollectRepository;
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void roomFeedUsesConstantNumberOfQueries() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            User user = new User();
+            user.setUsername("feed-user-" + i);
+            user.setPassword("x");
+            users.add(userRepository.save(user));
+        }
+        long smallRoom = 9101L;
+        long largeRoom = 9102L;
+        seed(smallRoom, 3, users);
+        seed(largeRoom, 40, users);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+
+        statistics.clear();
+        List<NoteSummaryView> small = noteService.getRoomNotesWithMeta(smallRoom, null, 50).items;
+        long smallQueries = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        List<NoteSummaryView> large = noteService.getRoomNotesWithMeta(largeRoom, null, 50).items;
+        long largeQueries = statistics.getPrepareStatementCount();
+
+        assertEquals(3, small.size());
+        assertEquals(40, large.size());
+        assertTrue(smallQueries <= FEED_QUERIES, "small feed issued " + smallQueries + " queries");
+        assertEquals(smallQueries, largeQueries, "query count grew with the number of notes");
+
+        NoteSummaryView first = large.get(large.size() - 1);
+        assertEquals("feed-user-0", first.username);
+        assertEquals(3, first.commentCount);
+        assertEquals("content-0", first.excerpt);
+        assertEquals(2, first.collectedByUserIds.size());
+
+        statistics.clear();
+        NoteShareView detail = noteService.getNoteDetail(first.id);
+        assertTrue(statistics.getPrepareStatementCount() <= FEED_QUERIES, "note detail issued too many queries");
+        assertEquals("content-0", detail.content);
+        assertEquals(3, detail.comments.size());
+        assertEquals("comment-0", detail.comments.get(0).content);
+        assertEquals("feed-user-1", detail.comments.get(1).username);
+
+        statistics.clear();
+        assertEquals(3, noteService.getNoteCommentsWithUser(first.id, null, null).items.size());
+        assertTrue(statistics.getPrepareStatementCount() <= 2, "comment thread issued too many queries");
+    }
+
+    @Test
+    void keysetPagesWalkTheWholeRoomWithConstantQueries() {
+        User user = new User();
+        user.setUsername("page-user");
+        user.setPassword("x");
+        List<User> users = List.of(userRepository.save(user));
+        long roomId = 9103L;
+        seed(roomId, 23, users);
+        // 同一时刻写入的多条笔记靠 id 区分先后，翻页既不能重复也不能漏
+        LocalDateTime sameInstant = LocalDateTime.of(2024, 1, 1, 8, 0);
+        noteShareRepository.findAll().stream()
+            .filter(note -> note.getRoomId() == roomId)
+            .forEach(note -> {
+                note.setCreateTime(sameInstant);
+                noteShareRepository.save(note);
+            });
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+
+        Set<Long> seen = new HashSet<>();
+        Long previousId = null;
+        String cursor = null;
+        int pages = 0;
+        do {
+            statistics.clear();
+            CursorPage<NoteSummaryView> page = noteService.getRoomNotesWithMeta(roomId, cursor, 5);
+            assertTrue(statistics.getPrepareStatementCount() <= FEED_QUERIES, "page " + pages + " issued too many queries");
+            for (NoteSummaryView view : page.items) {
+                assertTrue(seen.add(view.id), "note " + view.id + " returned twice");
+                assertTrue(previousId == null || view.id < previousId, "page order broken at note " + view.id);
+                previousId = view.id;
+            }
+            cursor = page.nextCursor;
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(23, seen.size());
+        assertEquals(5, pages);
+
+        Long noteId = previousId;
+        CursorPage<?> comments = noteService.getNoteCommentsWithUser(noteId, null, 2);
+        assertEquals(2, comments.items.size());
+        CursorPage<?> rest = noteService.getNoteCommentsWithUser(noteId, comments.nextCursor, 2);
+        assertEquals(1, rest.items.size());
+        assertNull(rest.nextCursor);
+
+        assertThrows(InvalidCursorException.class, () -> noteService.getRoomNotesWithMeta(roomId, "not-a-cursor", 5));
+        assertThrows(InvalidCursorException.class, () -> noteService.getNoteCommentsWithUser(noteId, "%%%", 2));
+    }
+
+    private void seed(long roomId, int notes, List<User> users) {
+        for (int n = 0; n < notes; n++) {
+            NoteShare note = new NoteShare();
+            note.setRoomId(roomId);
+            note.setUserId(users.get(n % users.size()).getId());
+            note.setTitle("note-" + n);
+            note.setContent("content-" + n);
+            note = noteShareRepository.save(note);
+            for (int c = 0; c < 3; c++) {
+                Comment comment = new Comment();
+                comment.setNoteId(note.getId());
+                comment.setUserId(users.get((n + c) % users.size()).getId());
+                comment.setContent("comment-" + c);
+                commentRepository.save(comment);
+            }
+            for (int c = 1; c <= 2; c++) {
+                NoteCollect collect = new NoteCollect();
+                collect.setNoteId(note.getId());
+                collect.setUserId(users.get((n + c) % users.size()).getId());
+                noteCollectRepository.save(collect);
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.studyroom.ws;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 聊天段日志：写入后翻页、切段、重启恢复，以及按时间/大小删除旧段。
+ * 每次写完都 stop() 等写线程把队列落盘，之后的读取是确定的。
+ */
+class ChatLogTests {
+
+    private static final long ROOM = 1L;
+    private static final long OTHER_ROOM = 2L;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void pagesBackwardsWithCursor() throws Exception {
+        ChatLog log = start(config -> {});
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 20; i++) {
+            assertTrue(log.append(message(ROOM, i, now)));
+            assertTrue(log.append(message(OTHER_ROOM, i, now)));
+        }
+        log.stop();
+
+        ChatLog.ChatPage first = log.page(ROOM, null, 8);
+        assertEquals(contents(12, 20), contents(first));
+        assertNotNull(first.nextCursor());
+
+        ChatLog.ChatPage second = log.page(ROOM, first.nextCursor(), 8);
+        assertEquals(contents(4, 12), contents(second));
+        assertNotNull(second.nextCursor());
+
+        // 剩下刚好 4 条，不够 limit + 1，不再返回游标
+        ChatLog.ChatPage third = log.page(ROOM, second.nextCursor(), 8);
+        assertEquals(contents(0, 4), contents(third));
+        assertNull(third.nextCursor());
+
+        // 剩余条数正好等于 limit 时也没有下一页
+        ChatLog.ChatPage exact = log.page(ROOM, log.page(ROOM, null, 10).nextCursor(), 10);
+        assertEquals(contents(0, 10), contents(exact));
+        assertNull(exact.nextCursor());
+
+        assertSame(ChatLog.ChatPage.EMPTY, log.page(3L, null, 8));
+        assertSame(ChatLog.ChatPage.EMPTY, log.page(ROOM, null, 0));
+    }
+
+    @Test
+    void rollsSegmentsAndRecoversAfterRestart() throws Exception {
+        ChatLog log = start(config -> config.setSegmentSize(DataSize.ofBytes(1024)));
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 60; i++) {
+            log.append(message(ROOM, i, now));
+        }
+        log.stop();
+        assertTrue(segmentFiles() > 1);
+        assertEquals(contents(0, 60), contents(log.page(ROOM, null, 100)));
+
+        ChatLog restarted = start(config -> config.setSegmentSize(DataSize.ofBytes(1024)));
+        assertEquals(contents(0, 60), contents(restarted.page(ROOM, null, 100)));
+
+        // 恢复后接着最后一个段继续写
+        for (int i = 60; i < 80; i++) {
+            restarted.append(message(ROOM, i, now));
+        }
+        restarted.stop();
+        assertEquals(contents(0, 80), contents(pageAll(restarted, ROOM, 7)));
+    }
+
+    @Test
+    void dropsSegmentsOlderThanRetention() throws Exception {
+        ChatLog log = start(config -> {
+            config.setSegmentSize(DataSize.ofBytes(1024));
+            config.setRetention(Duration.ofHours(1));
+        });
+        long old = System.currentTimeMillis() - Duration.ofHours(2).toMillis();
+        for (int i = 0; i < 5; i++) {
+            log.append(message(OTHER_ROOM, i, old));
+        }
+        for (int i = 0; i < 60; i++) {
+            log.append(message(ROOM, i, old));
+        }
+        log.stop();
+
+        // 每次切段都会删掉过期的段，只剩正在写的那个
+        assertEquals(1, segmentFiles());
+        List<String> kept = contents(log.page(ROOM, null, 100));
+        assertTrue(kept.size() < 60);
+        assertEquals(contents(60 - kept.size(), 60), kept);
+        assertSame(ChatLog.ChatPage.EMPTY, log.page(OTHER_ROOM, null, 10));
+    }
+
+    @Test
+    void dropsOldestSegmentsOverSizeLimit() throws Exception {
+        ChatLog log = start(config -> {
+            config.setSegmentSize(DataSize.ofBytes(1024));
+            config.setRetentionSize(DataSize.ofBytes(3 * 1024));
+        });
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            log.append(message(ROOM, i, now));
+        }
+        log.stop();
+
+        assertTrue(segmentFiles() <= 3);
+        ChatLog restarted = start(config -> {
+            config.setSegmentSize(DataSize.ofBytes(1024));
+            config.setRetentionSize(DataSize.ofBytes(3 * 1024));
+        });
+        List<String> kept = contents(pageAll(restarted, ROOM, 9));
+        assertTrue(kept.size() < 100);
+        assertEquals(contents(100 - kept.size(), 100), kept);
+        restarted.stop();
+    }
+
+    private ChatLog start(Consumer<RealtimeProperties.ChatLog> customizer) throws IOException {
+        RealtimeProperties properties = new RealtimeProperties();
+        properties.getChatLog().setDirectory(dir.toString());
+        customizer.accept(properties.getChatLog());
+        ChatLog log = new ChatLog(properties);
+        log.start();
+        return log;
+    }
+
+    private static ChatLog.ChatPage pageAll(ChatLog log, long roomId, int limit) {
+        List<WsPayloads.ChatMessage> all = new ArrayList<>();
+        Long cursor = null;
+        do {
+            ChatLog.ChatPage page = log.page(roomId, cursor, limit);
+            all.addAll(0, page.messages());
+            cursor = page.nextCursor();
+        } while (cursor != null);
+        return new ChatLog.ChatPage(all, null);
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> ChatLogSegment.parseNumber(f) >= 0).count();
+        }
+    }
+
+    private static WsPayloads.ChatMessage message(long roomId, int i, long ts) {
+        return new WsPayloads.ChatMessage(UUID.randomUUID().toString(), roomId,
+                new RoomRealtimeService.WsUser("u" + i, "用户" + i), "message " + i, ts);
+    }
+
+    private static List<String> contents(ChatLog.ChatPage page) {
+        return page.messages().stream().map(WsPayloads.ChatMessage::content).toList();
+    }
+
+    private static List<String> contents(int from, int to) {
+        List<String> expected = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            expected.add("message " + i);
+        }
+        return expected;
+    }
+}
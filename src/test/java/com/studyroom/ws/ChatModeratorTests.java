@@ -0,0 +1,79 @@
+package com.studyroom.ws;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * 敏感词过滤的两种策略：MASK 逐字替换后照常发送，REJECT 命中即拒绝整条消息。
+ */
+class ChatModeratorTests {
+
+    @TempDir
+    Path dir;
+
+    private final RealtimeScheduler scheduler = new RealtimeScheduler();
+
+    @AfterEach
+    void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void maskPolicyReplacesMatchesAndKeepsMessage() throws IOException {
+        ChatModerator moderator = moderator(RealtimeProperties.ModerationPolicy.MASK);
+
+        assertEquals("you are ***, ****", moderator.moderate("you are BAD, spam"));
+        String clean = "all good here";
+        assertSame(clean, moderator.moderate(clean));
+
+        ChatModerator.ModerationStats stats = moderator.stats();
+        assertEquals(2, stats.words());
+        assertEquals(1, stats.masked());
+        assertEquals(0, stats.rejected());
+    }
+
+    @Test
+    void rejectPolicyDropsWholeMessage() throws IOException {
+        ChatModerator moderator = moderator(RealtimeProperties.ModerationPolicy.REJECT);
+
+        assertNull(moderator.moderate("buy spam now"));
+        assertNull(moderator.moderate("ends with bad"));
+        assertEquals("all good here", moderator.moderate("all good here"));
+
+        ChatModerator.ModerationStats stats = moderator.stats();
+        assertEquals(0, stats.masked());
+        assertEquals(2, stats.rejected());
+    }
+
+    @Test
+    void missingDictionaryDisablesFiltering() {
+        RealtimeProperties properties = new RealtimeProperties();
+        properties.getModeration().setDictionary(dir.resolve("absent.txt").toString());
+        ChatModerator moderator = new ChatModerator(scheduler, properties);
+        moderator.reloadIfChanged();
+
+        assertEquals("bad spam", moderator.moderate("bad spam"));
+        assertEquals(0, moderator.stats().words());
+    }
+
+    private ChatModerator moderator(RealtimeProperties.ModerationPolicy policy) throws IOException {
+        Path words = dir.resolve("words.txt");
+        Files.writeString(words, "# 注释行\n\nbad\n  spam  \n", StandardCharsets.UTF_8);
+        RealtimeProperties properties = new RealtimeProperties();
+        properties.getModeration().setDictionary(words.toString());
+        properties.getModeration().setPolicy(policy);
+        ChatModerator moderator = new ChatModerator(scheduler, properties);
+        moderator.reloadIfChanged();
+        return moderator;
+    }
+}
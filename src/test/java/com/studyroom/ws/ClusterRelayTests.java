@@ -0,0 +1,130 @@
+package com.studyroom.ws;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static com.studyroom.ws.FakeWebSocketSession.await;
+import static com.studyroom.ws.RealtimeTestNode.chat;
+import static com.studyroom.ws.RealtimeTestNode.join;
+import static com.studyroom.ws.RealtimeTestNode.resume;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 两个节点经 {@link LoopbackClusterBus} 组成集群，不启动 Spring，直接驱动 {@link RoomWebSocketHandler}：
+ * 非 owner 节点上的客户端加入、两个方向的聊天转发、HTTP 查询由 owner 应答，以及 owner 下线后的迁移。
+ */
+class ClusterRelayTests {
+
+    private final LoopbackClusterBus.Network network = new LoopbackClusterBus.Network();
+    private RealtimeTestNode a;
+    private RealtimeTestNode b;
+    private Long room;
+
+    @BeforeEach
+    void startNodes() {
+        a = new RealtimeTestNode("a", network);
+        b = new RealtimeTestNode("b", network);
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b"), RealtimeTestNode.VIRTUAL_NODES);
+        room = 1L;
+        while (!"b".equals(ring.owner(room))) {
+            room++;
+        }
+        await(() -> "b".equals(a.relay.owner(room)) && "b".equals(b.relay.owner(room)), "both rings");
+    }
+
+    @AfterEach
+    void stopNodes() {
+        a.close();
+        b.close();
+    }
+
+    @Test
+    void joinOnNonOwnerIsServedByOwner() throws Exception {
+        FakeWebSocketSession client = a.connect();
+        a.send(client, join(room, "u1"));
+
+        await(() -> !client.sent("joined").isEmpty() && !client.sent("roomMembersUpdate").isEmpty(), "joined");
+        assertEquals(1, b.realtime.roomCounts(List.of(room)).get(room).online());
+        assertTrue(a.realtime.roomCounts(List.of(room)).isEmpty());
+        assertEquals(1, a.relay.roomCounts(List.of(room)).get(room).online());
+        assertEquals(1, a.relay.stats().forwardedSessions());
+        assertEquals(1, b.relay.stats().relayedSessions());
+    }
+
+    @Test
+    void chatFansOutInBothDirections() throws Exception {
+        FakeWebSocketSession remote = a.connect();
+        FakeWebSocketSession local = b.connect();
+        a.send(remote, join(room, "u1"));
+        b.send(local, join(room, "u2"));
+        await(() -> !remote.sent("joined").isEmpty() && !local.sent("joined").isEmpty(), "both joined");
+
+        b.send(local, chat(room, "from b"));
+        a.send(remote, chat(room, "from a"));
+
+        await(() -> remote.sent("chatMessage").size() == 2 && local.sent("chatMessage").size() == 2, "chat");
+        assertEquals(contents(local), contents(remote));
+        assertEquals(List.of("from b", "from a"), contents(local));
+        // 同一个分片的 seq，经转发后保持不变
+        assertEquals(local.sent("chatMessage").get(1).path("seq").asLong(),
+                remote.sent("chatMessage").get(1).path("seq").asLong());
+
+        // 聊天历史只在 owner 上，由 owner 应答
+        assertTrue(a.history.page(room, null, 10).messages().isEmpty());
+        ChatLog.ChatPage page = a.relay.chatPage(room, null, 10);
+        assertEquals(List.of("from b", "from a"),
+                page.messages().stream().map(WsPayloads.ChatMessage::content).toList());
+    }
+
+    @Test
+    void relayedFramesKeepTheirLane() {
+        byte[] payload = "{}".getBytes();
+        assertEquals(OutboundLane.STATE, OutboundFrame.relayed("roomTimer", payload, false).lane());
+        assertEquals(OutboundLane.PRESENCE, OutboundFrame.relayed("presenceBatch", payload, false).lane());
+        assertEquals(OutboundLane.RELIABLE, OutboundFrame.relayed("chatMessage", payload, false).lane());
+        assertEquals(OutboundLane.RELIABLE, OutboundFrame.relayed(null, payload, false).lane());
+    }
+
+    @Test
+    void ownerFailoverMovesRoomToSurvivor() throws Exception {
+        FakeWebSocketSession client = a.connect();
+        a.send(client, join(room, "u1"));
+        await(() -> !client.sent("joined").isEmpty(), "joined");
+
+        b.close();
+        await(() -> client.closeStatus() != null, "room moved");
+        assertEquals("room moved", client.closeStatus().getReason());
+        assertEquals(Set.of("a"), a.bus.members());
+        assertEquals("a", a.relay.owner(room));
+        assertFalse(a.bus.send("b", new ClusterMessage.Closed("gone")));
+
+        // 新 owner 上没有这个房间，resume 退回 joined
+        a.handler.afterConnectionClosed(client, client.closeStatus());
+        FakeWebSocketSession reconnected = a.connect();
+        a.send(reconnected, resume(room, "u1", 1, 1, 1));
+        await(() -> !reconnected.sent("joined").isEmpty(), "joined on survivor");
+        assertTrue(reconnected.sent("resumed").isEmpty());
+        assertEquals(1, a.realtime.roomCounts(List.of(room)).get(room).online());
+        assertEquals(1, a.relay.roomCounts(List.of(room)).get(room).online());
+    }
+
+    @Test
+    void loopbackSendReportsDrops() {
+        LoopbackClusterBus.Network other = new LoopbackClusterBus.Network();
+        try (LoopbackClusterBus lonely = new LoopbackClusterBus("c", other)) {
+            assertEquals(Set.of("c"), lonely.members());
+            assertFalse(lonely.send("missing", new ClusterMessage.Closed("s")));
+            assertEquals(1, lonely.droppedMessages());
+        }
+    }
+
+    private static List<String> contents(FakeWebSocketSession session) {
+        return session.sent("chatMessage").stream().map(f -> f.path("payload").path("content").asText()).toList();
+    }
+}
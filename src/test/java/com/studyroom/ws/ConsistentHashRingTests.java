@@ -0,0 +1,46 @@
+package com.studyroom.ws;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 一致性哈希环：各节点按同样的成员算出同样的 owner，节点下线只迁走它自己的房间。
+ */
+class ConsistentHashRingTests {
+
+    @Test
+    void ownerDoesNotDependOnMemberOrder() {
+        ConsistentHashRing forward = new ConsistentHashRing(List.of("a", "b", "c"), 32);
+        ConsistentHashRing reversed = new ConsistentHashRing(List.of("c", "b", "a"), 32);
+        for (long room = 0; room < 1000; room++) {
+            assertEquals(forward.owner(room), reversed.owner(room));
+        }
+    }
+
+    @Test
+    void removingNodeOnlyMovesItsRooms() {
+        ConsistentHashRing full = new ConsistentHashRing(List.of("a", "b", "c"), 32);
+        ConsistentHashRing withoutC = new ConsistentHashRing(List.of("a", "b"), 32);
+        int owned = 0;
+        for (long room = 0; room < 1000; room++) {
+            String before = full.owner(room);
+            if ("c".equals(before)) {
+                owned++;
+            } else {
+                assertEquals(before, withoutC.owner(room));
+            }
+        }
+        // 虚拟节点让三个节点分到的房间大致均匀
+        assertTrue(owned > 150 && owned < 550, "c owned " + owned);
+    }
+
+    @Test
+    void emptyRingHasNoOwner() {
+        assertNull(new ConsistentHashRing(List.of(), 32).owner(42));
+    }
+}
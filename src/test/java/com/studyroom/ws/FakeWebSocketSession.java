@@ -0,0 +1,207 @@
+package com.studyroom.ws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * 测试用的 JSON 会话：记录写出的文本帧和关闭状态，可以让 sendMessage 阻塞来模拟慢连接。
+ */
+class FakeWebSocketSession implements WebSocketSession {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final AtomicInteger IDS = new AtomicInteger();
+
+    private final String id = "fake-" + IDS.incrementAndGet();
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private final List<JsonNode> sent = new CopyOnWriteArrayList<>();
+    private volatile CloseStatus closeStatus;
+    private volatile Object gate;
+
+    /**
+     * @return 按写出顺序排列的帧
+     */
+    List<JsonNode> sent() {
+        return sent;
+    }
+
+    List<String> sentTypes() {
+        List<String> types = new ArrayList<>();
+        sent.forEach(frame -> types.add(frame.path("type").asText()));
+        return types;
+    }
+
+    /**
+     * @return 指定类型的帧，按写出顺序
+     */
+    List<JsonNode> sent(String type) {
+        return sent.stream().filter(frame -> type.equals(frame.path("type").asText())).toList();
+    }
+
+    void clearSent() {
+        sent.clear();
+    }
+
+    CloseStatus closeStatus() {
+        return closeStatus;
+    }
+
+    /**
+     * 之后的 sendMessage 阻塞在这个对象上，直到 {@link #release()}。
+     */
+    synchronized void block() {
+        gate = new Object();
+    }
+
+    void release() {
+        Object current = gate;
+        gate = null;
+        if (current != null) {
+            synchronized (current) {
+                current.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (closeStatus != null) {
+            throw new IOException("session closed");
+        }
+        Object current = gate;
+        if (current != null) {
+            synchronized (current) {
+                while (gate == current) {
+                    try {
+                        current.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException(e);
+                    }
+                }
+            }
+        }
+        if (message instanceof TextMessage text) {
+            sent.add(JSON.readTree(text.getPayload()));
+        }
+    }
+
+    @Override
+    public void close() {
+        close(CloseStatus.NORMAL);
+    }
+
+    @Override
+    public void close(CloseStatus status) {
+        if (closeStatus == null) {
+            closeStatus = status;
+        }
+        release();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return closeStatus == null;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public URI getUri() {
+        return URI.create("ws://localhost/ws/rooms");
+    }
+
+    @Override
+    public HttpHeaders getHandshakeHeaders() {
+        return new HttpHeaders();
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public Principal getPrincipal() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return null;
+    }
+
+    @Override
+    public String getAcceptedProtocol() {
+        return RoomEventEncoder.PROTOCOL_JSON;
+    }
+
+    @Override
+    public void setTextMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getTextMessageSizeLimit() {
+        return 64 * 1024;
+    }
+
+    @Override
+    public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getBinaryMessageSizeLimit() {
+        return 64 * 1024;
+    }
+
+    @Override
+    public List<WebSocketExtension> getExtensions() {
+        return List.of();
+    }
+
+    /**
+     * 轮询等待异步写出的帧或关闭，超时则测试失败。
+     */
+    static void await(BooleanSupplier condition, String description) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("timed out waiting for " + description);
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.studyroom.ws;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 时间轮：不启动工作线程，用手动时钟和 {@link HashedTimingWheel#advance()} 逐 tick 推进，
+ * 验证到期时刻取整、跨多圈的延迟和取消。
+ */
+class HashedTimingWheelTests {
+
+    private static final long TICK = HashedTimingWheel.TICK_MILLIS;
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final HashedTimingWheel wheel = new HashedTimingWheel(nanos::get, false);
+
+    @Test
+    void delayIsRoundedUpToTick() {
+        AtomicInteger immediate = new AtomicInteger();
+        AtomicInteger exact = new AtomicInteger();
+        AtomicInteger partial = new AtomicInteger();
+        wheel.schedule(immediate::incrementAndGet, 0);
+        wheel.schedule(immediate::incrementAndGet, -5);
+        wheel.schedule(exact::incrementAndGet, TICK);
+        wheel.schedule(partial::incrementAndGet, 2 * TICK + TICK / 2);
+
+        advance(1);
+        assertEquals(2, immediate.get());
+        assertEquals(0, exact.get());
+        // 100ms 到期的任务在 [100, 200) 这个 tick 结束时触发
+        advance(1);
+        assertEquals(1, exact.get());
+        assertEquals(0, partial.get());
+        // 250ms 在第 3 次推进（300ms）时触发
+        advance(1);
+        assertEquals(1, partial.get());
+    }
+
+    @Test
+    void deadlineIsMeasuredFromScheduleTime() {
+        advance(5);
+        // 时钟停在 tick 5 的中间，延迟 1 个 tick 的到期点落在 tick 6 内
+        setClock(5 * TICK + TICK / 2);
+        AtomicInteger fired = new AtomicInteger();
+        wheel.schedule(fired::incrementAndGet, TICK);
+        advance(1);
+        assertEquals(0, fired.get());
+        advance(1);
+        assertEquals(1, fired.get());
+    }
+
+    @Test
+    void delaysSpanningSeveralRotations() {
+        AtomicInteger oneRotation = new AtomicInteger();
+        AtomicInteger twoRotations = new AtomicInteger();
+        wheel.schedule(oneRotation::incrementAndGet, 512 * TICK);
+        wheel.schedule(twoRotations::incrementAndGet, (2 * 512 + 7) * TICK);
+
+        advance(512);
+        assertEquals(0, oneRotation.get());
+        advance(1);
+        assertEquals(1, oneRotation.get());
+
+        advance(2 * 512 + 7 - 513);
+        assertEquals(0, twoRotations.get());
+        advance(1);
+        assertEquals(1, twoRotations.get());
+
+        // 轮子转过 300 个 tick 后再注册，槽位和圈数按当前 tick 计算
+        setClock(1032 * TICK);
+        AtomicInteger afterRotation = new AtomicInteger();
+        wheel.schedule(afterRotation::incrementAndGet, 600 * TICK);
+        advance(600);
+        assertEquals(0, afterRotation.get());
+        advance(1);
+        assertEquals(1, afterRotation.get());
+    }
+
+    @Test
+    void cancelledTasksNeverFire() {
+        AtomicInteger fired = new AtomicInteger();
+
+        // 还在待加入队列里就取消
+        HashedTimingWheel.Timeout pending = wheel.schedule(fired::incrementAndGet, 3 * TICK);
+        assertTrue(pending.cancel());
+        assertFalse(pending.cancel());
+
+        // 已经挂到槽位上再取消，包括跨圈的任务
+        HashedTimingWheel.Timeout inBucket = wheel.schedule(fired::incrementAndGet, 3 * TICK);
+        HashedTimingWheel.Timeout nextRotation = wheel.schedule(fired::incrementAndGet, 515 * TICK);
+        advance(1);
+        assertTrue(inBucket.cancel());
+        advance(2);
+        assertTrue(nextRotation.cancel());
+        advance(600);
+        assertEquals(0, fired.get());
+
+        // 触发之后取消无效
+        HashedTimingWheel.Timeout expired = wheel.schedule(fired::incrementAndGet, 0);
+        advance(1);
+        assertEquals(1, fired.get());
+        assertFalse(expired.cancel());
+    }
+
+    @Test
+    void failingTaskDoesNotAffectOthers() {
+        AtomicInteger fired = new AtomicInteger();
+        wheel.schedule(() -> {
+            throw new IllegalStateException("boom");
+        }, TICK);
+        wheel.schedule(fired::incrementAndGet, TICK);
+        advance(2);
+        assertEquals(1, fired.get());
+    }
+
+    private void advance(int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            wheel.advance();
+        }
+    }
+
+    private void setClock(long millis) {
+        nanos.set(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
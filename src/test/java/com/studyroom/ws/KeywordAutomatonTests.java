@@ -0,0 +1,79 @@
+package com.studyroom.ws;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Aho–Corasick 自动机：fail 链、重叠/嵌套的词、ASCII 大小写折叠、文本末尾的命中。
+ */
+class KeywordAutomatonTests {
+
+    private static final KeywordAutomaton CLASSIC = KeywordAutomaton.compile(List.of("he", "she", "his", "hers"));
+
+    @Test
+    void failLinksContinueMatchingAfterMismatch() {
+        // "abcd" 之后遇到 f 没有出边，沿 fail 链退到 "cd" 再走到 "cdf"
+        KeywordAutomaton automaton = KeywordAutomaton.compile(List.of("abcde", "cdf"));
+        assertEquals("ab***", automaton.mask("abcdf", '*'));
+        assertEquals(5, automaton.find("abcdf"));
+        assertEquals(-1, automaton.find("abcd"));
+
+        assertEquals("a***", CLASSIC.mask("ahis", '*'));
+        assertEquals(4, CLASSIC.find("ahis"));
+    }
+
+    @Test
+    void overlappingKeywordsAreAllMasked() {
+        // she、he、hers 互相重叠
+        assertEquals("u*****", CLASSIC.mask("ushers", '*'));
+        assertEquals(4, CLASSIC.find("ushers"));
+        // 第一个命中是 he，结束位置在它之后
+        assertEquals(2, CLASSIC.find("here"));
+    }
+
+    @Test
+    void nestedKeywordIsFoundThroughFailChain() {
+        KeywordAutomaton automaton = KeywordAutomaton.compile(List.of("abcd", "bc"));
+        assertEquals("a**e", automaton.mask("abce", '*'));
+        assertEquals("****", automaton.mask("abcd", '*'));
+        assertEquals(3, automaton.find("abcd"));
+    }
+
+    @Test
+    void asciiLettersAreCaseInsensitive() {
+        KeywordAutomaton automaton = KeywordAutomaton.compile(List.of("Bad", "违规"));
+        assertEquals("Hello *** world", automaton.mask("Hello bAD world", '*'));
+        assertEquals("x***y", automaton.mask("xBADy", '*'));
+        assertEquals("含有**词", automaton.mask("含有违规词", '*'));
+        // 只折叠 ASCII
+        assertEquals(-1, KeywordAutomaton.compile(List.of("ä")).find("Ä"));
+    }
+
+    @Test
+    void matchAtEndOfInput() {
+        assertEquals(6, CLASSIC.find("abchis"));
+        assertEquals("abc***", CLASSIC.mask("abchis", '*'));
+        assertEquals("**", CLASSIC.mask("he", '*'));
+    }
+
+    @Test
+    void unmatchedTextIsReturnedAsIs() {
+        String text = "nothing to see";
+        assertSame(text, CLASSIC.mask(text, '*'));
+        assertEquals(-1, CLASSIC.find(text));
+        assertSame(text, KeywordAutomaton.EMPTY.mask(text, '*'));
+        assertEquals(-1, KeywordAutomaton.EMPTY.find(text));
+    }
+
+    @Test
+    void sizeCountsDistinctNonEmptyWords() {
+        KeywordAutomaton automaton = KeywordAutomaton.compile(Arrays.asList("abc", "ABC", "", null, "ab"));
+        assertEquals(2, automaton.size());
+        assertEquals(0, KeywordAutomaton.EMPTY.size());
+    }
+}
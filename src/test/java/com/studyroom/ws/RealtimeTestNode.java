@@ -0,0 +1,96 @@
+package com.studyroom.ws;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.socket.TextMessage;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * 一个节点上的实时组件，按 Spring 装配的方式手工连起来，由测试直接驱动 {@link RoomWebSocketHandler}；
+ * 聊天日志关闭，只用内存历史，成员增量不合并、立即下发。
+ */
+final class RealtimeTestNode implements AutoCloseable {
+
+    static final int VIRTUAL_NODES = 16;
+
+    final LoopbackClusterBus bus;
+    final RealtimeScheduler scheduler = new RealtimeScheduler();
+    final HashedTimingWheel wheel = new HashedTimingWheel();
+    final OutboundWriterPool writerPool;
+    final RoomRealtimeService realtime;
+    final ChatHistoryStore history;
+    final ClusterRelay relay;
+    final RoomWebSocketHandler handler;
+
+    RealtimeTestNode(String nodeId, LoopbackClusterBus.Network network) {
+        this(nodeId, network, properties -> { });
+    }
+
+    /**
+     * @param customize 在默认测试配置之上再做调整
+     */
+    RealtimeTestNode(String nodeId, LoopbackClusterBus.Network network, Consumer<RealtimeProperties> customize) {
+        RealtimeProperties properties = new RealtimeProperties();
+        properties.getChatLog().setEnabled(false);
+        properties.getPresence().setCoalesceWindow(Duration.ZERO);
+        properties.getCluster().setVirtualNodes(VIRTUAL_NODES);
+        properties.getCluster().setQueryTimeout(Duration.ofSeconds(2));
+        customize.accept(properties);
+        ObjectMapper objectMapper = new ObjectMapper();
+        RoomEventEncoder encoder = new RoomEventEncoder(objectMapper);
+
+        bus = new LoopbackClusterBus(nodeId, network);
+        writerPool = new OutboundWriterPool(properties, wheel);
+        realtime = new RoomRealtimeService(writerPool, encoder, scheduler,
+                new SessionHeartbeat(wheel, properties), wheel, properties);
+        history = new ChatHistoryStore(scheduler, new ChatLog(properties), properties);
+        relay = new ClusterRelay(bus, realtime, history, objectMapper, properties);
+        handler = new RoomWebSocketHandler(new InboundCommandReader(objectMapper), realtime, encoder, history,
+                new MessageRateLimiter(scheduler, properties), relay, new ChatModerator(scheduler, properties));
+        handler.attachCluster();
+    }
+
+    FakeWebSocketSession connect() throws Exception {
+        FakeWebSocketSession session = new FakeWebSocketSession();
+        handler.afterConnectionEstablished(session);
+        return session;
+    }
+
+    void send(FakeWebSocketSession session, String json) throws Exception {
+        handler.handleTextMessage(session, new TextMessage(json));
+    }
+
+    /**
+     * 模拟连接断开，成员进入宽限期。
+     */
+    void disconnect(FakeWebSocketSession session) throws Exception {
+        session.close();
+        handler.afterConnectionClosed(session, session.closeStatus());
+    }
+
+    static String join(Long roomId, String userId) {
+        return "{\"type\":\"join\",\"payload\":{\"roomId\":" + roomId + ",\"user\":" + user(userId) + "}}";
+    }
+
+    static String chat(Long roomId, String content) {
+        return "{\"type\":\"chat\",\"payload\":{\"roomId\":" + roomId + ",\"content\":\"" + content + "\"}}";
+    }
+
+    static String resume(Long roomId, String userId, long epoch, long lastSeq, long version) {
+        return "{\"type\":\"resume\",\"payload\":{\"roomId\":" + roomId + ",\"user\":" + user(userId)
+                + ",\"epoch\":" + epoch + ",\"lastSeq\":" + lastSeq + ",\"version\":" + version + "}}";
+    }
+
+    private static String user(String userId) {
+        return "{\"id\":\"" + userId + "\",\"name\":\"" + userId + "\"}";
+    }
+
+    @Override
+    public void close() {
+        bus.close();
+        writerPool.shutdown();
+        wheel.shutdown();
+        scheduler.shutdown();
+    }
+}
@@ -0,0 +1,161 @@
+package com.studyroom.ws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 单个房间分片：成员增量的合并窗口由测试手动 flush，会话队列用同步执行器，写出的帧按顺序落在假会话里。
+ */
+class RoomChannelTests {
+
+    private static final long WINDOW_MILLIS = 60_000;
+
+    private final RealtimeScheduler scheduler = new RealtimeScheduler();
+    private final HashedTimingWheel wheel = new HashedTimingWheel(() -> 0L, false);
+    private final RoomEventEncoder encoder = new RoomEventEncoder(new ObjectMapper());
+    private final OutboundLaneStats laneStats = new OutboundLaneStats();
+
+    @AfterEach
+    void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void cancelledWindowDoesNotConsumeVersions() {
+        RoomChannel channel = channel(WINDOW_MILLIS, 16);
+        FakeWebSocketSession watcher = new FakeWebSocketSession();
+        channel.attach(outbox(watcher), "u1", "Ann");
+        channel.flushPresence();
+        assertEquals(1, watcher.sent("memberJoined").get(0).path("payload").path("version").asLong());
+
+        // 同一个窗口里先进后出，什么都不下发
+        SessionOutbox visitor = outbox(new FakeWebSocketSession());
+        channel.attach(visitor, "u2", "Bob");
+        channel.detach(visitor, "u2", 0);
+        channel.flushPresence();
+        assertEquals(List.of("memberJoined"), presenceTypes(watcher));
+
+        // 下一条增量从上次发出的 version 接着算，客户端看到的区间是连续的
+        channel.attach(outbox(new FakeWebSocketSession()), "u3", "Cat");
+        channel.flushPresence();
+        JsonNode batch = watcher.sent("presenceBatch").get(0).path("payload");
+        assertEquals(2, batch.path("fromVersion").asLong());
+        assertEquals(4, batch.path("version").asLong());
+        assertEquals(1, batch.path("events").size());
+        assertEquals("u3", batch.path("events").get(0).path("member").path("id").asText());
+    }
+
+    @Test
+    void presenceDeltasCarryIncreasingVersions() {
+        RoomChannel channel = channel(0, 16);
+        FakeWebSocketSession watcher = new FakeWebSocketSession();
+        channel.attach(outbox(watcher), "u1", "Ann");
+        SessionOutbox bob = outbox(new FakeWebSocketSession());
+        channel.attach(bob, "u2", "Bob");
+        channel.updateStatus("u2", "focusing");
+        channel.updateStatus("u2", "focusing");
+        channel.detach(bob, "u2", 0);
+
+        // 没有变化的状态上报不产生增量
+        assertEquals(List.of("memberJoined", "memberJoined", "statusChanged", "memberLeft"), presenceTypes(watcher));
+        assertEquals(List.of(1L, 2L, 3L, 4L), presenceVersions(watcher));
+        JsonNode left = watcher.sent("memberLeft").get(0).path("payload");
+        assertEquals("u2", left.path("id").asText());
+        assertEquals(1, left.path("count").asInt());
+    }
+
+    @Test
+    void snapshotOnlyOnRequest() {
+        RoomChannel channel = channel(0, 16);
+        FakeWebSocketSession watcher = new FakeWebSocketSession();
+        channel.attach(outbox(watcher), "u1", "Ann");
+        channel.attach(outbox(new FakeWebSocketSession()), "u2", "Bob");
+        assertTrue(watcher.sent("roomMembersUpdate").isEmpty());
+
+        FakeWebSocketSession joiner = new FakeWebSocketSession();
+        channel.sendSnapshot(outbox(joiner));
+        JsonNode snapshot = joiner.sent("roomMembersUpdate").get(0).path("payload");
+        assertEquals(channel.epoch, snapshot.path("epoch").asLong());
+        assertEquals(2, snapshot.path("version").asLong());
+        assertEquals(List.of("Ann", "Bob"),
+                snapshot.path("members").findValues("name").stream().map(JsonNode::asText).toList());
+    }
+
+    @Test
+    void windowCoalescesChangesIntoOneBatch() {
+        RoomChannel channel = channel(WINDOW_MILLIS, 16);
+        FakeWebSocketSession watcher = new FakeWebSocketSession();
+        channel.attach(outbox(watcher), "u1", "Ann");
+        channel.flushPresence();
+
+        channel.attach(outbox(new FakeWebSocketSession()), "u2", "Bob");
+        channel.attach(outbox(new FakeWebSocketSession()), "u3", "Cat");
+        channel.updateStatus("u2", "focusing");
+        channel.updateStatus("u1", "focusing");
+        assertEquals(List.of("memberJoined"), presenceTypes(watcher));
+        channel.flushPresence();
+
+        JsonNode batch = watcher.sent("presenceBatch").get(0).path("payload");
+        assertEquals(2, batch.path("fromVersion").asLong());
+        assertEquals(5, batch.path("version").asLong());
+        assertEquals(3, batch.path("count").asInt());
+        // 按成员首次变化的顺序；窗口内先加入再改状态的成员只下发一条带最新状态的 memberJoined
+        assertEquals(List.of("memberJoined", "memberJoined", "statusChanged"),
+                batch.path("events").findValues("type").stream().map(JsonNode::asText).toList());
+        assertEquals("focusing", batch.path("events").get(0).path("member").path("status").asText());
+        assertEquals("u1", batch.path("events").get(2).path("id").asText());
+    }
+
+    @Test
+    void resumeReplaysWhileGapFitsBuffer() {
+        RoomChannel channel = channel(0, 4);
+        channel.attach(outbox(new FakeWebSocketSession()), "u1", "Ann");
+        for (int n = 1; n <= 6; n++) {
+            channel.publish("chatMessage", Map.of("n", n));
+        }
+
+        // 缺口正好等于缓冲容量时还能补发
+        FakeWebSocketSession fits = new FakeWebSocketSession();
+        assertEquals(Boolean.TRUE, channel.resume(outbox(fits), "u2", "Bob", channel.epoch, 2L, 1L));
+        assertEquals(List.of(3L, 4L, 5L, 6L),
+                fits.sent("chatMessage").stream().map(frame -> frame.path("seq").asLong()).toList());
+
+        FakeWebSocketSession tooOld = new FakeWebSocketSession();
+        assertEquals(Boolean.FALSE, channel.resume(outbox(tooOld), "u3", "Cat", channel.epoch, 1L, 1L));
+        assertEquals(Boolean.FALSE, channel.resume(outbox(new FakeWebSocketSession()), "u4", "Dan",
+                channel.epoch, 7L, 1L));
+        assertEquals(Boolean.FALSE, channel.resume(outbox(new FakeWebSocketSession()), "u5", "Eve",
+                channel.epoch + 1, 6L, 1L));
+        assertTrue(tooOld.sent("resumed").isEmpty());
+    }
+
+    private RoomChannel channel(long windowMillis, int replayCapacity) {
+        return new RoomChannel(1L, encoder, scheduler, windowMillis, replayCapacity, new RoomCounters(), () -> { });
+    }
+
+    private SessionOutbox outbox(FakeWebSocketSession session) {
+        return new SessionOutbox(session, Runnable::run, Runnable::run, wheel,
+                new RealtimeProperties().getOutbound(), laneStats);
+    }
+
+    private static List<Long> presenceVersions(FakeWebSocketSession session) {
+        return session.sent().stream()
+                .filter(frame -> OutboundLane.of(frame.path("type").asText()) == OutboundLane.PRESENCE)
+                .map(frame -> frame.path("payload").path("version").asLong())
+                .toList();
+    }
+
+    private static List<String> presenceTypes(FakeWebSocketSession session) {
+        return session.sentTypes().stream()
+                .filter(type -> OutboundLane.of(type) == OutboundLane.PRESENCE)
+                .toList();
+    }
+}
@@ -0,0 +1,147 @@
+package com.studyroom.ws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.studyroom.ws.FakeWebSocketSession.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 房间在线服务：不启动 Spring，用假会话驱动 join / resume / 广播，写线程池照常异步写出，断言时轮询等待。
+ */
+class RoomRealtimeServiceTests {
+
+    private final RealtimeProperties properties = new RealtimeProperties();
+    private final RealtimeScheduler scheduler = new RealtimeScheduler();
+    private final HashedTimingWheel wheel = new HashedTimingWheel();
+    private OutboundWriterPool writerPool;
+
+    /**
+     * 在测试方法调整完 properties 之后再创建。
+     */
+    private RoomRealtimeService service() {
+        properties.getPresence().setCoalesceWindow(Duration.ZERO);
+        writerPool = new OutboundWriterPool(properties, wheel);
+        return new RoomRealtimeService(writerPool, new RoomEventEncoder(new ObjectMapper()), scheduler,
+                new SessionHeartbeat(wheel, properties), wheel, properties);
+    }
+
+    @AfterEach
+    void shutdown() {
+        if (writerPool != null) {
+            writerPool.shutdown();
+        }
+        wheel.shutdown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    void chatReachesEveryShardWithItsOwnSeq() {
+        properties.getCapacity().setMaxSessionsPerShard(1);
+        RoomRealtimeService service = service();
+        FakeWebSocketSession first = join(service, 7L, "u1");
+        FakeWebSocketSession second = join(service, 7L, "u2");
+        assertEquals(2, service.trafficStats(7L).shards());
+
+        service.broadcastToRoom(second, "chatMessage", Map.of("content", "hello"));
+        await(() -> !first.sent("chatMessage").isEmpty() && !second.sent("chatMessage").isEmpty(), "chat");
+
+        // 两个分片各自从 1 开始编号，resume 时各自对得上
+        for (FakeWebSocketSession session : List.of(first, second)) {
+            JsonNode chat = session.sent("chatMessage").get(0);
+            assertEquals("hello", chat.path("payload").path("content").asText());
+            assertEquals(1, chat.path("seq").asLong());
+        }
+    }
+
+    @Test
+    void blockedSocketInOneRoomDoesNotStallAnother() {
+        RoomRealtimeService service = service();
+        FakeWebSocketSession stuck = join(service, 1L, "u1");
+        stuck.block();
+        service.broadcastToRoom(stuck, "chatMessage", Map.of("content", "stuck"));
+
+        // 房间 1 的写出卡住期间，房间 2 的加入和聊天照常进行
+        FakeWebSocketSession sender = join(service, 2L, "u2");
+        FakeWebSocketSession receiver = join(service, 2L, "u3");
+        service.broadcastToRoom(sender, "chatMessage", Map.of("content", "hi"));
+        await(() -> receiver.sent("chatMessage").size() == 1, "chat in other room");
+        assertEquals(2, service.roomCounts(List.of(2L)).get(2L).online());
+        assertTrue(stuck.sent("chatMessage").isEmpty());
+
+        stuck.release();
+        await(() -> stuck.sent("chatMessage").size() == 1, "stuck room drains");
+    }
+
+    @Test
+    void concurrentJoinsAndLeavesKeepRoomsConsistent() throws Exception {
+        RoomRealtimeService service = service();
+        int threads = 8;
+        int perThread = 40;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long roomId = t % 4;
+                int thread = t;
+                done.add(pool.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        FakeWebSocketSession session = join(service, roomId, thread + "-" + i);
+                        // 每个线程留下一半
+                        if (i % 2 == 1) {
+                            service.leave(session);
+                            assertNull(service.getJoinedRoomId(session));
+                        } else {
+                            assertEquals(roomId, service.getJoinedRoomId(session));
+                        }
+                    }
+                }));
+            }
+            for (Future<?> f : done) {
+                f.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Map<Long, RoomRealtimeService.RoomCounts> counts = service.roomCounts(List.of(0L, 1L, 2L, 3L));
+        for (long roomId = 0; roomId < 4; roomId++) {
+            assertEquals(threads / 4 * perThread / 2, counts.get(roomId).online());
+        }
+    }
+
+    @Test
+    void leavingLastMemberRemovesRoom() {
+        RoomRealtimeService service = service();
+        FakeWebSocketSession session = join(service, 5L, "u1");
+        assertEquals(5L, service.getJoinedRoomId(session));
+
+        service.leave(session);
+        assertNull(service.getJoinedRoomId(session));
+        assertTrue(service.roomCounts(List.of(5L)).isEmpty());
+
+        // 房间已回收，再次加入会新建
+        join(service, 5L, "u1");
+        assertEquals(1, service.roomCounts(List.of(5L)).get(5L).online());
+    }
+
+    private static FakeWebSocketSession join(RoomRealtimeService service, Long roomId, String userId) {
+        FakeWebSocketSession session = new FakeWebSocketSession();
+        service.open(session);
+        service.join(session, roomId, new RoomRealtimeService.WsUser(userId, userId));
+        return session;
+    }
+}
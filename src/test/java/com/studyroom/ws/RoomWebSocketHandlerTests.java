@@ -0,0 +1,107 @@
+package com.studyroom.ws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.studyroom.ws.FakeWebSocketSession.await;
+import static com.studyroom.ws.RealtimeTestNode.chat;
+import static com.studyroom.ws.RealtimeTestNode.join;
+import static com.studyroom.ws.RealtimeTestNode.resume;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 断线重连：缺口在补发缓冲内时只补发错过的帧，否则（缺口过大、epoch 不符）退回 joined + 完整快照。
+ * 单节点，补发缓冲只留 4 条，关掉单连接的聊天限速。
+ */
+class RoomWebSocketHandlerTests {
+
+    private static final Long ROOM = 9L;
+    private static final int REPLAY = 4;
+
+    private final RealtimeTestNode node = new RealtimeTestNode("solo", new LoopbackClusterBus.Network(), p -> {
+        p.getResume().setBufferSize(REPLAY);
+        p.getRateLimit().getSessionChat().setRate(0);
+    });
+
+    @AfterEach
+    void shutdown() {
+        node.close();
+    }
+
+    @Test
+    void resumeReplaysOnlyMissedEvents() throws Exception {
+        FakeWebSocketSession chatter = joined("u1");
+        FakeWebSocketSession mobile = joined("u2");
+        JsonNode snapshot = mobile.sent("roomMembersUpdate").get(0).path("payload");
+
+        node.send(chatter, chat(ROOM, "one"));
+        await(() -> mobile.sent("chatMessage").size() == 1, "first chat");
+        long lastSeq = mobile.sent("chatMessage").get(0).path("seq").asLong();
+        node.disconnect(mobile);
+        node.send(chatter, chat(ROOM, "two"));
+        node.send(chatter, chat(ROOM, "three"));
+
+        FakeWebSocketSession back = node.connect();
+        node.send(back, resume(ROOM, "u2", snapshot.path("epoch").asLong(), lastSeq,
+                snapshot.path("version").asLong()));
+        await(() -> !back.sent("roomOccupancy").isEmpty(), "resume finished");
+
+        // 补发的聊天之后总是重发当前番茄钟和人数，它们不在 seq 里
+        assertEquals(List.of("resumed", "chatMessage", "chatMessage", "roomTimer", "roomOccupancy"), back.sentTypes());
+        List<JsonNode> replayed = back.sent("chatMessage");
+        assertEquals("two", replayed.get(0).path("payload").path("content").asText());
+        assertEquals(lastSeq + 1, replayed.get(0).path("seq").asLong());
+        assertEquals(lastSeq + 2, replayed.get(1).path("seq").asLong());
+        // 宽限期内回来，其他成员看不到任何进出
+        assertTrue(chatter.sent("memberLeft").isEmpty());
+        assertEquals(2, node.realtime.roomCounts(List.of(ROOM)).get(ROOM).online());
+    }
+
+    @Test
+    void gapBeyondReplayBufferFallsBackToJoined() throws Exception {
+        FakeWebSocketSession chatter = joined("u1");
+        FakeWebSocketSession mobile = joined("u2");
+        JsonNode snapshot = mobile.sent("roomMembersUpdate").get(0);
+        node.disconnect(mobile);
+        for (int i = 1; i <= REPLAY + 1; i++) {
+            node.send(chatter, chat(ROOM, "m" + i));
+        }
+
+        FakeWebSocketSession back = node.connect();
+        node.send(back, resume(ROOM, "u2", snapshot.path("payload").path("epoch").asLong(),
+                snapshot.path("seq").asLong(), snapshot.path("payload").path("version").asLong()));
+        await(() -> !back.sent("roomMembersUpdate").isEmpty(), "full resync");
+
+        assertTrue(back.sent("resumed").isEmpty());
+        assertTrue(back.sent("chatMessage").isEmpty());
+        // 错过的聊天由 joined 里的历史补上
+        JsonNode history = back.sent("joined").get(0).path("payload").path("history");
+        assertEquals(REPLAY + 1, history.size());
+        assertEquals(REPLAY + 1, back.sent("roomMembersUpdate").get(0).path("seq").asLong());
+    }
+
+    @Test
+    void staleEpochFallsBackToJoined() throws Exception {
+        joined("u1");
+        FakeWebSocketSession mobile = joined("u2");
+        long epoch = mobile.sent("roomMembersUpdate").get(0).path("payload").path("epoch").asLong();
+        node.disconnect(mobile);
+
+        FakeWebSocketSession back = node.connect();
+        node.send(back, resume(ROOM, "u2", epoch + 1, 0, 0));
+        await(() -> !back.sent("roomMembersUpdate").isEmpty(), "full resync");
+        assertEquals("joined", back.sentTypes().get(0));
+        assertTrue(back.sent("resumed").isEmpty());
+    }
+
+    private FakeWebSocketSession joined(String userId) throws Exception {
+        FakeWebSocketSession session = node.connect();
+        node.send(session, join(ROOM, userId));
+        await(() -> !session.sent("roomMembersUpdate").isEmpty(), userId + " joined");
+        return session;
+    }
+}
@@ -0,0 +1,159 @@
+package com.studyroom.ws;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.socket.CloseStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 会话发送队列：写任务放进手动执行的队列，入队后不会立即写出，可以确定地构造积压，再逐轮执行看写出顺序。
+ */
+class SessionOutboxTests {
+
+    private static final int FRAME_BYTES = 200;
+
+    private final Queue<Runnable> writer = new ArrayDeque<>();
+    private final HashedTimingWheel wheel = new HashedTimingWheel(() -> 0L, false);
+    private final OutboundLaneStats laneStats = new OutboundLaneStats();
+    private final FakeWebSocketSession session = new FakeWebSocketSession();
+
+    @Test
+    void dropPolicyShedsStateButNotReliableFrames() {
+        SessionOutbox outbox = outbox(RealtimeProperties.SlowConsumerPolicy.DROP, 3 * FRAME_BYTES / 2);
+        assertEquals(SessionOutbox.OfferResult.QUEUED, outbox.offer(frame("chatMessage", 1)));
+
+        assertEquals(SessionOutbox.OfferResult.DROPPED, outbox.offer(frame("roomOccupancy", 2)));
+        assertEquals(SessionOutbox.OfferResult.DROPPED, outbox.offer(frame("memberJoined", 3)));
+        assertNull(session.closeStatus());
+
+        // 带 seq 的帧放不下时不能悄悄丢掉
+        assertEquals(SessionOutbox.OfferResult.EVICTED, outbox.offer(frame("chatMessage", 4)));
+        assertEquals(CloseStatus.SESSION_NOT_RELIABLE.getCode(), session.closeStatus().getCode());
+    }
+
+    @Test
+    void closePolicyEvictsOnAnyOverflow() {
+        SessionOutbox outbox = outbox(RealtimeProperties.SlowConsumerPolicy.CLOSE, 3 * FRAME_BYTES / 2);
+        assertEquals(SessionOutbox.OfferResult.QUEUED, outbox.offer(frame("chatMessage", 1)));
+
+        assertEquals(SessionOutbox.OfferResult.EVICTED, outbox.offer(frame("roomOccupancy", 2)));
+        assertEquals("buffer size limit exceeded", session.closeStatus().getReason());
+        assertEquals(SessionOutbox.OfferResult.CLOSED, outbox.offer(frame("chatMessage", 3)));
+    }
+
+    @Test
+    void dropPolicyKeepsSessionUsable() {
+        SessionOutbox outbox = outbox(RealtimeProperties.SlowConsumerPolicy.DROP, 3 * FRAME_BYTES / 2);
+        outbox.offer(frame("chatMessage", 1));
+        outbox.offer(frame("roomTimer", 2));
+        drain();
+
+        assertEquals(SessionOutbox.OfferResult.QUEUED, outbox.offer(frame("roomTimer", 3)));
+        drain();
+        assertEquals(List.of("chatMessage", "roomTimer"), session.sentTypes());
+        assertTrue(session.isOpen());
+    }
+
+    @Test
+    void chatOvertakesQueuedPresence() {
+        SessionOutbox outbox = outbox(RealtimeProperties.SlowConsumerPolicy.CLOSE, 64 * FRAME_BYTES);
+        outbox.offer(frame("memberJoined", 1));
+        outbox.offer(frame("statusChanged", 2));
+        outbox.offer(frame("roomTimer", 3));
+        outbox.offer(frame("chatMessage", 4));
+        drain();
+
+        assertEquals(List.of("chatMessage", "roomTimer", "memberJoined", "statusChanged"), session.sentTypes());
+        assertEquals(1, lane("reliable").sent());
+        assertEquals(1, lane("state").sent());
+        assertEquals(2, lane("presence").sent());
+    }
+
+    @Test
+    void stateFramesAreSupersededByType() {
+        SessionOutbox outbox = outbox(RealtimeProperties.SlowConsumerPolicy.CLOSE, 64 * FRAME_BYTES);
+        outbox.offer(frame("roomTimer", 1));
+        outbox.offer(frame("roomOccupancy", 2));
+        outbox.offer(frame("roomTimer", 3));
+        assertEquals(2, outbox.depth());
+        drain();
+
+        assertEquals(List.of("roomOccupancy", "roomTimer"), session.sentTypes());
+        assertEquals(List.of(2, 3), numbers());
+        assertEquals(1, lane("state").superseded());
+        assertEquals(2, lane("state").sent());
+    }
+
+    @Test
+    void presenceCollapsesPastBacklog() {
+        SessionOutbox outbox = outbox(RealtimeProperties.SlowConsumerPolicy.CLOSE, 64 * FRAME_BYTES, 2);
+        for (int n = 1; n <= 5; n++) {
+            outbox.offer(frame("statusChanged", n));
+        }
+        drain();
+
+        // 积压到 backlog 时丢掉旧的，客户端拿到最新一条后按 version 断档 sync
+        assertEquals(List.of(5), numbers());
+        assertEquals(4, lane("presence").superseded());
+    }
+
+    @Test
+    void presenceCollapsesToOneFrameUnderBufferPressure() {
+        SessionOutbox outbox = outbox(RealtimeProperties.SlowConsumerPolicy.CLOSE, 7 * FRAME_BYTES / 2);
+        outbox.offer(frame("chatMessage", 1));
+        outbox.offer(frame("memberJoined", 2));
+        outbox.offer(frame("memberLeft", 3));
+        assertEquals(SessionOutbox.OfferResult.QUEUED, outbox.offer(frame("memberJoined", 4)));
+        assertEquals(2, outbox.depth());
+        drain();
+
+        assertEquals(List.of(1, 4), numbers());
+        assertEquals(2, lane("presence").superseded());
+        assertNull(session.closeStatus());
+    }
+
+    private SessionOutbox outbox(RealtimeProperties.SlowConsumerPolicy policy, long bufferBytes) {
+        return outbox(policy, bufferBytes, new RealtimeProperties().getOutbound().getPresenceBacklog());
+    }
+
+    private SessionOutbox outbox(RealtimeProperties.SlowConsumerPolicy policy, long bufferBytes, int presenceBacklog) {
+        RealtimeProperties.Outbound limits = new RealtimeProperties().getOutbound();
+        limits.setSlowConsumerPolicy(policy);
+        limits.setBufferSizeLimit(DataSize.ofBytes(bufferBytes));
+        limits.setPresenceBacklog(presenceBacklog);
+        return new SessionOutbox(session, writer::add, Runnable::run, wheel, limits, laneStats);
+    }
+
+    private OutboundWriterPool.LaneStats lane(String name) {
+        return laneStats.snapshot().stream().filter(stats -> stats.lane().equals(name)).findFirst().orElseThrow();
+    }
+
+    private List<Integer> numbers() {
+        return session.sent().stream().map(frame -> frame.path("payload").path("n").asInt()).toList();
+    }
+
+    private void drain() {
+        Runnable task;
+        while ((task = writer.poll()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * 固定大小的 JSON 帧，payload 里带编号便于看写出顺序。
+     */
+    private static OutboundFrame frame(String type, int n) {
+        String head = "{\"type\":\"" + type + "\",\"payload\":{\"n\":" + n + ",\"pad\":\"";
+        String tail = "\"}}";
+        String json = head + "x".repeat(FRAME_BYTES - head.length() - tail.length()) + tail;
+        return new OutboundFrame(type, json.getBytes(StandardCharsets.UTF_8), null);
+    }
+}
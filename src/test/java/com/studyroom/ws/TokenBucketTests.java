@@ -0,0 +1,119 @@
+package com.studyroom.ws;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * GCRA 令牌桶：时间全部由测试传入，验证突发容量、按间隔回填和拒绝不消耗令牌。
+ */
+class TokenBucketTests {
+
+    private static final long START = 1_000_000_000_000L;
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void allowsBurstThenRejects() {
+        TokenBucket bucket = new TokenBucket(1, 5, START);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire(START), "token " + i);
+        }
+        assertFalse(bucket.tryAcquire(START));
+        assertFalse(bucket.tryAcquire(START));
+    }
+
+    @Test
+    void refillsOneTokenPerEmissionInterval() {
+        TokenBucket bucket = new TokenBucket(2, 2, START);
+        long interval = SECOND / 2;
+        assertTrue(bucket.tryAcquire(START));
+        assertTrue(bucket.tryAcquire(START));
+
+        assertFalse(bucket.tryAcquire(START + interval - 1));
+        assertTrue(bucket.tryAcquire(START + interval));
+        assertFalse(bucket.tryAcquire(START + interval));
+
+        // 又过了两个半间隔，只补回桶容量那么多
+        long later = START + interval + interval * 5 / 2;
+        assertTrue(bucket.tryAcquire(later));
+        assertTrue(bucket.tryAcquire(later));
+        assertFalse(bucket.tryAcquire(later));
+    }
+
+    @Test
+    void idleBucketRefillsOnlyUpToBurst() {
+        TokenBucket bucket = new TokenBucket(10, 3, START);
+        long muchLater = START + 60 * SECOND;
+        for (int i = 0; i < 3; i++) {
+            assertTrue(bucket.tryAcquire(muchLater));
+        }
+        assertFalse(bucket.tryAcquire(muchLater));
+    }
+
+    @Test
+    void rejectionDoesNotConsumeTokens() {
+        TokenBucket bucket = new TokenBucket(1, 1, START);
+        assertTrue(bucket.tryAcquire(START));
+        for (int i = 0; i < 100; i++) {
+            assertFalse(bucket.tryAcquire(START + i));
+        }
+        assertTrue(bucket.tryAcquire(START + SECOND));
+    }
+
+    @Test
+    void fractionalRateAndMinimumBurst() {
+        // 0.5/s 即每 2 秒一个令牌；burst 小于 1 按 1 处理
+        TokenBucket bucket = new TokenBucket(0.5, 0, START);
+        assertTrue(bucket.tryAcquire(START));
+        assertFalse(bucket.tryAcquire(START + SECOND));
+        assertTrue(bucket.tryAcquire(START + 2 * SECOND));
+    }
+
+    @Test
+    void idleOnceFullyRefilled() {
+        TokenBucket bucket = new TokenBucket(1, 3, START);
+        assertTrue(bucket.isIdle(START));
+        bucket.tryAcquire(START);
+        bucket.tryAcquire(START);
+        assertFalse(bucket.isIdle(START + SECOND));
+        assertTrue(bucket.isIdle(START + 2 * SECOND));
+    }
+
+    @Test
+    void concurrentCallersNeverExceedBurst() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1, 50, START);
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch go = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            for (int t = 0; t < 8; t++) {
+                pool.execute(() -> {
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int i = 0; i < 100; i++) {
+                        if (bucket.tryAcquire(START)) {
+                            granted.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            go.countDown();
+        } finally {
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        assertEquals(50, granted.get());
+    }
+}
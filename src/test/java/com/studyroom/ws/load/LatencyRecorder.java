@@ -0,0 +1,70 @@
+package com.studyroom.ws.load;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 压测用的延迟样本收集，保存原始样本（纳秒），结束时排序得到精确的百分位。
+ * 超过容量后只计数不再保存，避免长时间压测撑爆堆。
+ */
+final class LatencyRecorder {
+
+    private final int capacity;
+    private long[] samples = new long[1024];
+    private int size;
+    private long overflow;
+
+    LatencyRecorder(int capacity) {
+        this.capacity = capacity;
+    }
+
+    synchronized void record(long nanos) {
+        if (size == capacity) {
+            overflow++;
+            return;
+        }
+        if (size == samples.length) {
+            samples = Arrays.copyOf(samples, Math.min(capacity, samples.length * 2));
+        }
+        samples[size++] = Math.max(0, nanos);
+    }
+
+    synchronized long count() {
+        return size + overflow;
+    }
+
+    /**
+     * @return count / min / p50 / p90 / p99 / p999 / max / mean，单位毫秒
+     */
+    synchronized Map<String, Object> summary() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("count", size + overflow);
+        if (size == 0) {
+            return out;
+        }
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long s : sorted) {
+            total += s;
+        }
+        out.put("minMillis", millis(sorted[0]));
+        out.put("p50Millis", millis(percentile(sorted, 0.50)));
+        out.put("p90Millis", millis(percentile(sorted, 0.90)));
+        out.put("p99Millis", millis(percentile(sorted, 0.99)));
+        out.put("p999Millis", millis(percentile(sorted, 0.999)));
+        out.put("maxMillis", millis(sorted[sorted.length - 1]));
+        out.put("meanMillis", millis(total / sorted.length));
+        return out;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int rank = (int) Math.ceil(sorted.length * p) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+}
@@ -0,0 +1,231 @@
+package com.studyroom.ws.load;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个模拟客户端：加入房间、发聊天和专注状态、断线后带 epoch/lastSeq resume。
+ * 下行帧只做最少的字符串解析（类型、seq、epoch、聊天里的发送时间戳），避免客户端开销淹没服务端的数据。
+ * <p>
+ * 聊天内容里带发送时的 System.nanoTime()，压测客户端和服务端在同一个 JVM 内，收到时直接相减即为端到端扇出延迟。
+ */
+final class LoadClient extends AbstractWebSocketHandler {
+
+    static final String CHAT_MARKER = "load t=";
+
+    /** 所有客户端共享的计数 */
+    static final class Metrics {
+        final LatencyRecorder chatFanout;
+        final LatencyRecorder join;
+        final LatencyRecorder resume;
+        final LongAdder framesReceived = new LongAdder();
+        final LongAdder bytesReceived = new LongAdder();
+        final LongAdder chatsSent = new LongAdder();
+        final LongAdder chatsReceived = new LongAdder();
+        final LongAdder statusSent = new LongAdder();
+        final LongAdder presenceReceived = new LongAdder();
+        final LongAdder snapshotsReceived = new LongAdder();
+        final LongAdder errorsReceived = new LongAdder();
+        final LongAdder sendFailures = new LongAdder();
+        final LongAdder reconnects = new LongAdder();
+        final LongAdder reconnectFailures = new LongAdder();
+
+        Metrics(int sampleCapacity) {
+            this.chatFanout = new LatencyRecorder(sampleCapacity);
+            this.join = new LatencyRecorder(sampleCapacity);
+            this.resume = new LatencyRecorder(sampleCapacity);
+        }
+    }
+
+    final String userId;
+    final long roomId;
+    private final WebSocketClient client;
+    private final String url;
+    private final Metrics metrics;
+
+    private volatile WebSocketSession session;
+    private volatile long epoch;
+    private volatile long lastSeq = -1;
+    private volatile long joinStartedAt;
+    private volatile long resumeStartedAt;
+    private volatile CompletableFuture<Void> joined = new CompletableFuture<>();
+    private boolean focusing;
+
+    LoadClient(String userId, long roomId, WebSocketClient client, String url, Metrics metrics) {
+        this.userId = userId;
+        this.roomId = roomId;
+        this.client = client;
+        this.url = url;
+        this.metrics = metrics;
+    }
+
+    CompletableFuture<Void> joined() {
+        return joined;
+    }
+
+    CompletableFuture<Void> connectAndJoin() {
+        return client.execute(this, url).thenAccept(s -> {
+            session = s;
+            joinStartedAt = System.nanoTime();
+            send("{\"type\":\"join\",\"payload\":{\"roomId\":" + roomId + ",\"user\":" + user() + "}}");
+        }).thenCompose(v -> joined);
+    }
+
+    /**
+     * 主动断开后立刻重连并 resume，测量从发出 resume 到收到 resumed（或退化为完整快照）的时间。
+     */
+    CompletableFuture<Void> reconnect() {
+        WebSocketSession old = session;
+        if (old == null || epoch == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            old.close(CloseStatus.GOING_AWAY);
+        } catch (IOException ignored) {
+            // 已断开
+        }
+        metrics.reconnects.increment();
+        joined = new CompletableFuture<>();
+        long resumeEpoch = epoch;
+        long resumeSeq = lastSeq;
+        return client.execute(this, url).thenAccept(s -> {
+            session = s;
+            resumeStartedAt = System.nanoTime();
+            send("{\"type\":\"resume\",\"payload\":{\"roomId\":" + roomId + ",\"user\":" + user()
+                    + ",\"epoch\":" + resumeEpoch + ",\"lastSeq\":" + resumeSeq + "}}");
+        }).thenCompose(v -> joined).whenComplete((v, e) -> {
+            if (e != null) {
+                metrics.reconnectFailures.increment();
+            }
+        });
+    }
+
+    void chat() {
+        if (send("{\"type\":\"chat\",\"payload\":{\"roomId\":" + roomId + ",\"content\":\"" + CHAT_MARKER
+                + System.nanoTime() + " from " + userId + "\"}}")) {
+            metrics.chatsSent.increment();
+        }
+    }
+
+    void toggleStatus() {
+        boolean next;
+        synchronized (this) {
+            focusing = !focusing;
+            next = focusing;
+        }
+        if (send("{\"type\":\"timerStatus\",\"payload\":{\"status\":\"" + (next ? "focusing" : "idle") + "\"}}")) {
+            metrics.statusSent.increment();
+        }
+    }
+
+    void close() {
+        WebSocketSession s = session;
+        if (s != null && s.isOpen()) {
+            try {
+                s.close();
+            } catch (IOException ignored) {
+                // 已断开
+            }
+        }
+    }
+
+    /**
+     * WebSocketSession 不允许并发发送，聊天和状态任务可能同时选中同一个客户端。
+     */
+    private boolean send(String json) {
+        WebSocketSession s = session;
+        if (s == null || !s.isOpen()) {
+            metrics.sendFailures.increment();
+            return false;
+        }
+        synchronized (s) {
+            try {
+                s.sendMessage(new TextMessage(json));
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                metrics.sendFailures.increment();
+                return false;
+            }
+        }
+    }
+
+    private String user() {
+        return "{\"id\":\"" + userId + "\",\"name\":\"" + userId + "\"}";
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession s, TextMessage message) {
+        long now = System.nanoTime();
+        String text = message.getPayload();
+        metrics.framesReceived.increment();
+        metrics.bytesReceived.add(message.getPayloadLength());
+
+        long seq = longAfter(text, "\"seq\":");
+        if (text.startsWith("{\"type\":\"roomMembersUpdate\"")) {
+            metrics.snapshotsReceived.increment();
+            epoch = longAfter(text, "\"epoch\":");
+            lastSeq = seq;
+            complete(now);
+        } else {
+            if (seq >= 0 && seq > lastSeq) {
+                lastSeq = seq;
+            }
+            if (text.startsWith("{\"type\":\"chatMessage\"")) {
+                metrics.chatsReceived.increment();
+                long sentAt = longAfter(text, CHAT_MARKER);
+                if (sentAt > 0) {
+                    metrics.chatFanout.record(now - sentAt);
+                }
+            } else if (text.startsWith("{\"type\":\"statusChanged\"") || text.startsWith("{\"type\":\"presenceBatch\"")
+                    || text.startsWith("{\"type\":\"memberJoined\"") || text.startsWith("{\"type\":\"memberLeft\"")) {
+                metrics.presenceReceived.increment();
+            } else if (text.startsWith("{\"type\":\"resumed\"")) {
+                complete(now);
+            } else if (text.startsWith("{\"type\":\"error\"")) {
+                metrics.errorsReceived.increment();
+            }
+        }
+    }
+
+    @Override
+    protected void handleBinaryMessage(WebSocketSession s, BinaryMessage message) {
+        metrics.framesReceived.increment();
+        metrics.bytesReceived.add(message.getPayloadLength());
+    }
+
+    private void complete(long now) {
+        if (resumeStartedAt != 0) {
+            metrics.resume.record(now - resumeStartedAt);
+            resumeStartedAt = 0;
+        } else if (joinStartedAt != 0) {
+            metrics.join.record(now - joinStartedAt);
+            joinStartedAt = 0;
+        }
+        joined.complete(null);
+    }
+
+    /**
+     * @return marker 后面紧跟的非负整数，没有时返回 -1
+     */
+    static long longAfter(String text, String marker) {
+        int i = text.indexOf(marker);
+        if (i < 0) {
+            return -1;
+        }
+        i += marker.length();
+        long value = 0;
+        int start = i;
+        while (i < text.length() && Character.isDigit(text.charAt(i))) {
+            value = value * 10 + (text.charAt(i++) - '0');
+        }
+        return i == start ? -1 : value;
+    }
+}
@@ -0,0 +1,363 @@
+package com.studyroom.ws.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.studyroom.ws.OutboundWriterPool;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * /ws 压测：在本进程内启动应用，模拟 N 个客户端分布在 M 个房间里，依次跑
+ * <ol>
+ *     <li>join：全部连接并加入房间，测加入延迟；</li>
+ *     <li>steady：按设定速率发聊天、切换专注状态、随机断线 resume，测聊天扇出延迟、resume 延迟和吞吐；</li>
+ * </ol>
+ * 每个阶段记录服务端线程（Tomcat / ws-* / chat-log 等）的 CPU 时间和分配字节数，以及 GC 次数和耗时。
+ * 结果写成 JSON 报告；指定 load.baseline 时与之前的报告逐项比较，便于评估 RoomRealtimeService /
+ * RoomWebSocketHandler 的改动。
+ * <p>
+ * 默认的 {@code mvn test} 不会运行，用 {@code mvn test -Pload} 启动，参数通过 -Dload.xxx 覆盖，例如
+ * {@code mvn test -Pload -Dload.sessions=1000 -Dload.rooms=100 -Dload.durationSeconds=30}。
+ * 客户端与服务端在同一个 JVM，5000 个会话约需 10000 个文件描述符。
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "studyroom.realtime.rate-limit.session-chat.rate=0",
+        "studyroom.realtime.rate-limit.room-chat.rate=0",
+        "studyroom.realtime.rate-limit.session-timer-status.rate=0",
+        "studyroom.realtime.chat-log.directory=target/load/chat-log",
+        "studyroom.realtime.moderation.dictionary=target/load/moderation-words.txt"
+})
+class WsLoadHarness {
+
+    private static final String[] SERVER_THREAD_PREFIXES = {"http-nio-", "ws-", "chat-log-", "cluster-"};
+
+    private final int sessions = Integer.getInteger("load.sessions", 5000);
+    private final int rooms = Integer.getInteger("load.rooms", 500);
+    private final int durationSeconds = Integer.getInteger("load.durationSeconds", 60);
+    private final double chatPerRoomPerSecond = doubleProperty("load.chatPerRoomPerSecond", 0.5);
+    private final double statusPerRoomPerSecond = doubleProperty("load.statusPerRoomPerSecond", 0.5);
+    private final double reconnectsPerSecond = doubleProperty("load.reconnectsPerSecond", 10);
+    private final int connectConcurrency = Integer.getInteger("load.connectConcurrency", 256);
+    private final String reportPath = System.getProperty("load.report", "target/load/report.json");
+    private final String baselinePath = System.getProperty("load.baseline");
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    OutboundWriterPool writerPool;
+
+    private final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    @Test
+    void run() throws Exception {
+        LoadClient.Metrics metrics = new LoadClient.Metrics(5_000_000);
+        StandardWebSocketClient wsClient = new StandardWebSocketClient();
+        String url = "ws://localhost:" + port + "/ws";
+        List<List<LoadClient>> byRoom = new ArrayList<>();
+        for (int r = 0; r < rooms; r++) {
+            byRoom.add(new ArrayList<>());
+        }
+        List<LoadClient> clients = new ArrayList<>(sessions);
+        for (int i = 0; i < sessions; i++) {
+            LoadClient c = new LoadClient("load-" + i, i % rooms + 1, wsClient, url, metrics);
+            clients.add(c);
+            byRoom.get(i % rooms).add(c);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", Instant.now().toString());
+        report.put("config", config());
+        report.put("environment", environment());
+        Map<String, Object> phases = new LinkedHashMap<>();
+        report.put("phases", phases);
+
+        // join
+        ResourceSample joinStart = ResourceSample.take();
+        Semaphore inFlight = new Semaphore(connectConcurrency);
+        List<CompletableFuture<Void>> joins = new ArrayList<>(sessions);
+        for (LoadClient c : clients) {
+            inFlight.acquire();
+            joins.add(c.connectAndJoin().orTimeout(30, TimeUnit.SECONDS)
+                    .whenComplete((v, e) -> inFlight.release()));
+        }
+        int joinFailures = 0;
+        for (CompletableFuture<Void> f : joins) {
+            try {
+                f.join();
+            } catch (RuntimeException e) {
+                joinFailures++;
+            }
+        }
+        ResourceSample joinEnd = ResourceSample.take();
+        Map<String, Object> join = new LinkedHashMap<>();
+        join.put("wallMillis", joinEnd.wallMillis(joinStart));
+        join.put("sessionsJoined", sessions - joinFailures);
+        join.put("joinFailures", joinFailures);
+        join.put("latency", metrics.join.summary());
+        join.put("resources", joinEnd.since(joinStart));
+        phases.put("join", join);
+
+        // steady
+        long framesBefore = metrics.framesReceived.sum();
+        long bytesBefore = metrics.bytesReceived.sum();
+        long presenceBefore = metrics.presenceReceived.sum();
+        long snapshotsBefore = metrics.snapshotsReceived.sum();
+        ResourceSample steadyStart = ResourceSample.take();
+        ScheduledExecutorService driver = Executors.newScheduledThreadPool(2, r -> {
+            Thread t = new Thread(r, "load-driver");
+            t.setDaemon(true);
+            return t;
+        });
+        for (List<LoadClient> room : byRoom) {
+            if (room.isEmpty()) {
+                continue;
+            }
+            every(driver, chatPerRoomPerSecond, () -> pick(room).chat());
+            every(driver, statusPerRoomPerSecond, () -> pick(room).toggleStatus());
+        }
+        every(driver, reconnectsPerSecond, () -> {
+            LoadClient c = pick(clients);
+            if (c.joined().isDone()) {
+                c.reconnect();
+            }
+        });
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+        driver.shutdownNow();
+        driver.awaitTermination(5, TimeUnit.SECONDS);
+        // 等在途消息送达
+        Thread.sleep(2000);
+        ResourceSample steadyEnd = ResourceSample.take();
+
+        double seconds = steadyEnd.wallMillis(steadyStart) / 1000.0;
+        long chatsSent = metrics.chatsSent.sum();
+        long chatsReceived = metrics.chatsReceived.sum();
+        Map<String, Object> steady = new LinkedHashMap<>();
+        steady.put("wallMillis", steadyEnd.wallMillis(steadyStart));
+        steady.put("chatsSent", chatsSent);
+        steady.put("chatsReceived", chatsReceived);
+        steady.put("chatDeliveryRatio", chatsSent == 0 ? 0 : round(chatsReceived / (chatsSent * (double) sessions / rooms)));
+        steady.put("chatDeliveriesPerSecond", round(chatsReceived / seconds));
+        steady.put("statusSent", metrics.statusSent.sum());
+        steady.put("presenceReceived", metrics.presenceReceived.sum() - presenceBefore);
+        steady.put("snapshotsReceived", metrics.snapshotsReceived.sum() - snapshotsBefore);
+        steady.put("framesPerSecond", round((metrics.framesReceived.sum() - framesBefore) / seconds));
+        steady.put("megabytesPerSecond", round((metrics.bytesReceived.sum() - bytesBefore) / seconds / (1 << 20)));
+        steady.put("errorsReceived", metrics.errorsReceived.sum());
+        steady.put("sendFailures", metrics.sendFailures.sum());
+        steady.put("reconnects", metrics.reconnects.sum());
+        steady.put("reconnectFailures", metrics.reconnectFailures.sum());
+        steady.put("chatFanoutLatency", metrics.chatFanout.summary());
+        steady.put("resumeLatency", metrics.resume.summary());
+        steady.put("resources", steadyEnd.since(steadyStart));
+        phases.put("steady", steady);
+        report.put("serverLanes", writerPool.laneStats());
+
+        clients.forEach(LoadClient::close);
+
+        JsonNode current = mapper.valueToTree(report);
+        if (baselinePath != null) {
+            report.put("comparison", compare(mapper.readTree(Path.of(baselinePath).toFile()), current));
+        }
+        Path out = Path.of(reportPath);
+        Files.createDirectories(out.toAbsolutePath().getParent());
+        mapper.writeValue(out.toFile(), report);
+        System.out.println(mapper.writeValueAsString(report));
+        System.out.println("load report written to " + out.toAbsolutePath());
+
+        assertEquals(0, joinFailures, "sessions failed to join");
+        assertTrue(chatsSent == 0 || chatsReceived > 0, "no chat message was delivered");
+    }
+
+    /**
+     * 与基线报告比较的指标：JSON 指针 → 数值越小越好（true）还是越大越好（false）。
+     */
+    private static final Map<String, Boolean> COMPARED = new LinkedHashMap<>();
+
+    static {
+        COMPARED.put("/phases/join/latency/p50Millis", true);
+        COMPARED.put("/phases/join/latency/p99Millis", true);
+        COMPARED.put("/phases/steady/chatFanoutLatency/p50Millis", true);
+        COMPARED.put("/phases/steady/chatFanoutLatency/p99Millis", true);
+        COMPARED.put("/phases/steady/chatFanoutLatency/p999Millis", true);
+        COMPARED.put("/phases/steady/resumeLatency/p99Millis", true);
+        COMPARED.put("/phases/steady/chatDeliveriesPerSecond", false);
+        COMPARED.put("/phases/steady/chatDeliveryRatio", false);
+        COMPARED.put("/phases/steady/resources/serverCpuMillis", true);
+        COMPARED.put("/phases/steady/resources/serverAllocatedMB", true);
+        COMPARED.put("/phases/steady/resources/gcMillis", true);
+    }
+
+    private static Map<String, Object> compare(JsonNode baseline, JsonNode current) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Boolean> e : COMPARED.entrySet()) {
+            JsonNode before = baseline.at(e.getKey());
+            JsonNode after = current.at(e.getKey());
+            if (!before.isNumber() || !after.isNumber()) {
+                continue;
+            }
+            double b = before.asDouble();
+            double a = after.asDouble();
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("baseline", b);
+            row.put("current", a);
+            row.put("changePercent", b == 0 ? null : round((a - b) / b * 100));
+            row.put("better", a == b ? null : (a < b) == e.getValue());
+            result.put(e.getKey(), row);
+        }
+        return result;
+    }
+
+    private static void every(ScheduledExecutorService driver, double perSecond, Runnable task) {
+        if (perSecond <= 0) {
+            return;
+        }
+        long periodMicros = Math.max(1, (long) (1_000_000 / perSecond));
+        driver.scheduleAtFixedRate(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException ignored) {
+                // 单个客户端出错不影响整体节奏，失败已计入 sendFailures
+            }
+        }, ThreadLocalRandom.current().nextLong(periodMicros), periodMicros, TimeUnit.MICROSECONDS);
+    }
+
+    private static <T> T pick(List<T> list) {
+        return list.get(ThreadLocalRandom.current().nextInt(list.size()));
+    }
+
+    private Map<String, Object> config() {
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("sessions", sessions);
+        config.put("rooms", rooms);
+        config.put("durationSeconds", durationSeconds);
+        config.put("chatPerRoomPerSecond", chatPerRoomPerSecond);
+        config.put("statusPerRoomPerSecond", statusPerRoomPerSecond);
+        config.put("reconnectsPerSecond", reconnectsPerSecond);
+        config.put("connectConcurrency", connectConcurrency);
+        return config;
+    }
+
+    private static Map<String, Object> environment() {
+        Map<String, Object> env = new LinkedHashMap<>();
+        env.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        env.put("maxHeapMB", Runtime.getRuntime().maxMemory() >> 20);
+        env.put("javaVersion", System.getProperty("java.version"));
+        env.put("os", System.getProperty("os.name") + " " + System.getProperty("os.arch"));
+        return env;
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    /**
+     * 某一时刻各线程的 CPU 时间和累计分配字节，以及 GC 统计。按线程名区分服务端和压测客户端。
+     */
+    private record ResourceSample(long nanos, long processCpuNanos, Map<Long, long[]> threads,
+                                  Map<Long, String> names, long gcCount, long gcMillis) {
+
+        static ResourceSample take() {
+            com.sun.management.ThreadMXBean bean =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long[] ids = bean.getAllThreadIds();
+            long[] cpu = bean.getThreadCpuTime(ids);
+            long[] allocated = bean.getThreadAllocatedBytes(ids);
+            Map<Long, long[]> threads = new HashMap<>();
+            Map<Long, String> names = new HashMap<>();
+            for (int i = 0; i < ids.length; i++) {
+                var info = bean.getThreadInfo(ids[i]);
+                if (info != null) {
+                    threads.put(ids[i], new long[]{Math.max(0, cpu[i]), Math.max(0, allocated[i])});
+                    names.put(ids[i], info.getThreadName());
+                }
+            }
+            long gcCount = 0;
+            long gcMillis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                gcCount += Math.max(0, gc.getCollectionCount());
+                gcMillis += Math.max(0, gc.getCollectionTime());
+            }
+            long processCpu = ManagementFactory.getOperatingSystemMXBean()
+                    instanceof com.sun.management.OperatingSystemMXBean os ? os.getProcessCpuTime() : -1;
+            return new ResourceSample(System.nanoTime(), processCpu, threads, names, gcCount, gcMillis);
+        }
+
+        long wallMillis(ResourceSample start) {
+            return (nanos - start.nanos) / 1_000_000;
+        }
+
+        /**
+         * 两次采样之间的增量；期间结束的线程无法统计，期间新建的线程从 0 算起。
+         */
+        Map<String, Object> since(ResourceSample start) {
+            long serverCpu = 0;
+            long serverAllocated = 0;
+            long clientCpu = 0;
+            for (Map.Entry<Long, long[]> e : threads.entrySet()) {
+                long[] before = start.threads.getOrDefault(e.getKey(), new long[2]);
+                long cpu = e.getValue()[0] - before[0];
+                long allocated = e.getValue()[1] - before[1];
+                if (isServerThread(names.get(e.getKey()))) {
+                    serverCpu += cpu;
+                    serverAllocated += allocated;
+                } else {
+                    clientCpu += cpu;
+                }
+            }
+            double wallSeconds = (nanos - start.nanos) / 1e9;
+            int cpus = Runtime.getRuntime().availableProcessors();
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("serverCpuMillis", serverCpu / 1_000_000);
+            out.put("serverCpuUtilization", round(serverCpu / 1e9 / wallSeconds / cpus));
+            out.put("serverAllocatedMB", round(serverAllocated / (double) (1 << 20)));
+            out.put("serverAllocationMBps", round(serverAllocated / (double) (1 << 20) / wallSeconds));
+            out.put("clientCpuMillis", clientCpu / 1_000_000);
+            out.put("processCpuMillis", processCpuNanos < 0 ? null : (processCpuNanos - start.processCpuNanos) / 1_000_000);
+            out.put("gcCount", gcCount - start.gcCount);
+            out.put("gcMillis", gcMillis - start.gcMillis);
+            return out;
+        }
+
+        private static boolean isServerThread(String name) {
+            if (name == null) {
+                return false;
+            }
+            for (String prefix : SERVER_THREAD_PREFIXES) {
+                if (name.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}